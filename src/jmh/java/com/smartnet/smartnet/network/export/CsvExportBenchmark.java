@@ -0,0 +1,40 @@
+package com.smartnet.smartnet.network.export;
+
+import com.smartnet.smartnet.network.models.HostScanResults;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a result the way the scanner does and formatting it as a CSV row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CsvExportBenchmark {
+
+    private final CsvFormatter formatter = new CsvFormatter(true);
+    private int host;
+
+    @Benchmark
+    public HostScanResults construct() {
+        return newResult();
+    }
+
+    @Benchmark
+    public String constructAndFormat() {
+        return formatter.format(newResult());
+    }
+
+    private HostScanResults newResult() {
+        int h = host++ & 0xFF;
+        List<Integer> openPorts = new ArrayList<>();
+        openPorts.add(22);
+        openPorts.add(80);
+        openPorts.add(443);
+        return new HostScanResults("192.168.1." + h, true, openPorts, "a4:91:b1:0c:3e:7f",
+                "host-" + h + ".lan", "LINUX");
+    }
+}
@@ -0,0 +1,27 @@
+package com.smartnet.smartnet.network.ipgenerator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Target list generation at /16 and /8 scale. The /8 case materialises ~16M strings, so the
+ * fork gets a larger heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class IPGeneratorBenchmark {
+
+    @Param({"10.0.0.0/16", "10.0.0.0/8"})
+    public String cidr;
+
+    private final IPGenerator generator = new IPGenerator();
+
+    @Benchmark
+    public List<String> generateIP() {
+        return generator.generateIP(cidr);
+    }
+}
@@ -0,0 +1,39 @@
+package com.smartnet.smartnet.network.macutils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of {@code arp} output lines, one matching and one non-matching line per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MacParseBenchmark {
+
+    @Param({"linux", "windows"})
+    public String os;
+
+    private final Mac mac = new Mac();
+    private String hit;
+    private String miss;
+
+    @Setup
+    public void setup() {
+        if (os.equals("windows")) {
+            hit = "  192.168.1.1           a4-91-b1-0c-3e-7f     dynamic   ";
+            miss = "  Internet Address      Physical Address      Type";
+        } else {
+            hit = "192.168.1.1              ether   a4:91:b1:0c:3e:7f   C                     wlan0";
+            miss = "Address                  HWtype  HWaddress           Flags Mask            Iface";
+        }
+    }
+
+    @Benchmark
+    public void getMac(Blackhole bh) {
+        bh.consume(mac.getMac(hit, os));
+        bh.consume(mac.getMac(miss, os));
+    }
+}
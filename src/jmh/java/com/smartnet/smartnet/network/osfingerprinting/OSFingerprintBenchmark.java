@@ -0,0 +1,46 @@
+package com.smartnet.smartnet.network.osfingerprinting;
+
+import org.openjdk.jmh.annotations.*;
+import org.pcap4j.packet.Packet;
+import org.pcap4j.util.MacAddress;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OS classification from (TTL, window) and SYN frame construction, both without a capture
+ * handle. The classification inputs cycle through every rule, including no-match.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OSFingerprintBenchmark {
+
+    private static final int[][] SIGNATURES = {
+            {128, 65535}, {64, 65535}, {64, 32768}, {255, 65535}, {255, 16384}, {64, 29200}, {32, 1024}
+    };
+
+    private final MacAddress srcMac = MacAddress.getByName("02:00:00:00:00:01");
+    private final MacAddress dstMac = MacAddress.getByName("a4:91:b1:0c:3e:7f");
+    private Inet4Address srcAddr;
+    private Inet4Address dstAddr;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        srcAddr = (Inet4Address) InetAddress.getByName("192.168.1.10");
+        dstAddr = (Inet4Address) InetAddress.getByName("192.168.1.1");
+    }
+
+    @Benchmark
+    public OSFingerprintResult classify() {
+        int[] sig = SIGNATURES[next++ % SIGNATURES.length];
+        return OSFingerprintService.classify("192.168.1.1", sig[0], sig[1], "[]");
+    }
+
+    @Benchmark
+    public Packet buildTcpSyn() {
+        return OSFingerprintService.buildTcpSyn(srcMac, dstMac, srcAddr, dstAddr, 443);
+    }
+}
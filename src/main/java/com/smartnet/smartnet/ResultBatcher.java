@@ -0,0 +1,89 @@
+package com.smartnet.smartnet;
+
+import javafx.animation.AnimationTimer;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bridges scan threads and an FX-bound list. Workers {@link #offer} items into a lock-free
+ * queue; an {@link AnimationTimer} drains it once per pulse and applies a single
+ * {@code addAll}, so the table re-lays out at most once per frame whatever the result rate.
+ */
+public class ResultBatcher<T> {
+
+    private final ObservableList<T> target;
+    private final int maxBatch;
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain(maxBatch);
+        }
+    };
+
+    /**
+     * @param maxBatch upper bound of items applied per frame, so a burst is spread over a few
+     *                 frames instead of stalling one
+     */
+    public ResultBatcher(ObservableList<T> target, int maxBatch) {
+        this.target = target;
+        this.maxBatch = maxBatch;
+    }
+
+    /** Thread-safe; called from scan threads. */
+    public void offer(T item) {
+        queue.add(item);
+        int d = depth.incrementAndGet();
+        maxDepth.accumulateAndGet(d, Math::max);
+    }
+
+    /** FX thread only. Counters restart with each scan. */
+    public void start() {
+        maxDepth.set(depth.get());
+        delivered.set(0);
+        batches.set(0);
+        pulse.start();
+    }
+
+    /** FX thread only. Stops the pulse and applies anything still queued. */
+    public void stop() {
+        pulse.stop();
+        drain(Integer.MAX_VALUE);
+    }
+
+    /** FX thread only. Drops anything queued, e.g. when a new scan clears the table. */
+    public void clear() {
+        while (queue.poll() != null) {
+            depth.decrementAndGet();
+        }
+    }
+
+    private void drain(int limit) {
+        if (queue.isEmpty()) return;
+        List<T> batch = new ArrayList<>(Math.min(limit, Math.max(16, depth.get())));
+        T item;
+        while (batch.size() < limit && (item = queue.poll()) != null) {
+            batch.add(item);
+        }
+        if (batch.isEmpty()) return;
+        depth.addAndGet(-batch.size());
+        target.addAll(batch);
+        delivered.addAndGet(batch.size());
+        batches.incrementAndGet();
+    }
+
+    public int getQueueDepth() { return depth.get(); }
+    public int getMaxQueueDepth() { return maxDepth.get(); }
+    public long getDeliveredCount() { return delivered.get(); }
+    public long getBatchCount() { return batches.get(); }
+}
@@ -0,0 +1,141 @@
+package com.smartnet.smartnet;
+
+import com.smartnet.smartnet.network.models.HostScanResults;
+import com.smartnet.smartnet.network.models.ResultFilter;
+import com.smartnet.smartnet.network.models.ResultIndex;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a {@link TableView} in sync with a growing result list without sorting or filtering
+ * on the FX thread. New rows are folded into a {@link ResultIndex} and the current filter and
+ * sort are evaluated by a background {@link Task}; the FX thread only swaps in the finished
+ * list. Refreshes are coalesced, so at most one query runs and one more is queued.
+ */
+public class ResultTableModel {
+
+    private final TableView<HostScanResults> table;
+    private final Map<TableColumn<HostScanResults, ?>, ResultIndex.Column> columns;
+    private final ObservableList<HostScanResults> view = FXCollections.observableArrayList();
+    private final List<HostScanResults> pending = new ArrayList<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "smartnet-table-query");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // FX thread only
+    private ResultIndex index = ResultIndex.EMPTY;
+    private ResultFilter filter = ResultFilter.NONE;
+    private boolean running;
+    private boolean dirty;
+    private long generation;
+
+    public ResultTableModel(TableView<HostScanResults> table, ObservableList<HostScanResults> source,
+                            Map<TableColumn<HostScanResults, ?>, ResultIndex.Column> columns) {
+        this.table = table;
+        this.columns = columns;
+        table.setItems(view);
+        // Header clicks only update the sort order; the rows are reordered by the next query.
+        table.setSortPolicy(t -> {
+            refresh();
+            return true;
+        });
+        source.addListener((ListChangeListener<HostScanResults>) change -> {
+            while (change.next()) {
+                if (change.wasRemoved()) {
+                    reset(source);
+                    return;
+                }
+                if (change.wasAdded()) {
+                    pending.addAll(change.getAddedSubList());
+                }
+            }
+            refresh();
+        });
+    }
+
+    /** FX thread only. */
+    public void setFilter(ResultFilter filter) {
+        this.filter = filter;
+        refresh();
+    }
+
+    public ObservableList<HostScanResults> getView() {
+        return view;
+    }
+
+    private void reset(List<HostScanResults> source) {
+        generation++;
+        index = ResultIndex.EMPTY;
+        pending.clear();
+        pending.addAll(source);
+        view.clear();
+        refresh();
+    }
+
+    private void refresh() {
+        if (running) {
+            dirty = true;
+            return;
+        }
+        running = true;
+        dirty = false;
+
+        ResultIndex base = index;
+        List<HostScanResults> added = new ArrayList<>(pending);
+        pending.clear();
+        ResultFilter query = filter;
+        ResultIndex.Column sortBy = null;
+        boolean ascending = true;
+        if (!table.getSortOrder().isEmpty()) {
+            TableColumn<HostScanResults, ?> column = table.getSortOrder().get(0);
+            sortBy = columns.get(column);
+            ascending = column.getSortType() == TableColumn.SortType.ASCENDING;
+        }
+        ResultIndex.Column column = sortBy;
+        boolean asc = ascending;
+        long gen = generation;
+
+        Task<List<HostScanResults>> task = new Task<>() {
+            private ResultIndex next;
+
+            @Override
+            protected List<HostScanResults> call() {
+                next = base.append(added);
+                return next.query(query, column, asc);
+            }
+
+            @Override
+            protected void succeeded() {
+                running = false;
+                if (gen == generation) {
+                    index = next;
+                    HostScanResults selected = table.getSelectionModel().getSelectedItem();
+                    view.setAll(getValue());
+                    if (selected != null) table.getSelectionModel().select(selected);
+                }
+                if (dirty || !pending.isEmpty()) refresh();
+            }
+
+            @Override
+            protected void failed() {
+                running = false;
+                getException().printStackTrace();
+                if (gen == generation) pending.addAll(0, added);
+                if (dirty) refresh();
+            }
+        };
+        worker.execute(task);
+    }
+}
@@ -1,5 +1,7 @@
 package com.smartnet.smartnet;
 
+import com.smartnet.smartnet.network.macutils.OuiDatabase;
+import com.smartnet.smartnet.network.networkinterfacemanager.NetworkInterfaceManager;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -9,6 +11,8 @@ import java.io.IOException;
 public class SmartNetApp extends Application {
     @Override
     public void start(Stage stage) throws IOException {
+        NetworkInterfaceManager.warmUp(); // routes and interfaces resolve while the window loads
+        OuiDatabase.shared();             // map the vendor index before the first host needs it
         FXMLLoader fxmlLoader = new FXMLLoader(SmartNetApp.class.getResource("smartnet-view.fxml"));
         Scene scene = new Scene(fxmlLoader.load());
         stage.setTitle("SmartNet");
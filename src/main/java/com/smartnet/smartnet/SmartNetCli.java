@@ -0,0 +1,669 @@
+package com.smartnet.smartnet;
+
+import com.smartnet.smartnet.network.discovery.HostDiscovery;
+import com.smartnet.smartnet.network.checkpoint.ScanCheckpoint;
+import com.smartnet.smartnet.network.distributed.ShardCoordinator;
+import com.smartnet.smartnet.network.distributed.ShardWorker;
+import com.smartnet.smartnet.network.export.CsvFormatter;
+import com.smartnet.smartnet.network.macutils.OuiDatabase;
+import com.smartnet.smartnet.network.models.HostScanResults;
+import com.smartnet.smartnet.network.models.ResultFilter;
+import com.smartnet.smartnet.network.models.ResultIndex;
+import com.smartnet.smartnet.network.networkinterfacemanager.NetworkInterfaceManager;
+import com.smartnet.smartnet.network.ports.PortSpec;
+import com.smartnet.smartnet.network.ports.TopPorts;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+import com.smartnet.smartnet.network.scanner.CongestionControl;
+import com.smartnet.smartnet.network.scanner.NetworkScanner;
+import com.smartnet.smartnet.network.scanner.ScanHandle;
+import com.smartnet.smartnet.network.scanner.ScanResult;
+import com.smartnet.smartnet.network.scanner.ScanTelemetry;
+import com.smartnet.smartnet.network.scheduler.ScanJob;
+import com.smartnet.smartnet.network.scheduler.ScanScheduler;
+import com.smartnet.smartnet.network.udp.UdpScanner;
+import com.smartnet.smartnet.network.utils.EphemeralPorts;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Headless entry point for running scans from scripts and cron without starting JavaFX.
+ * Results are streamed as CSV lines while the scan runs.
+ */
+public class SmartNetCli {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: SmartNetCli [options] <target> [<target> ...]",
+            "  <target>               IPv4 address or CIDR block, e.g. 192.168.1.0/24",
+            "  -p, --ports <spec>     'popular', 'top' (1000 most common) or a spec like 1-1024,3389,!25",
+            "                         ports are probed most-common first (default: popular)",
+            "  -t, --threads <n>      concurrent hosts per target (default: 64)",
+            "      --discovery-threads <n>, --port-threads <n>, --enrich-threads <n>",
+            "                         pool size of one scan stage (default: --threads)",
+            "      --timeout <ms>     connect timeout per port (default: 200)",
+            "      --discovery <list> probes raced to find live hosts: icmp,tcp,arp or none (default: all)",
+            "      --icmp-sweep       ping the whole target range over pcap before scanning (needs pcap)",
+            "      --max-open <n>     stop probing a host after n open ports",
+            "      --randomize        probe (host, port) pairs in pseudo-random order",
+            "      --seed <n>         seed for --randomize, same seed = same order (default: random)",
+            "      --shard <from:to>  only walk this index range of the randomized order",
+            "      --os               enable OS fingerprinting (needs pcap)",
+            "      --services         identify services on open ports from their banners",
+            "  -u, --udp <spec>       also probe these UDP ports, 'common' for DNS, NTP, SNMP and friends",
+            "      --all              also print hosts that are down",
+            "      --query <expr>     only print hosts matching a filter, e.g. 'port:22 OR (os:windows -vendor:vmware)'",
+            "      --search <f,..>    print the hosts of finished checkpoint files that match --query, no scan",
+            "      --progress         print throughput and ETA to stderr every few seconds",
+            "      --adaptive         grow and shrink port probes in flight per /24 from RTTs and timeouts",
+            "  -o, --output <file>    write results to a file instead of stdout",
+            "      --deadline <sec>   stop each target after this many seconds",
+            "      --checkpoint <f>   write resumable progress to this file",
+            "      --resume <f>       continue a scan from a checkpoint file",
+            "      --schedule <f>     run as a daemon: scan the jobs listed in the file, one per line as",
+            "                         '<name> <target> <every> [priority]', every = 30s, 15m, 2h or once;",
+            "                         targets on the command line run once, results stream as CSV",
+            "      --jobs <n>         scheduled jobs running at the same time (default: 2)",
+            "      --budget <n>       probes in flight across all scheduled jobs (default: 256)",
+            "      --coordinate <port> split the target into shards and hand them to --worker processes",
+            "      --bind <addr>      address --coordinate listens on (default: 127.0.0.1)",
+            "      --shard-hosts <n>  addresses per shard for --coordinate (default: 256)",
+            "      --worker <host:port> scan shards for a coordinator until it has none left",
+            "      --token <secret>   shared secret of --coordinate and --worker (default: $SMARTNET_TOKEN;",
+            "                         a coordinator without one generates and prints it)",
+            "      --oui <file>       MAC vendor index to use (default: ~/.smartnet/oui.db)",
+            "      --build-oui <f,..> index IEEE registry files (oui.txt/.csv, mam, oui36) into the --oui file",
+            "  -h, --help             show this help");
+
+    private static final int[] POPULAR_PORTS = {22, 80, 443, 8080, 21, 23, 25, 110};
+
+    private final List<String> targets = new ArrayList<>();
+    private int[] ports = POPULAR_PORTS;
+    private int threads = 64;
+    private int discoveryThreads;
+    private int portThreads;
+    private int enrichThreads;
+    private int timeoutMillis = 200;
+    private int maxOpenPorts;
+    private boolean randomize;
+    private long seed = System.nanoTime();
+    private long shardStart = 0;
+    private long shardEnd = -1;
+    private boolean osScan;
+    private boolean detectServices;
+    private int[] udpPorts = new int[0];
+    private Set<HostDiscovery.Probe> discoveryProbes = EnumSet.allOf(HostDiscovery.Probe.class);
+    private boolean icmpSweep;
+    private boolean includeDown;
+    private boolean progress;
+    private boolean adaptive;
+    private Path output;
+    private long deadlineMillis;
+    private Path checkpoint;
+    private Path resume;
+    private Path schedule;
+    private int maxConcurrentJobs = 2;
+    private int probeBudget = -1;      // -1 keeps the scheduler's default
+    private int coordinatePort = -1;
+    private int shardHosts = 256;
+    private String worker;
+    private String bindAddress = "127.0.0.1";
+    private String token = System.getenv("SMARTNET_TOKEN");
+    private Path ouiFile;
+    private List<Path> ouiSources;
+    private ResultFilter query = ResultFilter.NONE;
+    private List<Path> searchFiles;
+
+    private List<ScanJob> scheduledJobs;                    // read and checked while parsing
+    private Supplier<NetworkScanner.Config> jobConfig;      // set once the output is open
+
+    private volatile ScanHandle current;
+    private volatile ScanScheduler scheduler;
+
+    public static void main(String[] args) {
+        SmartNetCli cli = new SmartNetCli();
+        try {
+            if (!cli.parse(args)) {
+                System.out.println(USAGE);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (cli.ouiSources != null) {
+            System.exit(cli.buildOui());
+        }
+        if (cli.searchFiles != null) {
+            System.exit(cli.search());
+        }
+        NetworkInterfaceManager.warmUp(); // overlaps with checkpoint loading and target expansion
+        System.exit(cli.openOui() ? cli.run() : 2);
+    }
+
+    private boolean parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h", "--help" -> { return false; }
+                case "-p", "--ports" -> ports = parsePorts(value(args, ++i, arg));
+                case "-t", "--threads" -> threads = positiveInt(value(args, ++i, arg), arg);
+                case "--discovery-threads" -> discoveryThreads = positiveInt(value(args, ++i, arg), arg);
+                case "--port-threads" -> portThreads = positiveInt(value(args, ++i, arg), arg);
+                case "--enrich-threads" -> enrichThreads = positiveInt(value(args, ++i, arg), arg);
+                case "--timeout" -> timeoutMillis = positiveInt(value(args, ++i, arg), arg);
+                case "--max-open" -> maxOpenPorts = positiveInt(value(args, ++i, arg), arg);
+                case "--randomize" -> randomize = true;
+                case "--seed" -> seed = parseLong(value(args, ++i, arg), arg);
+                case "--shard" -> {
+                    String range = value(args, ++i, arg);
+                    int colon = range.indexOf(':');
+                    if (colon < 0) throw new IllegalArgumentException("--shard expects from:to, got: " + range);
+                    shardStart = parseLong(range.substring(0, colon), arg);
+                    shardEnd = parseLong(range.substring(colon + 1), arg);
+                    randomize = true;
+                }
+                case "--os" -> osScan = true;
+                case "--services" -> detectServices = true;
+                case "--discovery" -> discoveryProbes = parseProbes(value(args, ++i, arg));
+                case "--icmp-sweep" -> icmpSweep = true;
+                case "-u", "--udp" -> {
+                    String spec = value(args, ++i, arg);
+                    udpPorts = spec.equalsIgnoreCase("common") ? UdpScanner.COMMON_PORTS : PortSpec.parse(spec);
+                }
+                case "--all" -> includeDown = true;
+                case "--progress" -> progress = true;
+                case "--adaptive" -> adaptive = true;
+                case "-o", "--output" -> output = Path.of(value(args, ++i, arg));
+                case "--deadline" -> deadlineMillis = positiveInt(value(args, ++i, arg), arg) * 1000L;
+                case "--checkpoint" -> checkpoint = Path.of(value(args, ++i, arg));
+                case "--resume" -> resume = Path.of(value(args, ++i, arg));
+                case "--schedule" -> schedule = Path.of(value(args, ++i, arg));
+                case "--jobs" -> maxConcurrentJobs = positiveInt(value(args, ++i, arg), arg);
+                case "--budget" -> probeBudget = positiveInt(value(args, ++i, arg), arg);
+                case "--coordinate" -> coordinatePort = portNumber(value(args, ++i, arg), arg);
+                case "--bind" -> bindAddress = value(args, ++i, arg);
+                case "--token" -> token = value(args, ++i, arg);
+                case "--shard-hosts" -> shardHosts = positiveInt(value(args, ++i, arg), arg);
+                case "--worker" -> worker = value(args, ++i, arg);
+                case "--oui" -> ouiFile = Path.of(value(args, ++i, arg));
+                case "--build-oui" -> {
+                    ouiSources = new ArrayList<>();
+                    for (String source : value(args, ++i, arg).split(",")) ouiSources.add(Path.of(source.trim()));
+                }
+                case "--query" -> query = ResultFilter.parse(value(args, ++i, arg));
+                case "--search" -> {
+                    searchFiles = new ArrayList<>();
+                    for (String file : value(args, ++i, arg).split(",")) searchFiles.add(Path.of(file.trim()));
+                }
+                default -> {
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    targets.add(arg.contains("/") ? arg : arg + "/32");
+                }
+            }
+        }
+        if (schedule != null && (checkpoint != null || resume != null)) {
+            throw new IllegalArgumentException("--schedule cannot be combined with --checkpoint or --resume.");
+        }
+        if (probeBudget > 0 && schedule == null) {
+            throw new IllegalArgumentException("--budget only applies to --schedule.");
+        }
+        if (coordinatePort >= 0 && (targets.size() != 1 || schedule != null || resume != null || checkpoint != null)) {
+            throw new IllegalArgumentException("--coordinate takes exactly one target and no --schedule, --checkpoint or --resume.");
+        }
+        if (coordinatePort >= 0 && (shardStart != 0 || shardEnd >= 0)) {
+            throw new IllegalArgumentException("--coordinate shards the whole target itself; it cannot be combined with --shard.");
+        }
+        if (ouiSources != null) {
+            return true;    // only builds the index
+        }
+        if (searchFiles != null) {
+            if (!targets.isEmpty()) throw new IllegalArgumentException("--search reads checkpoint files and takes no targets.");
+            return true;
+        }
+        if (worker != null) {
+            if (!worker.contains(":")) throw new IllegalArgumentException("--worker expects host:port, got: " + worker);
+            return true;    // the coordinator supplies targets and settings
+        }
+        if (targets.isEmpty() && resume == null && schedule == null) {
+            throw new IllegalArgumentException("No targets given.");
+        }
+        if (checkpoint != null && targets.size() > 1) {
+            throw new IllegalArgumentException("--checkpoint supports a single target.");
+        }
+        if (schedule != null) {
+            scheduledJobs = scheduledJobs();
+        }
+        return true;
+    }
+
+    /** The schedule file's jobs plus one run of each target, with names checked to be unique. */
+    private List<ScanJob> scheduledJobs() {
+        Supplier<NetworkScanner.Config> config = () -> jobConfig.get();
+        List<ScanJob> jobs;
+        try {
+            jobs = readSchedule(schedule, config);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read schedule: " + e.getMessage());
+        }
+        for (String target : targets) {
+            jobs.add(ScanJob.once(target, target, ports, config, 0));
+        }
+        Set<String> names = new HashSet<>();
+        for (ScanJob job : jobs) {
+            if (!names.add(job.getName())) {
+                throw new IllegalArgumentException("A job named " + job.getName() + " is scheduled twice.");
+            }
+        }
+        return jobs;
+    }
+
+    private int buildOui() {
+        Path out = ouiFile != null ? ouiFile : OuiDatabase.defaultPath();
+        try {
+            int prefixes = OuiDatabase.build(ouiSources, out);
+            System.err.println("Indexed " + prefixes + " vendor prefixes into " + out);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Building the OUI index failed: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    /**
+     * Loads the hosts of one or more checkpoints into a {@link ResultIndex} and prints those
+     * matching --query, the same engine the results table filters with.
+     */
+    private int search() {
+        List<HostScanResults> hosts = new ArrayList<>();
+        boolean os = false, services = false, udp = false;
+        try {
+            for (Path file : searchFiles) {
+                ScanCheckpoint saved = ScanCheckpoint.load(file);
+                NetworkScanner.Config config = saved.toConfig();
+                os |= config.osScan;
+                services |= config.detectServices;
+                udp |= config.udpPorts.length > 0;
+                hosts.addAll(saved.getResults());
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read checkpoint: " + e.getMessage());
+            return 2;
+        }
+        ResultIndex index = ResultIndex.EMPTY.append(hosts);
+        long start = System.nanoTime();
+        List<HostScanResults> matches = index.query(query, ResultIndex.Column.IP, true);
+        long micros = (System.nanoTime() - start) / 1000;
+        try (PrintWriter out = openOutput()) {
+            CsvFormatter formatter = new CsvFormatter(os, services, udp);
+            out.println(formatter.header());
+            for (HostScanResults host : matches) out.println(formatter.format(host));
+        } catch (IOException e) {
+            System.err.println("Search failed: " + e.getMessage());
+            return 2;
+        }
+        System.err.printf(Locale.ROOT, "%d of %d hosts matched in %d us%n", matches.size(), index.size(), micros);
+        return 0;
+    }
+
+    /** Maps the vendor index now rather than on the first host that has a MAC. */
+    private boolean openOui() {
+        if (ouiFile == null) {
+            OuiDatabase.shared();
+            return true;
+        }
+        try {
+            OuiDatabase.useFile(ouiFile);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Cannot open OUI index " + ouiFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private int run() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ScanScheduler running = scheduler;
+            if (running != null) running.close();
+            ScanHandle handle = current;
+            if (handle != null && !handle.isDone()) {
+                handle.cancel();
+                handle.asFuture().join();
+            }
+        }));
+
+        if (worker != null) {
+            return runWorker();
+        }
+        try (PrintWriter out = openOutput()) {
+            CsvFormatter formatter = new CsvFormatter(osScan, detectServices, udpPorts.length > 0);
+            out.println(formatter.header());
+            out.flush();
+
+            if (schedule != null) {
+                return runSchedule(out, formatter);
+            }
+            if (coordinatePort >= 0) {
+                return runCoordinator(out, formatter);
+            }
+
+            NetworkScanner scanner = new NetworkScanner();
+            boolean complete = true;
+            if (resume != null) {
+                complete = stream(scanner.startResume(resume, deadlineMillis), out, formatter);
+            }
+            for (String target : targets) {
+                NetworkScanner.Config config = newConfig(out, formatter);
+                config.checkpointFile = checkpoint;
+                config.telemetry = new ScanTelemetry();
+                complete &= await(scanner.startScan(target, ports, config), config.telemetry, config.congestion);
+            }
+            return complete ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Scan failed: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    /** Scan settings from the command line; every target and every scheduled run gets its own copy. */
+    private NetworkScanner.Config newConfig(PrintWriter out, CsvFormatter formatter) {
+        NetworkScanner.Config config = new NetworkScanner.Config();
+        config.threads = threads;
+        config.discoveryThreads = discoveryThreads;
+        config.portThreads = portThreads;
+        config.enrichThreads = enrichThreads;
+        config.osScan = osScan;
+        config.detectServices = detectServices;
+        config.udpPorts = udpPorts;
+        config.discovery.probes = discoveryProbes;
+        config.icmpSweep = icmpSweep;
+        config.portTimeoutMillis = timeoutMillis;
+        config.maxOpenPorts = maxOpenPorts;
+        config.randomizeOrder = randomize;
+        config.seed = seed;
+        config.shardStart = shardStart;
+        config.shardEnd = shardEnd;
+        config.deadlineMillis = deadlineMillis;
+        if (adaptive) config.congestion = new CongestionControl();
+        config.onResult = result -> emit(result, out, formatter);
+        return config;
+    }
+
+    /**
+     * Daemon mode: runs the scheduled jobs until interrupted. Returns once every job has run when
+     * none of them recurs.
+     */
+    private int runSchedule(PrintWriter out, CsvFormatter formatter) throws IOException {
+        ScanScheduler.Config schedulerConfig = new ScanScheduler.Config();
+        schedulerConfig.maxConcurrentJobs = maxConcurrentJobs;
+        if (probeBudget > 0) schedulerConfig.probeBudget = probeBudget;
+        schedulerConfig.onRunFinished = run -> System.err.println(run);
+        jobConfig = () -> newConfig(out, formatter);
+        List<ScanJob> jobs = scheduledJobs;
+        ScanScheduler running = new ScanScheduler(schedulerConfig);
+        scheduler = running;
+        try {
+            for (ScanJob job : jobs) running.add(job);
+            boolean recurring = jobs.stream().anyMatch(ScanJob::isRecurring);
+            while (true) {
+                Thread.sleep(1000);
+                if (recurring) continue;
+                boolean finished = true;
+                for (ScanJob job : running.getJobs()) {
+                    finished &= job.getState() == ScanJob.State.DONE || job.getState() == ScanJob.State.CANCELLED;
+                }
+                if (finished) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.close();
+        }
+        boolean complete = true;
+        for (ScanJob job : running.getJobs()) {
+            complete &= job.getHistory().stream().allMatch(run -> run.status().equals(ScanResult.Status.COMPLETED.name()));
+        }
+        return complete ? 0 : 1;
+    }
+
+    /** Hands the single target out to workers in shards and prints the merged hosts. */
+    private int runCoordinator(PrintWriter out, CsvFormatter formatter) throws IOException {
+        ShardCoordinator.Config coordinatorConfig = new ShardCoordinator.Config();
+        coordinatorConfig.port = coordinatePort;
+        coordinatorConfig.bindAddress = bindAddress;
+        coordinatorConfig.token = token;
+        coordinatorConfig.shardHosts = shardHosts;
+        coordinatorConfig.onResult = result -> emit(result, out, formatter);
+        CancellationToken cancel = new CancellationToken(deadlineMillis);
+        Runtime.getRuntime().addShutdownHook(new Thread(cancel::cancel));
+        try (ShardCoordinator coordinator = new ShardCoordinator(targets.get(0), ports, newConfig(out, formatter),
+                coordinatorConfig)) {
+            System.err.println("Coordinating " + targets.get(0) + " in " + coordinator.getShardCount()
+                    + " shards on " + bindAddress + ":" + coordinator.getPort());
+            if (token == null) System.err.println("Workers need --token " + coordinator.getToken());
+            ScanResult result = coordinator.await(cancel);
+            report(result);
+            return result.isComplete() ? 0 : 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    /** Scans shards for a coordinator; the results go to the coordinator, not to stdout. */
+    private int runWorker() {
+        int colon = worker.lastIndexOf(':');
+        ShardWorker.Config workerConfig = new ShardWorker.Config();
+        workerConfig.name = ProcessHandle.current().pid() + "";
+        workerConfig.onShard = message -> System.err.println(message);
+        if (token != null) workerConfig.token = token;
+        CancellationToken cancel = new CancellationToken(0);
+        Runtime.getRuntime().addShutdownHook(new Thread(cancel::cancel));
+        try {
+            int shards = new ShardWorker(worker.substring(0, colon),
+                    portNumber(worker.substring(colon + 1), "--worker"), workerConfig).run(cancel);
+            System.err.println("Worker finished " + shards + " shards.");
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Worker failed: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    /** One job per line: name, target, interval (30s, 15m, 2h, 1d or once) and an optional priority. */
+    private List<ScanJob> readSchedule(Path file, Supplier<NetworkScanner.Config> config) throws IOException {
+        List<ScanJob> jobs = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] f = line.split("\\s+");
+            if (f.length < 3 || f.length > 4) {
+                throw new IllegalArgumentException(file + ":" + lineNumber + ": expected <name> <target> <every> [priority]");
+            }
+            String target = f[1].contains("/") ? f[1] : f[1] + "/32";
+            try {
+                int priority = f.length > 3 ? (int) parseLong(f[3], "priority") : 0;
+                if (f[2].equalsIgnoreCase("once")) {
+                    jobs.add(ScanJob.once(f[0], target, ports, config, priority));
+                } else {
+                    jobs.add(ScanJob.recurring(f[0], target, ports, config, priority, parseInterval(f[2])));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file + ":" + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return jobs;
+    }
+
+    private static long parseInterval(String every) {
+        if (every.length() > 1) {
+            long unit = switch (Character.toLowerCase(every.charAt(every.length() - 1))) {
+                case 's' -> 1000L;
+                case 'm' -> 60_000L;
+                case 'h' -> 3_600_000L;
+                case 'd' -> 86_400_000L;
+                default -> 0;
+            };
+            if (unit > 0) {
+                return positiveInt(every.substring(0, every.length() - 1), "interval") * unit;
+            }
+        }
+        throw new IllegalArgumentException("Interval must look like 30s, 15m, 2h or 1d, got: " + every);
+    }
+
+    /** A resumed scan doesn't carry a listener, so print its results once it finishes. */
+    private boolean stream(ScanHandle handle, PrintWriter out, CsvFormatter formatter) {
+        current = handle;
+        ScanResult result = awaitResult(handle);
+        for (HostScanResults host : result.getResults()) {
+            emit(host, out, formatter);
+        }
+        report(result);
+        return result.isComplete();
+    }
+
+    private boolean await(ScanHandle handle, ScanTelemetry telemetry, CongestionControl congestion) {
+        current = handle;
+        ScanResult result;
+        if (progress) {
+            ScheduledExecutorService printer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "smartnet-progress");
+                t.setDaemon(true);
+                return t;
+            });
+            printer.scheduleAtFixedRate(() -> printProgress(telemetry.snapshot(), congestion), 2, 2, TimeUnit.SECONDS);
+            try {
+                result = awaitResult(handle);
+            } finally {
+                printer.shutdownNow();
+            }
+            printProgress(telemetry.snapshot(), congestion);
+        } else {
+            result = awaitResult(handle);
+        }
+        report(result);
+        return result.isComplete();
+    }
+
+    private void printProgress(ScanTelemetry.Snapshot snap, CongestionControl congestion) {
+        long eta = snap.getEtaSeconds();
+        EphemeralPorts.Stats local = EphemeralPorts.shared().stats();
+        System.err.printf("hosts %d/%d (%d up)  probes %d (%.0f/s)  timeouts %.1f%%  local ports %d/%d  eta %s%s%n",
+                snap.getHostsCompleted(), snap.getHostsTotal(), snap.getHostsUp(),
+                snap.getProbesCompleted(), snap.getProbesPerSecond(), snap.getTimeoutRatio() * 100,
+                local.used(), local.budget(), eta < 0 ? "-" : String.format("%d:%02d", eta / 60, eta % 60),
+                congestion != null ? "  window " + congestion.getTotalWindow() : "");
+    }
+
+    private ScanResult awaitResult(ScanHandle handle) {
+        try {
+            return handle.await();
+        } catch (InterruptedException e) {
+            handle.cancel();
+            Thread.currentThread().interrupt();
+            return handle.asFuture().join();
+        }
+    }
+
+    private void report(ScanResult result) {
+        EphemeralPorts.Stats local = EphemeralPorts.shared().stats();
+        if (local.throttled() > 0) {
+            System.err.printf("Waited %.1fs over %d connects for free local ports (%d of %d in use, %d in TIME_WAIT).%n",
+                    local.throttledMillis() / 1000.0, local.throttled(), local.used(), local.budget(), local.timeWait());
+        }
+        if (!result.isComplete()) {
+            System.err.println("Scan " + result.getStatus().name().toLowerCase()
+                    + ", results are partial (" + result.getResults().size() + " hosts).");
+        }
+    }
+
+    private void emit(HostScanResults result, PrintWriter out, CsvFormatter formatter) {
+        if (!result.isReachable() && !includeDown) return;
+        if (!query.matches(result)) return;
+        String line = formatter.format(result);
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    private PrintWriter openOutput() throws IOException {
+        if (output == null) {
+            return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+                @Override
+                public void close() {
+                    flush(); // never close stdout
+                }
+            };
+        }
+        return new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8));
+    }
+
+    private static int[] parsePorts(String spec) {
+        if (spec.equalsIgnoreCase("popular")) return POPULAR_PORTS;
+        if (spec.equalsIgnoreCase("top")) return TopPorts.top(1000);
+        return TopPorts.rank(PortSpec.parse(spec));
+    }
+
+    private static Set<HostDiscovery.Probe> parseProbes(String list) {
+        Set<HostDiscovery.Probe> probes = EnumSet.noneOf(HostDiscovery.Probe.class);
+        if (list.equalsIgnoreCase("none")) return probes;
+        for (String name : list.split(",")) {
+            try {
+                probes.add(HostDiscovery.Probe.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown discovery probe: " + name);
+            }
+        }
+        return probes;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private static long parseLong(String value, String option) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " expects a number, got: " + value);
+        }
+    }
+
+    private static int portNumber(String value, String option) {
+        long port = parseLong(value, option);
+        if (port < 0 || port > 65535) throw new IllegalArgumentException(option + " expects a port from 0 to 65535, got: " + value);
+        return (int) port;
+    }
+
+    private static int positiveInt(String value, String option) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(option + " expects a positive number, got: " + value);
+    }
+}
@@ -1,5 +1,8 @@
 package com.smartnet.smartnet;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -8,15 +11,24 @@ import javafx.scene.layout.VBox;
 import javafx.scene.layout.GridPane;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import com.smartnet.smartnet.network.export.CsvFormatter;
+import com.smartnet.smartnet.network.ports.PortSpec;
+import com.smartnet.smartnet.network.ports.TopPorts;
 import com.smartnet.smartnet.network.scanner.NetworkScanner;
+import com.smartnet.smartnet.network.scanner.ScanHandle;
+import com.smartnet.smartnet.network.scanner.ScanResult;
+import com.smartnet.smartnet.network.scanner.ScanTelemetry;
+import com.smartnet.smartnet.network.udp.UdpScanner;
 import com.smartnet.smartnet.network.models.HostScanResults;
+import com.smartnet.smartnet.network.models.ResultFilter;
+import com.smartnet.smartnet.network.models.ResultIndex;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Map;
 
 public class SmartNetController {
 
@@ -29,8 +41,11 @@ public class SmartNetController {
     @FXML private RadioButton top1000PortsRadio;
     @FXML private RadioButton customPortsRadio;
     @FXML private CheckBox osScanCheckBox;
+    @FXML private CheckBox serviceScanCheckBox;
+    @FXML private CheckBox udpScanCheckBox;
     @FXML private TextField customPortsField;
 
+    @FXML private TextField resultFilter;
     @FXML private TableView<HostScanResults> resultTable;
     @FXML private TableColumn<HostScanResults, String> ipColumn;
 //    @FXML private TableColumn<HostScanResults,String> macColumn;
@@ -40,19 +55,39 @@ public class SmartNetController {
     @FXML private TableColumn<HostScanResults, String> osColumn;
 
     @FXML private VBox loadingOverlay;  // Spinner container
+    @FXML private Button cancelScan;
     @FXML private Button exportCSV;
 
     // Details panel fields
     @FXML private Label detailIp;
     @FXML private Label macLabel;
     @FXML private Label detailMac;
+    @FXML private Label vendorLabel;
+    @FXML private Label detailVendor;
     @FXML private Label detailHost;
     @FXML private Label detailOs;
     @FXML private Label detailPorts;
+    @FXML private Label detailServices;
+    @FXML private Label detailUdpPorts;
+
+    // Telemetry panel
+    @FXML private HBox telemetryPanel;
+    @FXML private Label telemetryHosts;
+    @FXML private Label telemetryProbes;
+    @FXML private Label telemetryInFlight;
+    @FXML private Label telemetryTimeouts;
+    @FXML private Label telemetryQueue;
+    @FXML private Label telemetryEta;
 
 
     private final NetworkScanner scanner = new NetworkScanner();
     private final ObservableList<HostScanResults> scanResults = FXCollections.observableArrayList();
+    private final ResultBatcher<HostScanResults> resultBatcher = new ResultBatcher<>(scanResults, 2000);
+    private ResultTableModel tableModel;
+    private volatile ScanHandle currentScan;
+    private volatile ScanTelemetry currentTelemetry;
+    private final Timeline telemetryRefresh = new Timeline(
+            new KeyFrame(Duration.millis(250), e -> refreshTelemetry()));
 
     @FXML
     public void initialize() {
@@ -86,8 +121,21 @@ public class SmartNetController {
             osColumn.setVisible(newVal);
         });
 
+        telemetryRefresh.setCycleCount(Animation.INDEFINITE);
+
         resultTable.setColumnResizePolicy(TableView.UNCONSTRAINED_RESIZE_POLICY);
-        resultTable.setItems(scanResults);
+        tableModel = new ResultTableModel(resultTable, scanResults, Map.of(
+                ipColumn, ResultIndex.Column.IP,
+                statusColumn, ResultIndex.Column.STATUS,
+                osColumn, ResultIndex.Column.OS));
+        resultFilter.textProperty().addListener((obs, oldVal, newVal) -> {
+            try {
+                tableModel.setFilter(ResultFilter.parse(newVal));
+                resultFilter.setStyle("");
+            } catch (IllegalArgumentException e) {
+                resultFilter.setStyle("-fx-border-color: red;");
+            }
+        });
         exportCSV.setDisable(true);
 
         // 🔹 Update details panel when row is selected
@@ -110,10 +158,17 @@ public class SmartNetController {
                             detailMac.setVisible(false);
                             detailMac.setManaged(false);
                         }
+                        boolean hasVendor = newSel.getVendor() != null;
+                        vendorLabel.setVisible(hasVendor);
+                        vendorLabel.setManaged(hasVendor);
+                        detailVendor.setVisible(hasVendor);
+                        detailVendor.setManaged(hasVendor);
+                        detailVendor.setText(newSel.getVendorText());
                         detailHost.setText(newSel.getHostName());
                         detailOs.setText(newSel.getOsName() != null ? newSel.getOsName() : "Unknown");
-                        detailPorts.setText(newSel.getOpenPorts().isEmpty() ? "-" :
-                                String.join(", ", newSel.getOpenPorts().toString()));
+                        detailPorts.setText(newSel.getOpenPortsText());
+                        detailServices.setText(newSel.getServicesText());
+                        detailUdpPorts.setText(newSel.getUdpPortsText());
                     } else {
                         detailIp.setText("-");
                         detailMac.setText("-");
@@ -121,9 +176,16 @@ public class SmartNetController {
                         macLabel.setManaged(false);
                         detailMac.setVisible(false);
                         detailMac.setManaged(false);
+                        detailVendor.setText("-");
+                        vendorLabel.setVisible(false);
+                        vendorLabel.setManaged(false);
+                        detailVendor.setVisible(false);
+                        detailVendor.setManaged(false);
                         detailHost.setText("-");
                         detailOs.setText("-");
                         detailPorts.setText("-");
+                        detailServices.setText("-");
+                        detailUdpPorts.setText("-");
                     }
                 }
         );
@@ -133,6 +195,7 @@ public class SmartNetController {
     protected void startScan() {
         exportCSV.setDisable(true);
         String IPAddress = IPAddress_in.getText().trim();
+        resultBatcher.clear();
         scanResults.clear();
 
         String ipRegex = "^((25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)\\.){3}(25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)$";
@@ -162,58 +225,78 @@ public class SmartNetController {
 
         scan.setDisable(true);
         loadingOverlay.setVisible(true);
-        resultTable.setVisible(false);
+        resultTable.setVisible(!fullCIDR.isEmpty()); // subnet results stream in while scanning
 
         new Thread(() -> {
-            List<Integer> ports;
+            int[] ports;
             if (popularPortsRadio.isSelected()) {
-                ports = Arrays.asList(22, 80, 443, 8080, 21, 23, 25, 110);
+                ports = new int[]{22, 80, 443, 8080, 21, 23, 25, 110};
             } else if (top1000PortsRadio.isSelected()) {
-                ports = new java.util.ArrayList<>();
-                for (int i = 1; i <= 1000; i++) {
-                    ports.add(i);
-                }
+                ports = TopPorts.top(1000);
             } else {
-                ports = new java.util.ArrayList<>();
                 String customInput = customPortsField.getText().trim();
                 if (customInput.isEmpty()) {
-                    showAlert("Please enter custom ports (comma-separated).");
+                    showAlert("Please enter custom ports (e.g. 1-1024,3389,!25).");
                     return;
                 }
                 try {
-                    String[] parts = customInput.split(",");
-                    for (String part : parts) {
-                        int port = Integer.parseInt(part.trim());
-                        if (port < 1 || port > 65535) {
-                            showAlert("Port number out of range: " + port);
-                            return;
-                        }
-                        ports.add(port);
-                    }
-                } catch (NumberFormatException e) {
-                    showAlert("Invalid port format. Use comma-separated numbers.");
+                    ports = TopPorts.rank(PortSpec.parse(customInput));
+                } catch (IllegalArgumentException e) {
+                    showAlert(e.getMessage());
                     return;
                 }
             }
 
             boolean osScan = osScanCheckBox.isSelected();
+            boolean detectServices = serviceScanCheckBox.isSelected();
+            int[] udpPorts = udpScanCheckBox.isSelected() ? UdpScanner.COMMON_PORTS : new int[0];
 
             if (isCIDR) {
-                List<HostScanResults> results = scanner.scanSubnetCIDRThreadPool(fullCIDR, ports, 10, osScan);
+                NetworkScanner.Config config = new NetworkScanner.Config();
+                config.threads = 10;
+                config.osScan = osScan;
+                config.detectServices = detectServices;
+                config.udpPorts = udpPorts;
+                config.onResult = result -> {
+                    if (result.isReachable()) resultBatcher.offer(result);
+                };
+                config.telemetry = new ScanTelemetry();
+                currentTelemetry = config.telemetry;
+                ScanHandle handle = scanner.startScan(fullCIDR, ports, config);
+                currentScan = handle;
                 Platform.runLater(() -> {
-                    for (HostScanResults result : results) {
-                        if (result.isReachable()) {
-                            scanResults.add(result);
-                        }
-                    }
+                    cancelScan.setDisable(false);
+                    resultBatcher.start();
+                    telemetryPanel.setVisible(true);
+                    telemetryPanel.setManaged(true);
+                    telemetryRefresh.play();
+                });
+                ScanResult scanResult;
+                try {
+                    scanResult = handle.await();
+                } catch (InterruptedException e) {
+                    handle.cancel();
+                    return;
+                } finally {
+                    currentScan = null;
+                }
+                Platform.runLater(() -> {
+                    resultBatcher.stop();
                     finishScan();
                     if(!scanResults.isEmpty()) exportCSV.setDisable(false);
+                    if (!scanResult.isComplete()) {
+                        new Alert(Alert.AlertType.INFORMATION,
+                                "Scan stopped early, showing partial results.").show();
+                    }
                 });
             } else {
                 HostScanResults result;
                 try {
-                    if(osScanCheckBox.isSelected()) result = scanner.scanHost(IPAddress, ports, osScan);
-                    else result = scanner.scanHost(IPAddress, ports);
+                    NetworkScanner.Config config = new NetworkScanner.Config();
+                    config.osScan = osScan;
+                    config.detectServices = detectServices;
+                    config.udpPorts = udpPorts;
+                    result = scanner.scanHost(IPAddress, ports, config);
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
@@ -236,28 +319,11 @@ public class SmartNetController {
         File file=fileChooser.showSaveDialog(resultTable.getScene().getWindow());
         if(file!=null){
             try(FileWriter writer=new FileWriter(file)) {
-                if(osScanCheckBox.isSelected()) {
-                    writer.write("IP,Hostname,MAC,Open_Ports,OS\n");
-                    for (HostScanResults results:resultTable.getItems()){
-                        writer.write(String.format("%s,%s,%s,%s,%s\n",
-                                results.getIpAddress(),
-                                results.getHostName(),
-                                results.getMacAddress(),
-                                results.getOpenPorts().toString(),
-                                results.getOsName()
-                        ));
-                    }
-                }
-                else {
-                    writer.write("IP,Hostname,MAC,Open_Ports\n");
-                    for (HostScanResults results:resultTable.getItems()){
-                        writer.write(String.format("%s,%s,%s,%s\n",
-                                results.getIpAddress(),
-                                results.getHostName(),
-                                results.getMacAddress(),
-                                results.getOpenPorts().toString()
-                        ));
-                    }
+                CsvFormatter formatter=new CsvFormatter(osScanCheckBox.isSelected(), serviceScanCheckBox.isSelected(),
+                        udpScanCheckBox.isSelected());
+                writer.write(formatter.header()+"\n");
+                for (HostScanResults results:resultTable.getItems()){
+                    writer.write(formatter.format(results)+"\n");
                 }
             }catch (IOException e) {
                 e.printStackTrace();
@@ -266,7 +332,44 @@ public class SmartNetController {
         }
     }
 
+    @FXML
+    private void onCancelScan() {
+        ScanHandle handle = currentScan;
+        if (handle != null) {
+            cancelScan.setDisable(true);
+            // Closing capture handles can block briefly, keep it off the FX thread.
+            new Thread(handle::cancel).start();
+        }
+    }
+
+    private void refreshTelemetry() {
+        ScanTelemetry telemetry = currentTelemetry;
+        if (telemetry == null) return;
+        ScanTelemetry.Snapshot snap = telemetry.snapshot();
+        telemetryHosts.setText(String.format("Hosts: %d/%d (%d up)",
+                snap.getHostsCompleted(), snap.getHostsTotal(), snap.getHostsUp()));
+        telemetryProbes.setText(String.format("Probes: %d (%.0f/s)",
+                snap.getProbesCompleted(), snap.getProbesPerSecond()));
+        telemetryInFlight.setText(String.format("In flight: disc %d, ports %d, udp %d, dns %d, mac %d, os %d, svc %d",
+                snap.getInFlight(ScanTelemetry.Stage.DISCOVERY), snap.getInFlight(ScanTelemetry.Stage.PORTS),
+                snap.getInFlight(ScanTelemetry.Stage.UDP),
+                snap.getInFlight(ScanTelemetry.Stage.DNS), snap.getInFlight(ScanTelemetry.Stage.MAC),
+                snap.getInFlight(ScanTelemetry.Stage.OS), snap.getInFlight(ScanTelemetry.Stage.SERVICES)));
+        telemetryTimeouts.setText(String.format("Timeouts: %.1f%%", snap.getTimeoutRatio() * 100));
+        telemetryQueue.setText(String.format("Table queue: %d (max %d), %d rows in %d batches",
+                resultBatcher.getQueueDepth(), resultBatcher.getMaxQueueDepth(),
+                resultBatcher.getDeliveredCount(), resultBatcher.getBatchCount()));
+        long eta = snap.getEtaSeconds();
+        telemetryEta.setText(eta < 0 ? "ETA: -" : String.format("ETA: %d:%02d", eta / 60, eta % 60));
+    }
+
     private void finishScan() {
+        if (telemetryRefresh.getStatus() == Animation.Status.RUNNING) {
+            telemetryRefresh.stop();
+            refreshTelemetry();
+        }
+        currentTelemetry = null;
+        cancelScan.setDisable(true);
         scan.setDisable(false);
         loadingOverlay.setVisible(false);
         resultTable.setVisible(true);
@@ -0,0 +1,421 @@
+package com.smartnet.smartnet.network.checkpoint;
+
+import com.smartnet.smartnet.network.discovery.HostDiscovery;
+import com.smartnet.smartnet.network.models.HostScanResults;
+import com.smartnet.smartnet.network.models.ServiceInfo;
+import com.smartnet.smartnet.network.models.UdpPortState;
+import com.smartnet.smartnet.network.scanner.CongestionControl;
+import com.smartnet.smartnet.network.scanner.NetworkScanner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Progress of a subnet scan that can be written to disk and resumed later.
+ * Completed work is tracked by host index into the generated address list, so only
+ * the ranges and the reachable hosts need to be persisted. For randomized scans the
+ * seed is stored too, which reproduces the same (host, port) walk on resume.
+ */
+public class ScanCheckpoint {
+
+    private static final String HEADER = "smartnet-checkpoint 1";
+
+    private final String cidr;
+    private final int[] ports;
+    private final Map<String, String> settings;    // scan settings by file key, in file order
+
+    private final BitSet completed = new BitSet();
+    private final Map<Integer, HostScanResults> results = new HashMap<>();
+
+    public ScanCheckpoint(String cidr, int[] ports, NetworkScanner.Config config) {
+        this(cidr, ports, settingsOf(config));
+    }
+
+    private ScanCheckpoint(String cidr, int[] ports, Map<String, String> settings) {
+        this.cidr = cidr;
+        this.ports = ports.clone();
+        this.settings = settings;
+    }
+
+    public String getCidr() { return cidr; }
+    public int[] getPorts() { return ports.clone(); }
+
+    /**
+     * Scan settings as they were when the scan started, so a resume walks the same targets in
+     * the same order and probes them the same way. Everything but the per-run wiring is kept:
+     * the checkpoint file, listeners, telemetry and the shared probe budget.
+     */
+    public NetworkScanner.Config toConfig() {
+        return configOf(settings);
+    }
+
+    public synchronized boolean isCompleted(int index) {
+        return completed.get(index);
+    }
+
+    public synchronized int completedCount() {
+        return completed.cardinality();
+    }
+
+    /**
+     * Records a finished address. Only reachable hosts keep their result; down hosts
+     * are rebuilt from the completed ranges on resume.
+     */
+    public synchronized void markCompleted(int index, HostScanResults result) {
+        completed.set(index);
+        if (result != null && result.isReachable()) {
+            results.put(index, result);
+        }
+    }
+
+    public synchronized HostScanResults getResult(int index) {
+        return results.get(index);
+    }
+
+    /** Reachable hosts recorded so far, in scan index order. */
+    public synchronized List<HostScanResults> getResults() {
+        List<HostScanResults> out = new ArrayList<>(results.size());
+        for (int i = completed.nextSetBit(0); i >= 0; i = completed.nextSetBit(i + 1)) {
+            HostScanResults result = results.get(i);
+            if (result != null) out.add(result);
+        }
+        return out;
+    }
+
+    /**
+     * Writes the checkpoint to a temp file next to the target and moves it into place,
+     * so a crash mid-write never leaves a truncated checkpoint behind.
+     */
+    public void save(Path file) throws IOException {
+        String snapshot = toText();
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, snapshot, StandardCharsets.UTF_8);
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static ScanCheckpoint load(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader, file.toString());
+        }
+    }
+
+    /** Parses the text written by {@link #toText()}, e.g. scan settings sent to a shard worker. */
+    public static ScanCheckpoint parse(String text) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            return read(reader, "text");
+        }
+    }
+
+    private static ScanCheckpoint read(BufferedReader reader, String source) throws IOException {
+        String line = reader.readLine();
+        if (!HEADER.equals(line)) {
+            throw new IOException("Not a SmartNet checkpoint: " + source);
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        List<String> resultLines = new ArrayList<>();
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("result=")) {
+                resultLines.add(line.substring("result=".length()));
+            } else if (line.contains("=")) {
+                int eq = line.indexOf('=');
+                params.put(line.substring(0, eq), line.substring(eq + 1));
+            }
+        }
+
+        String cidr = params.remove("cidr");
+        int[] ports = toArray(parsePorts(params.getOrDefault("ports", "")));
+        params.remove("ports");
+        String completedRanges = params.getOrDefault("completed", "");
+        params.remove("completed");
+        ScanCheckpoint checkpoint = new ScanCheckpoint(cidr, ports, params);
+
+        for (String range : completedRanges.split(",")) {
+            if (range.isEmpty()) continue;
+            int dash = range.indexOf('-');
+            int from = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+            int to = Integer.parseInt(dash < 0 ? range : range.substring(dash + 1));
+            checkpoint.completed.set(from, to + 1);
+        }
+        for (String resultLine : resultLines) {
+            int tab = resultLine.indexOf('\t');
+            checkpoint.results.put(Integer.parseInt(resultLine.substring(0, tab)),
+                    parseResult(resultLine.substring(tab + 1)));
+        }
+        return checkpoint;
+    }
+
+    /** The checkpoint in its file format: settings, completed ranges and reachable hosts. */
+    public synchronized String toText() {
+        StringBuilder sb = new StringBuilder(256 + results.size() * 64);
+        sb.append(HEADER).append('\n');
+        sb.append("cidr=").append(cidr).append('\n');
+        sb.append("ports=");
+        for (int i = 0; i < ports.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(ports[i]);
+        }
+        sb.append('\n');
+        for (Map.Entry<String, String> e : settings.entrySet()) {
+            sb.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+        }
+
+        sb.append("completed=");
+        int from = completed.nextSetBit(0);
+        boolean first = true;
+        while (from >= 0) {
+            int to = completed.nextClearBit(from) - 1;
+            if (!first) sb.append(',');
+            sb.append(from).append('-').append(to);
+            first = false;
+            from = completed.nextSetBit(to + 1);
+        }
+        sb.append('\n');
+
+        for (Map.Entry<Integer, HostScanResults> e : results.entrySet()) {
+            sb.append("result=").append(e.getKey()).append('\t').append(formatResult(e.getValue())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** A reachable host as one tab-separated line: ip, ports, mac, host, os, services, udp, vendor. */
+    public static String formatResult(HostScanResults r) {
+        return clean(r.getIpAddress())
+                + '\t' + joinPorts(r.getOpenPorts())
+                + '\t' + clean(r.getMacAddress())
+                + '\t' + clean(r.getHostName())
+                + '\t' + clean(r.getOsName())
+                + '\t' + joinServices(r.getServices())
+                + '\t' + joinUdpPorts(r.getUdpPorts())
+                + '\t' + clean(r.getVendor());
+    }
+
+    public static HostScanResults parseResult(String line) {
+        String[] f = line.split("\t", -1);
+        return new HostScanResults(f[0], true, parsePorts(f[1]), f[2],
+                f.length > 7 && !f[7].isEmpty() ? f[7] : null, f[3],
+                f[4].isEmpty() ? null : f[4], f.length > 5 ? parseServices(f[5]) : Map.of(),
+                f.length > 6 ? parseUdpPorts(f[6]) : Map.of());
+    }
+
+    private static String clean(String value) {
+        if (value == null) return "";
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String joinPorts(List<Integer> ports) {
+        StringBuilder sb = new StringBuilder(ports.size() * 5);
+        for (int i = 0; i < ports.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(ports.get(i));
+        }
+        return sb.toString();
+    }
+
+    /** port|service|version|identified, separated by ';'. Detected versions never contain '|' or ';'. */
+    private static String joinServices(Map<Integer, ServiceInfo> services) {
+        StringBuilder sb = new StringBuilder();
+        for (ServiceInfo info : services.values()) {
+            if (sb.length() > 0) sb.append(';');
+            sb.append(info.getPort()).append('|').append(info.getService())
+                    .append('|').append(info.getVersion() == null ? "" : clean(info.getVersion()))
+                    .append('|').append(info.isIdentified() ? 1 : 0);
+        }
+        return sb.toString();
+    }
+
+    private static Map<Integer, ServiceInfo> parseServices(String value) {
+        if (value.isEmpty()) return Map.of();
+        Map<Integer, ServiceInfo> services = new TreeMap<>();
+        for (String entry : value.split(";")) {
+            String[] f = entry.split("\\|", -1);
+            if (f.length < 4) continue;
+            int port = Integer.parseInt(f[0]);
+            services.put(port, new ServiceInfo(port, f[1], f[2].isEmpty() ? null : f[2], f[3].equals("1")));
+        }
+        return services;
+    }
+
+    /** port|state separated by ';', state being the enum name. */
+    private static String joinUdpPorts(Map<Integer, UdpPortState> udpPorts) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, UdpPortState> e : udpPorts.entrySet()) {
+            if (sb.length() > 0) sb.append(';');
+            sb.append(e.getKey()).append('|').append(e.getValue().name());
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, String> settingsOf(NetworkScanner.Config c) {
+        Map<String, String> s = new LinkedHashMap<>();
+        s.put("udpPorts", joinPorts(c.udpPorts));
+        s.put("threads", String.valueOf(c.threads));
+        s.put("osScan", String.valueOf(c.osScan));
+        s.put("portTimeout", String.valueOf(c.portTimeoutMillis));
+        s.put("maxOpenPorts", String.valueOf(c.maxOpenPorts));
+        s.put("randomizeOrder", String.valueOf(c.randomizeOrder));
+        s.put("seed", String.valueOf(c.seed));
+        s.put("shardStart", String.valueOf(c.shardStart));
+        s.put("shardEnd", String.valueOf(c.shardEnd));
+        s.put("detectServices", String.valueOf(c.detectServices));
+        StringBuilder probes = new StringBuilder();
+        for (HostDiscovery.Probe probe : c.discovery.probes) {
+            if (probes.length() > 0) probes.append(',');
+            probes.append(probe.name());
+        }
+        s.put("discovery", probes.toString());
+        s.put("icmpSweep", String.valueOf(c.icmpSweep));
+        s.put("deadline", String.valueOf(c.deadlineMillis));
+        s.put("adaptive", String.valueOf(c.congestion != null));
+        s.put("discoveryThreads", String.valueOf(c.discoveryThreads));
+        s.put("portThreads", String.valueOf(c.portThreads));
+        s.put("enrichThreads", String.valueOf(c.enrichThreads));
+        s.put("stageQueueCapacity", String.valueOf(c.stageQueueCapacity));
+        s.put("discovery.icmpTimeout", String.valueOf(c.discovery.icmpTimeoutMillis));
+        s.put("discovery.tcpTimeout", String.valueOf(c.discovery.tcpTimeoutMillis));
+        s.put("discovery.tcpPorts", joinPorts(c.discovery.tcpPorts));
+        s.put("discovery.arpTimeout", String.valueOf(c.discovery.arpTimeoutMillis));
+        s.put("discovery.arpAuthoritative", String.valueOf(c.discovery.arpAuthoritative));
+        s.put("services.bannerWait", String.valueOf(c.serviceDetection.bannerWaitMillis));
+        s.put("services.probeWait", String.valueOf(c.serviceDetection.probeWaitMillis));
+        s.put("services.maxBytes", String.valueOf(c.serviceDetection.maxBytes));
+        s.put("udp.timeout", String.valueOf(c.udp.timeoutMillis));
+        s.put("udp.retries", String.valueOf(c.udp.retries));
+        s.put("udp.maxInFlight", String.valueOf(c.udp.maxInFlight));
+        s.put("udp.hostRate", String.valueOf(c.udp.hostProbesPerSecond));
+        s.put("udp.minHostRate", String.valueOf(c.udp.minHostProbesPerSecond));
+        s.put("udp.capture", String.valueOf(c.udp.capture));
+        s.put("sweep.rate", String.valueOf(c.sweep.packetsPerSecond));
+        s.put("sweep.retries", String.valueOf(c.sweep.retries));
+        s.put("sweep.wait", String.valueOf(c.sweep.waitMillis));
+        s.put("sweep.readTimeout", String.valueOf(c.sweep.readTimeoutMillis));
+        return s;
+    }
+
+    /** Settings missing from older checkpoints keep the defaults of a new config. */
+    private static NetworkScanner.Config configOf(Map<String, String> s) {
+        NetworkScanner.Config c = new NetworkScanner.Config();
+        c.threads = intOf(s, "threads", c.threads);
+        c.osScan = boolOf(s, "osScan", c.osScan);
+        c.portTimeoutMillis = intOf(s, "portTimeout", c.portTimeoutMillis);
+        c.maxOpenPorts = intOf(s, "maxOpenPorts", c.maxOpenPorts);
+        c.randomizeOrder = boolOf(s, "randomizeOrder", c.randomizeOrder);
+        c.seed = longOf(s, "seed", c.seed);
+        c.shardStart = longOf(s, "shardStart", c.shardStart);
+        c.shardEnd = longOf(s, "shardEnd", c.shardEnd);
+        c.detectServices = boolOf(s, "detectServices", c.detectServices);
+        c.udpPorts = toArray(parsePorts(s.getOrDefault("udpPorts", "")));
+        if (s.containsKey("discovery")) {
+            c.discovery.probes = EnumSet.noneOf(HostDiscovery.Probe.class);
+            for (String probe : s.get("discovery").split(",")) {
+                if (!probe.isEmpty()) c.discovery.probes.add(HostDiscovery.Probe.valueOf(probe));
+            }
+        }
+        c.icmpSweep = boolOf(s, "icmpSweep", c.icmpSweep);
+        c.deadlineMillis = longOf(s, "deadline", c.deadlineMillis);
+        if (boolOf(s, "adaptive", false)) c.congestion = new CongestionControl();
+        c.discoveryThreads = intOf(s, "discoveryThreads", c.discoveryThreads);
+        c.portThreads = intOf(s, "portThreads", c.portThreads);
+        c.enrichThreads = intOf(s, "enrichThreads", c.enrichThreads);
+        c.stageQueueCapacity = intOf(s, "stageQueueCapacity", c.stageQueueCapacity);
+        c.discovery.icmpTimeoutMillis = intOf(s, "discovery.icmpTimeout", c.discovery.icmpTimeoutMillis);
+        c.discovery.tcpTimeoutMillis = intOf(s, "discovery.tcpTimeout", c.discovery.tcpTimeoutMillis);
+        if (s.containsKey("discovery.tcpPorts")) {
+            c.discovery.tcpPorts = toArray(parsePorts(s.get("discovery.tcpPorts")));
+        }
+        c.discovery.arpTimeoutMillis = intOf(s, "discovery.arpTimeout", c.discovery.arpTimeoutMillis);
+        c.discovery.arpAuthoritative = boolOf(s, "discovery.arpAuthoritative", c.discovery.arpAuthoritative);
+        c.serviceDetection.bannerWaitMillis = intOf(s, "services.bannerWait", c.serviceDetection.bannerWaitMillis);
+        c.serviceDetection.probeWaitMillis = intOf(s, "services.probeWait", c.serviceDetection.probeWaitMillis);
+        c.serviceDetection.maxBytes = intOf(s, "services.maxBytes", c.serviceDetection.maxBytes);
+        c.udp.timeoutMillis = intOf(s, "udp.timeout", c.udp.timeoutMillis);
+        c.udp.retries = intOf(s, "udp.retries", c.udp.retries);
+        c.udp.maxInFlight = intOf(s, "udp.maxInFlight", c.udp.maxInFlight);
+        c.udp.hostProbesPerSecond = doubleOf(s, "udp.hostRate", c.udp.hostProbesPerSecond);
+        c.udp.minHostProbesPerSecond = doubleOf(s, "udp.minHostRate", c.udp.minHostProbesPerSecond);
+        c.udp.capture = boolOf(s, "udp.capture", c.udp.capture);
+        c.sweep.packetsPerSecond = intOf(s, "sweep.rate", c.sweep.packetsPerSecond);
+        c.sweep.retries = intOf(s, "sweep.retries", c.sweep.retries);
+        c.sweep.waitMillis = intOf(s, "sweep.wait", c.sweep.waitMillis);
+        c.sweep.readTimeoutMillis = intOf(s, "sweep.readTimeout", c.sweep.readTimeoutMillis);
+        return c;
+    }
+
+    private static int intOf(Map<String, String> s, String key, int fallback) {
+        String value = s.get(key);
+        return value != null ? Integer.parseInt(value) : fallback;
+    }
+
+    private static long longOf(Map<String, String> s, String key, long fallback) {
+        String value = s.get(key);
+        return value != null ? Long.parseLong(value) : fallback;
+    }
+
+    private static double doubleOf(Map<String, String> s, String key, double fallback) {
+        String value = s.get(key);
+        return value != null ? Double.parseDouble(value) : fallback;
+    }
+
+    private static boolean boolOf(Map<String, String> s, String key, boolean fallback) {
+        String value = s.get(key);
+        return value != null ? Boolean.parseBoolean(value) : fallback;
+    }
+
+    private static String joinPorts(int[] ports) {
+        StringBuilder sb = new StringBuilder(ports.length * 5);
+        for (int i = 0; i < ports.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(ports[i]);
+        }
+        return sb.toString();
+    }
+
+    private static Map<Integer, UdpPortState> parseUdpPorts(String value) {
+        if (value.isEmpty()) return Map.of();
+        Map<Integer, UdpPortState> udpPorts = new TreeMap<>();
+        for (String entry : value.split(";")) {
+            int bar = entry.indexOf('|');
+            if (bar < 0) continue;
+            udpPorts.put(Integer.parseInt(entry.substring(0, bar)), UdpPortState.valueOf(entry.substring(bar + 1)));
+        }
+        return udpPorts;
+    }
+
+    private static int[] toArray(List<Integer> ports) {
+        int[] array = new int[ports.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ports.get(i);
+        }
+        return array;
+    }
+
+    private static List<Integer> parsePorts(String value) {
+        List<Integer> ports = new ArrayList<>();
+        for (String p : value.split(",")) {
+            if (!p.isEmpty()) ports.add(Integer.parseInt(p.trim()));
+        }
+        return ports;
+    }
+}
@@ -0,0 +1,209 @@
+package com.smartnet.smartnet.network.discovery;
+
+import com.smartnet.smartnet.network.macutils.ArpResolver;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+import com.smartnet.smartnet.network.utils.Reachability;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a host is up by racing several cheap probes at once and taking the first
+ * positive answer; the probes still running are then cancelled.
+ * <ul>
+ *     <li>{@link Probe#ICMP}: an echo request, or the JDK's TCP echo-port fallback without privileges</li>
+ *     <li>{@link Probe#TCP}: non-blocking connects to a few common ports; a refused connection counts,
+ *     since only a live host sends the RST</li>
+ *     <li>{@link Probe#ARP}: for targets on a directly attached Ethernet subnet, resolves the neighbour
+ *     through the shared {@link ArpResolver}</li>
+ * </ul>
+ * A host on the local link has to answer ARP to receive anything at all, so with
+ * {@link Config#arpAuthoritative} an unanswered ARP ends the race as down without waiting for
+ * the other timeouts.
+ */
+public class HostDiscovery {
+
+    public enum Probe { ICMP, TCP, ARP }
+
+    public static class Config {
+        public Set<Probe> probes = EnumSet.allOf(Probe.class);
+        public int icmpTimeoutMillis = 800;
+        public int tcpTimeoutMillis = 500;
+        public int[] tcpPorts = {80, 443, 22};
+        public int arpTimeoutMillis = 300;
+        public boolean arpAuthoritative = true;     // on-link target without an ARP reply is down
+
+        /** Copy of these settings with one probe left out. */
+        public Config without(Probe probe) {
+            Config copy = new Config();
+            copy.probes = EnumSet.noneOf(Probe.class);
+            copy.probes.addAll(probes);
+            copy.probes.remove(probe);
+            copy.icmpTimeoutMillis = icmpTimeoutMillis;
+            copy.tcpTimeoutMillis = tcpTimeoutMillis;
+            copy.tcpPorts = tcpPorts;
+            copy.arpTimeoutMillis = arpTimeoutMillis;
+            copy.arpAuthoritative = arpAuthoritative;
+            return copy;
+        }
+    }
+
+    private static final AtomicInteger PROBE_THREADS = new AtomicInteger();
+    private static final ExecutorService PROBES = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "smartnet-discovery-probe-" + PROBE_THREADS.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Reachability reachability = new Reachability();
+
+    /**
+     * Races the configured probes against each other. Returns as soon as one of them proves the
+     * host up, or once all have failed.
+     */
+    public boolean isUp(String ip, Config config, CancellationToken token) {
+        List<Probe> probes = new ArrayList<>(config.probes);
+        if (probes.isEmpty()) return true;   // discovery disabled: treat every target as up
+        Race race = new Race(probes.size());
+        token.register(race);
+        List<Future<?>> running = new ArrayList<>(probes.size());
+        try {
+            for (Probe probe : probes) {
+                running.add(PROBES.submit(() -> race.report(run(probe, ip, config, race.probes))));
+            }
+            return race.up.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        } finally {
+            token.unregister(race);
+            race.close();
+            for (Future<?> future : running) future.cancel(true);
+        }
+    }
+
+    /** Result of one probe: up, down, or no verdict (not applicable, or no answer). */
+    private enum Verdict { UP, DOWN, UNKNOWN }
+
+    private Verdict run(Probe probe, String ip, Config config, CancellationToken probes) {
+        try {
+            return switch (probe) {
+                case ICMP -> reachability.isReachable(ip, config.icmpTimeoutMillis) ? Verdict.UP : Verdict.UNKNOWN;
+                case TCP -> tcpPing(ip, config, probes) ? Verdict.UP : Verdict.UNKNOWN;
+                case ARP -> arpPing(ip, config, probes);
+            };
+        } catch (IOException | RuntimeException e) {
+            return Verdict.UNKNOWN;
+        }
+    }
+
+    /** Connects to every configured port at once; the first connect or refusal proves the host up. */
+    private static boolean tcpPing(String ip, Config config, CancellationToken probes) throws IOException {
+        List<SocketChannel> channels = new ArrayList<>();
+        try (Selector selector = Selector.open()) {
+            probes.register(selector);
+            for (int port : config.tcpPorts) {
+                SocketChannel channel = SocketChannel.open();
+                channels.add(channel);
+                channel.setOption(StandardSocketOptions.SO_LINGER, 0);    // RST on close, no TIME_WAIT
+                channel.configureBlocking(false);
+                try {
+                    if (channel.connect(new InetSocketAddress(ip, port))) return true;
+                } catch (ConnectException e) {
+                    return true;
+                }
+                channel.register(selector, SelectionKey.OP_CONNECT);
+            }
+            long deadline = System.nanoTime() + config.tcpTimeoutMillis * 1_000_000L;
+            int pending = channels.size();
+            while (pending > 0) {
+                long left = (deadline - System.nanoTime()) / 1_000_000L;
+                if (left <= 0) return false;
+                selector.select(left);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    try {
+                        if (((SocketChannel) key.channel()).finishConnect()) return true;
+                    } catch (ConnectException e) {
+                        return true;    // RST: something answered
+                    } catch (IOException e) {
+                        // no route, host unreachable: no verdict from this port
+                    }
+                    key.cancel();
+                    pending--;
+                }
+                selector.selectedKeys().clear();
+            }
+            return false;
+        } catch (ClosedSelectorException e) {
+            return false;   // another probe won
+        } finally {
+            for (SocketChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Asks the shared {@link ArpResolver} for the target's MAC. Only answers for on-link
+     * targets, and only where the resolver works (Linux, or pcap).
+     */
+    private static Verdict arpPing(String ip, Config config, CancellationToken probes) {
+        ArpResolver arp = ArpResolver.shared();
+        if (!arp.isAvailable() || !arp.isOnLink(ip)) return Verdict.UNKNOWN;
+        if (arp.resolve(ip, config.arpTimeoutMillis, probes) != null) return Verdict.UP;
+        if (probes.isCancelled()) return Verdict.UNKNOWN;
+        return config.arpAuthoritative ? Verdict.DOWN : Verdict.UNKNOWN;
+    }
+
+    /**
+     * One host's race. Closing it (first positive answer, or the scan being cancelled) closes the
+     * sockets and selectors the probes registered, which unblocks them right away.
+     */
+    private static final class Race implements Closeable {
+        final CancellationToken probes = new CancellationToken(0);
+        final CompletableFuture<Boolean> up = new CompletableFuture<>();
+        final AtomicInteger pending;
+
+        Race(int count) {
+            this.pending = new AtomicInteger(count);
+        }
+
+        void report(Verdict verdict) {
+            if (verdict == Verdict.UP) {
+                up.complete(true);
+            } else if (verdict == Verdict.DOWN) {
+                up.complete(false);
+            } else if (pending.decrementAndGet() == 0) {
+                up.complete(false);
+            }
+        }
+
+        @Override
+        public void close() {
+            up.complete(false);
+            probes.cancel();
+        }
+    }
+}
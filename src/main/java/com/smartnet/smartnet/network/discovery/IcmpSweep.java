@@ -0,0 +1,292 @@
+package com.smartnet.smartnet.network.discovery;
+
+import com.smartnet.smartnet.network.macutils.ArpResolver;
+import com.smartnet.smartnet.network.metrics.ScanMetrics;
+import com.smartnet.smartnet.network.networkinterfacemanager.NetworkInterfaceManager;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+import org.pcap4j.core.BpfProgram;
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapAddress;
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNetworkInterface;
+import org.pcap4j.packet.EthernetPacket;
+import org.pcap4j.packet.IcmpV4CommonPacket;
+import org.pcap4j.packet.IcmpV4EchoPacket;
+import org.pcap4j.packet.IcmpV4EchoReplyPacket;
+import org.pcap4j.packet.IpV4Packet;
+import org.pcap4j.packet.IpV4Rfc791Tos;
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.UnknownPacket;
+import org.pcap4j.packet.namednumber.EtherType;
+import org.pcap4j.packet.namednumber.IcmpV4Code;
+import org.pcap4j.packet.namednumber.IcmpV4Type;
+import org.pcap4j.packet.namednumber.IpNumber;
+import org.pcap4j.packet.namednumber.IpVersion;
+import org.pcap4j.util.MacAddress;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ICMP echo sweep over one pcap handle: echo requests for the whole target list go out at a
+ * paced rate while a reader thread collects the replies, so a /16 takes seconds instead of one
+ * blocking ping per address. Nothing is kept per target while the sweep runs. Every request
+ * carries the sweep's random identifier, a sequence number derived from the target address and
+ * a secret, and its send time in the payload, so a reply is matched and timed from its own
+ * contents; stray echo replies from other programs fail the cookie check.
+ * <p>
+ * Targets are grouped by the interface they route through, and each interface runs its own
+ * handle, sender and reader in parallel, so a scanner with several NICs sweeps them all at
+ * full rate. Frames for off-link targets go to the MAC of the route's gateway; on-link targets
+ * use a MAC the {@link ArpResolver} already knows and Ethernet broadcast otherwise.
+ */
+public class IcmpSweep {
+
+    public static class Config {
+        public int packetsPerSecond = 5000;     // per interface
+        public int retries = 1;                 // extra rounds for targets that have not answered yet
+        public int waitMillis = 1000;           // listen this long after the last request of a round
+        public int readTimeoutMillis = 50;
+    }
+
+    private static final int SNAP_LEN = 128;
+    private static final int PAYLOAD_LENGTH = 16;  // magic, send time
+    private static final long MAGIC = 0x536d6172744e6574L; // "SmartNet"
+
+    private final Config config;
+
+    public IcmpSweep(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Sweeps the targets and returns the round-trip time in microseconds of every address that
+     * answered. Throws if no interface can capture (no pcap driver, no permission).
+     */
+    public Map<String, Long> sweep(List<String> targets, CancellationToken token) throws Exception {
+        Map<PcapNetworkInterface, List<String>> byInterface = new LinkedHashMap<>();
+        for (String target : targets) {
+            byInterface.computeIfAbsent(NetworkInterfaceManager.getInterfaceFor(target), n -> new ArrayList<>())
+                    .add(target);
+        }
+        Map<String, Long> replies = new ConcurrentHashMap<>();
+        if (byInterface.size() == 1) {
+            Map.Entry<PcapNetworkInterface, List<String>> only = byInterface.entrySet().iterator().next();
+            sweep(only.getKey(), only.getValue(), replies, token);
+            return replies;
+        }
+        ExecutorService engines = Executors.newFixedThreadPool(byInterface.size(), r -> {
+            Thread t = new Thread(r, "smartnet-icmp-sweep-send");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (Map.Entry<PcapNetworkInterface, List<String>> group : byInterface.entrySet()) {
+                running.add(engines.submit(() -> {
+                    sweep(group.getKey(), group.getValue(), replies, token);
+                    return null;
+                }));
+            }
+            Exception failure = null;
+            int failed = 0;
+            for (Future<?> future : running) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    failure = e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+            // One NIC without capture rights should not hide the answers from the others.
+            if (failed == running.size()) throw failure;
+        } finally {
+            engines.shutdownNow();
+        }
+        return replies;
+    }
+
+    /** One interface's engine: its own handle, paced sender (this thread) and reply reader. */
+    private void sweep(PcapNetworkInterface nif, List<String> targets, Map<String, Long> replies,
+                       CancellationToken token) throws Exception {
+        Inet4Address srcAddr = null;
+        int netmask = -1;
+        for (PcapAddress addr : nif.getAddresses()) {
+            if (addr.getAddress() instanceof Inet4Address a) {
+                srcAddr = a;
+                if (addr.getNetmask() != null) netmask = toInt(addr.getNetmask().getAddress());
+                break;
+            }
+        }
+        if (srcAddr == null) {
+            throw new IllegalStateException("No IPv4 address for interface " + nif.getName());
+        }
+        if (nif.getLinkLayerAddresses() == null || nif.getLinkLayerAddresses().isEmpty()) {
+            throw new IllegalStateException("No link-layer (MAC) address found for " + nif.getName());
+        }
+        MacAddress srcMac = (MacAddress) nif.getLinkLayerAddresses().get(0);
+        Map<String, MacAddress> gatewayMacs = new HashMap<>();
+        int localNet = toInt(srcAddr.getAddress()) & netmask;
+
+        short identifier = (short) ThreadLocalRandom.current().nextInt();
+        int secret = ThreadLocalRandom.current().nextInt();
+        int answered = 0;
+
+        try (PcapHandle handle = nif.openLive(SNAP_LEN, PcapNetworkInterface.PromiscuousMode.NONPROMISCUOUS,
+                config.readTimeoutMillis)) {
+            token.register(handle);
+            handle.setFilter("icmp[icmptype] == icmp-echoreply and dst host " + srcAddr.getHostAddress(),
+                    BpfProgram.BpfCompileMode.OPTIMIZE);
+            Thread reader = new Thread(() -> receive(handle, identifier, secret, replies),
+                    "smartnet-icmp-sweep-" + nif.getName());
+            reader.setDaemon(true);
+            reader.start();
+            try {
+                long interval = 1_000_000_000L / Math.max(1, config.packetsPerSecond);
+                for (int round = 0; round <= config.retries && !token.isCancelled(); round++) {
+                    long next = System.nanoTime();
+                    for (String target : targets) {
+                        if (token.isCancelled()) break;
+                        if (replies.containsKey(target)) continue;
+                        long wait = next - System.nanoTime();
+                        if (wait > 0) LockSupport.parkNanos(wait);
+                        next += interval;
+                        Inet4Address dst = (Inet4Address) InetAddress.getByName(target);
+                        MacAddress dstMac = (toInt(dst.getAddress()) & netmask) == localNet
+                                ? onLinkMac(target) : offLinkMac(target, gatewayMacs);
+                        handle.sendPacket(buildEchoRequest(srcMac, dstMac, srcAddr, dst, identifier,
+                                cookie(secret, dst), System.nanoTime()));
+                        ScanMetrics.packetSent();
+                    }
+                    long until = System.nanoTime() + config.waitMillis * 1_000_000L;
+                    while (!token.isCancelled() && System.nanoTime() - until < 0) {
+                        answered = 0;
+                        for (String target : targets) {
+                            if (replies.containsKey(target)) answered++;
+                        }
+                        if (answered == targets.size()) break;
+                        LockSupport.parkNanos(10_000_000L);
+                    }
+                    if (answered == targets.size()) break;
+                }
+            } finally {
+                token.unregister(handle);
+                handle.breakLoop();
+                reader.interrupt();
+                reader.join(config.readTimeoutMillis * 4L);
+            }
+        }
+    }
+
+    private static void receive(PcapHandle handle, short identifier, int secret, Map<String, Long> replies) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Packet packet = handle.getNextPacketEx();
+                if (packet == null) continue;
+                long received = System.nanoTime();
+                ScanMetrics.packetReceived();
+                IpV4Packet ip = packet.get(IpV4Packet.class);
+                IcmpV4EchoReplyPacket reply = packet.get(IcmpV4EchoReplyPacket.class);
+                if (ip == null || reply == null) continue;
+                Inet4Address src = ip.getHeader().getSrcAddr();
+                if (reply.getHeader().getIdentifier() != identifier
+                        || reply.getHeader().getSequenceNumber() != cookie(secret, src)) {
+                    continue; // someone else's ping, or a forged reply
+                }
+                Packet payload = reply.getPayload();
+                if (payload == null || payload.length() < PAYLOAD_LENGTH) continue;
+                ByteBuffer data = ByteBuffer.wrap(payload.getRawData());
+                if (data.getLong() != MAGIC) continue;
+                long rttMicros = Math.max(0, (received - data.getLong()) / 1000);
+                replies.putIfAbsent(src.getHostAddress(), rttMicros);
+            } catch (TimeoutException ignored) {
+            } catch (NotOpenException e) {
+                return;
+            } catch (Exception e) {
+                if (handle.isOpen()) e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /** Sequence number for a target: the reply has to come from the address it was sent to. */
+    static short cookie(int secret, Inet4Address target) {
+        int h = (toInt(target.getAddress()) ^ secret) * 0x9e3779b1;
+        return (short) (h ^ (h >>> 16));
+    }
+
+    /** Builds an Ethernet/IPv4/ICMP echo request; no capture handle needed. */
+    static Packet buildEchoRequest(MacAddress srcMac, MacAddress dstMac, Inet4Address srcAddr, Inet4Address dst,
+                                   short identifier, short sequence, long sentNanos) {
+        byte[] payload = ByteBuffer.allocate(PAYLOAD_LENGTH).putLong(MAGIC).putLong(sentNanos).array();
+        IcmpV4EchoPacket.Builder echoBuilder = new IcmpV4EchoPacket.Builder();
+        echoBuilder
+                .identifier(identifier)
+                .sequenceNumber(sequence)
+                .payloadBuilder(new UnknownPacket.Builder().rawData(payload));
+
+        IcmpV4CommonPacket.Builder icmpBuilder = new IcmpV4CommonPacket.Builder();
+        icmpBuilder
+                .type(IcmpV4Type.ECHO)
+                .code(IcmpV4Code.NO_CODE)
+                .payloadBuilder(echoBuilder)
+                .correctChecksumAtBuild(true);
+
+        IpV4Packet.Builder ipBuilder = new IpV4Packet.Builder();
+        ipBuilder
+                .version(IpVersion.IPV4)
+                .tos(IpV4Rfc791Tos.newInstance((byte) 0))
+                .ttl((byte) 64)
+                .protocol(IpNumber.ICMPV4)
+                .identification(sequence)
+                .srcAddr(srcAddr)
+                .dstAddr(dst)
+                .payloadBuilder(icmpBuilder)
+                .correctChecksumAtBuild(true)
+                .correctLengthAtBuild(true);
+
+        EthernetPacket.Builder etherBuilder = new EthernetPacket.Builder();
+        etherBuilder
+                .dstAddr(dstMac)
+                .srcAddr(srcMac)
+                .type(EtherType.IPV4)
+                .payloadBuilder(ipBuilder)
+                .paddingAtBuild(true);
+
+        return etherBuilder.build();
+    }
+
+    /** Gateway MAC for the target's route, resolved once per gateway. */
+    private static MacAddress offLinkMac(String ip, Map<String, MacAddress> gatewayMacs) {
+        String gateway = NetworkInterfaceManager.getGatewayFor(ip);
+        if (gateway == null) gateway = NetworkInterfaceManager.getDefaultGatewayIp();
+        if (gateway == null) return MacAddress.ETHER_BROADCAST_ADDRESS;
+        return gatewayMacs.computeIfAbsent(gateway, g -> {
+            String mac = NetworkInterfaceManager.getGatewayMac(g);
+            return mac != null ? MacAddress.getByName(mac.replace('-', ':')) : MacAddress.ETHER_BROADCAST_ADDRESS;
+        });
+    }
+
+    private static MacAddress onLinkMac(String ip) {
+        String mac = ArpResolver.shared().lookup(ip);
+        return mac != null ? MacAddress.getByName(mac) : MacAddress.ETHER_BROADCAST_ADDRESS;
+    }
+
+    private static int toInt(byte[] address) {
+        return (address[0] & 0xff) << 24 | (address[1] & 0xff) << 16 | (address[2] & 0xff) << 8 | (address[3] & 0xff);
+    }
+}
@@ -0,0 +1,369 @@
+package com.smartnet.smartnet.network.distributed;
+
+import com.smartnet.smartnet.network.checkpoint.ScanCheckpoint;
+import com.smartnet.smartnet.network.models.HostScanResults;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+import com.smartnet.smartnet.network.scanner.NetworkScanner;
+import com.smartnet.smartnet.network.scanner.ScanResult;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Splits one subnet scan into shards and leases them to {@link ShardWorker} processes over a
+ * line-based TCP protocol. Shards are CIDR blocks of {@link Config#shardHosts} addresses, so
+ * every host is probed, discovered and enriched by exactly one worker. A randomized scan hands
+ * the blocks out in seeded random order and each worker walks its block's (host, port) space
+ * in random order.
+ * <p>
+ * A worker keeps its lease alive with heartbeats. When it disconnects or goes silent for
+ * {@link Config#leaseMillis}, its shard goes back to the queue for another worker; results of a
+ * shard are only kept once its worker reports it finished, so a rescanned shard is never
+ * counted twice.
+ * <p>
+ * The coordinator listens on {@link Config#bindAddress}, loopback unless told otherwise, and a
+ * worker must open with the shared {@link Config#token} before it sees the job or may report
+ * results. The protocol itself is plain text; run it over a trusted network or a tunnel.
+ * <p>
+ * Protocol, one message per line, worker first:
+ * <pre>
+ *   HELLO name token     -> JOB n, then n lines of scan settings in checkpoint format | DENIED
+ *   NEXT                 -> SHARD id cidr | WAIT | DONE
+ *   PING id              (heartbeat while scanning the shard)
+ *   RESULT id host-line  (a reachable host, in checkpoint result format)
+ *   END id               (shard finished)
+ * </pre>
+ */
+public class ShardCoordinator implements Closeable {
+
+    public static class Config {
+        public int port = 0;                        // 0 = any free port, see getPort()
+        public String bindAddress = "127.0.0.1";    // where workers connect; 0.0.0.0 for every interface
+        public String token = null;                 // shared secret workers present, null = generate one
+        public int shardHosts = 256;                // addresses per shard
+        public long leaseMillis = 30_000;           // a worker silent this long loses its shard
+        public Consumer<HostScanResults> onResult = null; // merged hosts, from connection threads
+    }
+
+    private enum State { PENDING, LEASED, DONE }
+
+    private static final class Shard {
+        final int id;
+        final String cidr;
+        State state = State.PENDING;
+        Connection owner;
+        long leaseDeadline;
+        List<HostScanResults> buffered = new ArrayList<>();
+
+        Shard(int id, String cidr) {
+            this.id = id;
+            this.cidr = cidr;
+        }
+    }
+
+    private final Config config;
+    private final String token;
+    private final String settings;
+    private final List<Shard> shards = new ArrayList<>();
+    private final Map<String, HostScanResults> merged = new HashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final ServerSocket server;
+    private final Thread acceptor;
+    private final ScheduledExecutorService leases;
+    private int done;
+    private volatile boolean closed;
+
+    public ShardCoordinator(String cidr, int[] ports, NetworkScanner.Config scan, Config config) throws IOException {
+        if (scan.shardStart != 0 || scan.shardEnd >= 0) {
+            throw new IllegalArgumentException("A coordinated scan covers the whole target; it cannot be a shard itself");
+        }
+        this.config = config;
+        this.token = config.token != null ? config.token : newToken();
+        this.settings = new ScanCheckpoint(cidr, ports, scan).toText();
+        split(cidr, scan);
+        this.server = new ServerSocket(config.port, 50, InetAddress.getByName(config.bindAddress));
+        this.acceptor = new Thread(this::accept, "smartnet-coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        this.leases = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "smartnet-coordinator-leases");
+            t.setDaemon(true);
+            return t;
+        });
+        long check = Math.max(100, config.leaseMillis / 4);
+        leases.scheduleWithFixedDelay(this::expireLeases, check, check, TimeUnit.MILLISECONDS);
+    }
+
+    private void split(String cidr, NetworkScanner.Config scan) {
+        String[] parts = cidr.split("/");
+        int prefix = Integer.parseInt(parts[1]);
+        long hosts = 1L << (32 - prefix);
+        int shardHosts = Math.max(1, config.shardHosts);
+        int blockPrefix = Math.max(prefix, 32 - (63 - Long.numberOfLeadingZeros(shardHosts)));
+        long network = toLong(parts[0]) & (prefix == 0 ? 0 : 0xffffffffL << (32 - prefix) & 0xffffffffL);
+        long blockSize = 1L << (32 - blockPrefix);
+        List<String> blocks = new ArrayList<>();
+        for (long block = network; block < network + hosts; block += blockSize) {
+            blocks.add(toIp(block) + "/" + blockPrefix);
+        }
+        // Random order spreads a randomized scan's load over the target in time, as one process would.
+        if (scan.randomizeOrder) Collections.shuffle(blocks, new Random(scan.seed));
+        for (String block : blocks) shards.add(new Shard(shards.size(), block));
+    }
+
+    /** Random 128-bit hex secret. */
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(32);
+        for (byte b : bytes) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    /** The secret workers must present, generated when the config has none. */
+    public String getToken() {
+        return token;
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public synchronized int getCompletedShards() {
+        return done;
+    }
+
+    /**
+     * Waits until every shard is finished, or the token is cancelled, and returns the merged
+     * reachable hosts in address order.
+     */
+    public ScanResult await(CancellationToken token) throws InterruptedException {
+        synchronized (this) {
+            while (done < shards.size() && !token.isCancelled() && !closed) {
+                wait(Math.min(250, Math.max(1, token.remainingMillis())));
+            }
+        }
+        List<HostScanResults> results;
+        synchronized (this) {
+            results = new ArrayList<>(merged.values());
+        }
+        results.sort(Comparator.comparingLong(r -> toLong(r.getIpAddress())));
+        ScanResult.Status status = ScanResult.Status.COMPLETED;
+        if (token.isCancelled() || closed) {
+            status = token.hasDeadline() && token.remainingMillis() == 0
+                    ? ScanResult.Status.DEADLINE_EXCEEDED
+                    : ScanResult.Status.CANCELLED;
+        }
+        return new ScanResult(results, status);
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                Thread t = new Thread(connection, "smartnet-coordinator-" + socket.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!closed) System.err.println("Coordinator stopped accepting workers: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private synchronized String lease(Connection worker) {
+        if (done == shards.size()) return "DONE";
+        for (Shard shard : shards) {
+            if (shard.state == State.PENDING) {
+                shard.state = State.LEASED;
+                shard.owner = worker;
+                shard.leaseDeadline = System.currentTimeMillis() + config.leaseMillis;
+                shard.buffered = new ArrayList<>();
+                return "SHARD " + shard.id + " " + shard.cidr;
+            }
+        }
+        return "WAIT";
+    }
+
+    /** The shard if it is still leased to this worker; a lapsed lease makes its messages stale. */
+    private Shard owned(Connection worker, int id) {
+        if (id < 0 || id >= shards.size()) return null;
+        Shard shard = shards.get(id);
+        return shard.state == State.LEASED && shard.owner == worker ? shard : null;
+    }
+
+    private synchronized void renew(Connection worker, int id) {
+        Shard shard = owned(worker, id);
+        if (shard != null) shard.leaseDeadline = System.currentTimeMillis() + config.leaseMillis;
+    }
+
+    private synchronized void buffer(Connection worker, int id, HostScanResults result) {
+        Shard shard = owned(worker, id);
+        if (shard != null) shard.buffered.add(result);
+    }
+
+    private void finish(Connection worker, int id) {
+        List<HostScanResults> committed = new ArrayList<>();
+        synchronized (this) {
+            Shard shard = owned(worker, id);
+            if (shard == null) return;
+            shard.state = State.DONE;
+            shard.owner = null;
+            for (HostScanResults result : shard.buffered) {
+                merged.put(result.getIpAddress(), result);
+                committed.add(result);
+            }
+            shard.buffered = List.of();
+            done++;
+            notifyAll();
+        }
+        if (config.onResult != null) {
+            for (HostScanResults result : committed) config.onResult.accept(result);
+        }
+    }
+
+    /** Puts the worker's shards back in the queue; called when it disconnects. */
+    private synchronized void release(Connection worker) {
+        for (Shard shard : shards) {
+            if (shard.state == State.LEASED && shard.owner == worker) {
+                shard.state = State.PENDING;
+                shard.owner = null;
+                shard.buffered = List.of();
+            }
+        }
+    }
+
+    private void expireLeases() {
+        List<Connection> silent = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Shard shard : shards) {
+                if (shard.state == State.LEASED && now > shard.leaseDeadline) {
+                    System.err.println("Shard " + shard.id + " lease expired, reassigning");
+                    silent.add(shard.owner);
+                    shard.state = State.PENDING;
+                    shard.owner = null;
+                    shard.buffered = List.of();
+                }
+            }
+        }
+        for (Connection connection : silent) connection.close();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        leases.shutdownNow();
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        for (Connection connection : connections) connection.close();
+    }
+
+    /** One worker's session. */
+    private final class Connection implements Runnable {
+        private final Socket socket;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+                String line;
+                boolean trusted = false;
+                while ((line = in.readLine()) != null) {
+                    String[] f = line.split(" ", 3);
+                    if (!trusted) {
+                        if (!f[0].equals("HELLO") || f.length < 3 || !sameToken(f[2])) {
+                            System.err.println("Worker " + socket.getRemoteSocketAddress() + " rejected: wrong token");
+                            out.println("DENIED");
+                            return;
+                        }
+                        trusted = true;
+                    }
+                    switch (f[0]) {
+                        case "HELLO" -> {
+                            String[] lines = settings.split("\n");
+                            out.println("JOB " + lines.length);
+                            for (String setting : lines) out.println(setting);
+                        }
+                        case "NEXT" -> out.println(lease(this));
+                        case "PING" -> renew(this, Integer.parseInt(f[1]));
+                        case "RESULT" -> buffer(this, Integer.parseInt(f[1]), ScanCheckpoint.parseResult(f[2]));
+                        case "END" -> finish(this, Integer.parseInt(f[1]));
+                        default -> throw new IOException("Unexpected message: " + f[0]);
+                    }
+                }
+            } catch (SocketException e) {
+                // closed by us after a lapsed lease, or the worker died
+            } catch (IOException | RuntimeException e) {
+                if (!closed) System.err.println("Worker " + socket.getRemoteSocketAddress() + " dropped: " + e.getMessage());
+            } finally {
+                release(this);
+                connections.remove(this);
+                close();
+            }
+        }
+
+        private boolean sameToken(String offered) {
+            return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), offered.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static long toLong(String ip) {
+        try {
+            byte[] b = InetAddress.getByName(ip).getAddress();
+            return (b[0] & 0xffL) << 24 | (b[1] & 0xffL) << 16 | (b[2] & 0xffL) << 8 | (b[3] & 0xffL);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid address: " + ip);
+        }
+    }
+
+    private static String toIp(long address) {
+        return (address >> 24 & 0xff) + "." + (address >> 16 & 0xff) + "." + (address >> 8 & 0xff) + "." + (address & 0xff);
+    }
+}
@@ -0,0 +1,154 @@
+package com.smartnet.smartnet.network.distributed;
+
+import com.smartnet.smartnet.network.checkpoint.ScanCheckpoint;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+import com.smartnet.smartnet.network.scanner.NetworkScanner;
+import com.smartnet.smartnet.network.scanner.ScanHandle;
+import com.smartnet.smartnet.network.scanner.ScanResult;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Scans shards leased from a {@link ShardCoordinator} until there are none left. Reachable
+ * hosts are streamed back as they are found; a heartbeat keeps the lease while a shard runs.
+ * Any number of workers, on this machine or others, can serve the same coordinator.
+ */
+public class ShardWorker {
+
+    public static class Config {
+        public String name = "worker";
+        public String token = "";                   // the coordinator's shared secret
+        public long heartbeatMillis = 5000;         // well below the coordinator's lease
+        public long waitMillis = 500;               // poll interval while other workers hold the last shards
+        public int connectTimeoutMillis = 5000;
+        public int threads = 0;                     // override the job's thread count, 0 = keep
+        public Consumer<String> onShard = null;     // progress messages, e.g. for stderr
+    }
+
+    private final String host;
+    private final int port;
+    private final Config config;
+    private final NetworkScanner scanner = new NetworkScanner();
+
+    public ShardWorker(String host, int port, Config config) {
+        this.host = host;
+        this.port = port;
+        this.config = config;
+    }
+
+    /**
+     * Leases and scans shards until the coordinator has none left or the token is cancelled.
+     * Returns the number of shards this worker finished.
+     */
+    public int run(CancellationToken token) throws IOException {
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "smartnet-worker-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), config.connectTimeoutMillis);
+            token.register(socket);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+
+            send(out, "HELLO " + config.name.replace(' ', '_') + " " + config.token);
+            ScanCheckpoint job = readJob(in);
+            int finished = 0;
+            while (!token.isCancelled()) {
+                send(out, "NEXT");
+                String reply = in.readLine();
+                if (reply == null || reply.equals("DONE")) break;
+                if (reply.equals("WAIT")) {
+                    if (!sleep(config.waitMillis)) break;
+                    continue;
+                }
+                String[] f = reply.split(" ");
+                if (f.length != 3 || !f[0].equals("SHARD")) throw new IOException("Unexpected reply: " + reply);
+                int id = Integer.parseInt(f[1]);
+                if (config.onShard != null) config.onShard.accept("shard " + id + ": " + f[2]);
+
+                NetworkScanner.Config scan = job.toConfig();
+                if (config.threads > 0) scan.threads = config.threads;
+                scan.deadlineMillis = 0;    // a shard cut short would only be leased out again
+                scan.onResult = result -> {
+                    if (result.isReachable()) send(out, "RESULT " + id + " " + ScanCheckpoint.formatResult(result));
+                };
+                ScheduledFuture<?> beat = heartbeat.scheduleAtFixedRate(() -> send(out, "PING " + id),
+                        config.heartbeatMillis, config.heartbeatMillis, TimeUnit.MILLISECONDS);
+                ScanResult result;
+                try {
+                    result = scan(f[2], job.getPorts(), scan, token);
+                } finally {
+                    beat.cancel(false);
+                }
+                if (!result.isComplete()) break;   // cancelled: let the lease lapse so the shard is rescanned
+                send(out, "END " + id);
+                finished++;
+            }
+            token.unregister(socket);
+            return finished;
+        } finally {
+            heartbeat.shutdownNow();
+        }
+    }
+
+    private ScanResult scan(String cidr, int[] ports, NetworkScanner.Config scan, CancellationToken token) {
+        ScanHandle handle = scanner.startScan(cidr, ports, scan);
+        Closeable stop = handle::cancel;
+        token.register(stop);
+        try {
+            return handle.await();
+        } catch (InterruptedException e) {
+            handle.cancel();
+            Thread.currentThread().interrupt();
+            return handle.asFuture().join();
+        } finally {
+            token.unregister(stop);
+        }
+    }
+
+    private static ScanCheckpoint readJob(BufferedReader in) throws IOException {
+        String header = in.readLine();
+        if ("DENIED".equals(header)) throw new IOException("Coordinator refused the token");
+        if (header == null || !header.startsWith("JOB ")) throw new IOException("Unexpected reply: " + header);
+        int lines = Integer.parseInt(header.substring(4).trim());
+        StringBuilder settings = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            String line = in.readLine();
+            if (line == null) throw new IOException("Coordinator closed the connection");
+            settings.append(line).append('\n');
+        }
+        return ScanCheckpoint.parse(settings.toString());
+    }
+
+    /** Scan threads, the heartbeat and the lease loop all write to the same connection. */
+    private static void send(PrintWriter out, String line) {
+        synchronized (out) {
+            out.println(line);
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.smartnet.smartnet.network.export;
+
+import com.smartnet.smartnet.network.models.HostScanResults;
+
+/**
+ * CSV layout shared by the GUI export and the headless scanner output.
+ */
+public class CsvFormatter {
+
+    private final boolean includeOs;
+    private final boolean includeServices;
+    private final boolean includeUdp;
+
+    public CsvFormatter(boolean includeOs) {
+        this(includeOs, false, false);
+    }
+
+    public CsvFormatter(boolean includeOs, boolean includeServices, boolean includeUdp) {
+        this.includeOs = includeOs;
+        this.includeServices = includeServices;
+        this.includeUdp = includeUdp;
+    }
+
+    public String header() {
+        String header = includeOs ? "IP,Hostname,MAC,Vendor,Open_Ports,OS" : "IP,Hostname,MAC,Vendor,Open_Ports";
+        if (includeServices) header += ",Services";
+        if (includeUdp) header += ",UDP_Ports";
+        return header;
+    }
+
+    public String format(HostScanResults results) {
+        StringBuilder sb = new StringBuilder(64);
+        field(sb, results.getIpAddress()).append(',');
+        field(sb, results.getHostName()).append(',');
+        field(sb, results.getMacAddress()).append(',');
+        field(sb, results.getVendorText()).append(',');
+        field(sb, portsText(results));
+        if (includeOs) {
+            field(sb.append(','), results.getOsName());
+        }
+        if (includeServices) {
+            field(sb.append(','), results.getServicesText());
+        }
+        if (includeUdp) {
+            field(sb.append(','), results.getUdpPortsText());
+        }
+        return sb.toString();
+    }
+
+    /** Open ports joined with "; " like the services and UDP columns, e.g. "22; 80". */
+    private static String portsText(HostScanResults results) {
+        if (results.getOpenPorts() == null) return "";
+        StringBuilder sb = new StringBuilder();
+        for (int port : results.getOpenPorts()) {
+            if (sb.length() > 0) sb.append("; ");
+            sb.append(port);
+        }
+        return sb.toString();
+    }
+
+    /** RFC 4180: fields holding a comma, quote or line break are quoted, with quotes doubled. */
+    private static StringBuilder field(StringBuilder sb, String value) {
+        String text = String.valueOf(value);
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return sb.append(text);
+        }
+        return sb.append('"').append(text.replace("\"", "\"\"")).append('"');
+    }
+}
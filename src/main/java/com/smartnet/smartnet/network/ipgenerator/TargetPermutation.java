@@ -0,0 +1,84 @@
+package com.smartnet.smartnet.network.ipgenerator;
+
+/**
+ * Pseudo-random bijection over the index space {@code [0, hosts * ports)}.
+ * <p>
+ * Each index maps to exactly one (host, port) pair, so walking indexes 0..size-1 visits
+ * every pair once in a shuffled order without materialising the list. It uses a
+ * 4-round Feistel network over the smallest power-of-four domain that covers the space,
+ * plus cycle-walking to stay inside it. State is a few longs, and the same seed always
+ * gives the same order, so runs are reproducible and index ranges can be handed out as shards.
+ */
+public class TargetPermutation {
+
+    private static final int ROUNDS = 4;
+
+    private final long hosts;
+    private final long ports;
+    private final long size;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    public TargetPermutation(long hosts, long ports, long seed) {
+        if (hosts <= 0 || ports <= 0) {
+            throw new IllegalArgumentException("Empty target space: " + hosts + " hosts x " + ports + " ports");
+        }
+        this.hosts = hosts;
+        this.ports = ports;
+        this.size = Math.multiplyExact(hosts, ports);
+
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1));
+        this.halfBits = Math.max(1, (bits + 1) / 2);
+        this.halfMask = (1L << halfBits) - 1;
+
+        long k = seed;
+        for (int i = 0; i < ROUNDS; i++) {
+            k = mix(k + 0x9E3779B97F4A7C15L);
+            roundKeys[i] = k;
+        }
+    }
+
+    public long size() { return size; }
+    public long hostCount() { return hosts; }
+    public long portCount() { return ports; }
+
+    /** Maps a position in the walk to a value in {@code [0, size)}. */
+    public long permute(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        long value = index;
+        do {
+            value = encrypt(value);
+        } while (value >= size); // cycle-walk back into range
+        return value;
+    }
+
+    /** Host component of a permuted value. */
+    public int hostOf(long value) {
+        return (int) (value / ports);
+    }
+
+    /** Port component (index into the port list) of a permuted value. */
+    public int portOf(long value) {
+        return (int) (value % ports);
+    }
+
+    private long encrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ (mix(right ^ roundKeys[i]) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,439 @@
+package com.smartnet.smartnet.network.macutils;
+
+import com.smartnet.smartnet.network.metrics.ScanMetrics;
+import com.smartnet.smartnet.network.networkinterfacemanager.NetworkInterfaceManager;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+import org.pcap4j.core.BpfProgram;
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapAddress;
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNetworkInterface;
+import org.pcap4j.packet.ArpPacket;
+import org.pcap4j.packet.EthernetPacket;
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.namednumber.ArpHardwareType;
+import org.pcap4j.packet.namednumber.ArpOperation;
+import org.pcap4j.packet.namednumber.EtherType;
+import org.pcap4j.util.MacAddress;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Resolves the MACs of on-link IPv4 hosts without a subprocess per host. Answers come from a
+ * cache, then the kernel's neighbour table ({@code /proc/net/arp}), and otherwise from ARP
+ * requests sent over pcap. Requests for the same interface are collected for
+ * {@link Config#batchMillis} and go out together at a paced rate, with retries, while one
+ * reader per interface completes the waiting futures from the replies.
+ * <p>
+ * Without pcap, a datagram to the discard port makes the kernel do the ARP, and the
+ * neighbour table is polled instead. Off-link addresses have no MAC of their own on this
+ * link: {@link #resolve} answers null for them at once, and {@link #resolveNextHop} resolves
+ * their gateway.
+ */
+public class ArpResolver implements Closeable {
+
+    public static class Config {
+        public int batchMillis = 5;                 // collect requests this long before sending
+        public int packetsPerSecond = 2000;         // per interface
+        public int retries = 2;
+        public int retryMillis = 250;               // wait for a reply before asking again
+        public long cacheMillis = 300_000;          // keep answers this long
+        public long negativeCacheMillis = 10_000;   // and silence this long
+    }
+
+    private static final Path ARP_TABLE = Path.of("/proc/net/arp");
+    private static final long KERNEL_TABLE_MILLIS = 1000;
+    private static final long KERNEL_POLL_MILLIS = 20;     // while waiting on the kernel's own ARP
+    private static final int SNAP_LEN = 64;
+    private static final int READ_TIMEOUT_MILLIS = 50;
+
+    private static volatile ArpResolver shared;
+
+    private record Entry(String mac, long expiresMillis) {}
+
+    private final Config config;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    private final Map<String, Link> links = new ConcurrentHashMap<>();
+    private volatile List<int[]> onLinkSubnets;
+    private volatile Map<String, String> kernelTable = Map.of();
+    private volatile long kernelTableAt;
+    private volatile boolean pcapSeen;
+    private volatile boolean closed;
+
+    public ArpResolver(Config config) {
+        this.config = config;
+    }
+
+    public static ArpResolver shared() {
+        ArpResolver resolver = shared;
+        if (resolver == null) {
+            synchronized (ArpResolver.class) {
+                resolver = shared;
+                if (resolver == null) {
+                    resolver = new ArpResolver(new Config());
+                    shared = resolver;
+                }
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * True when this resolver can answer at all: the kernel table is readable or an ARP capture
+     * has opened. Elsewhere callers need another way, such as the {@code arp} command.
+     */
+    public boolean isAvailable() {
+        return Files.isReadable(ARP_TABLE) || pcapSeen;
+    }
+
+    /**
+     * The host's MAC as {@code aa:bb:cc:dd:ee:ff}, or null once every attempt has gone
+     * unanswered or when the address is not on a directly attached subnet.
+     */
+    public CompletableFuture<String> resolve(String ip) {
+        String known = lookup(ip);
+        if (known != null || cache.containsKey(ip)) return CompletableFuture.completedFuture(known);
+        if (closed || !isOnLink(ip)) return CompletableFuture.completedFuture(null);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = pending.putIfAbsent(ip, future);
+        if (existing != null) return existing;
+        Link link;
+        try {
+            PcapNetworkInterface nif = NetworkInterfaceManager.getInterfaceFor(ip);
+            link = links.computeIfAbsent(nif.getName(), name -> new Link(nif));
+        } catch (Exception | LinkageError e) {
+            link = links.computeIfAbsent("", name -> new Link(null));     // no pcap interface list at all
+        }
+        link.queue.add(ip);
+        return future;
+    }
+
+    /** Blocking form of {@link #resolve(String)} that gives up when the token is cancelled. */
+    public String resolve(String ip, CancellationToken token) {
+        return resolve(ip, Long.MAX_VALUE, token);
+    }
+
+    /** Like {@link #resolve(String, CancellationToken)}, but answers null after {@code timeoutMillis} too. */
+    public String resolve(String ip, long timeoutMillis, CancellationToken token) {
+        CompletableFuture<String> future = resolve(ip);
+        long start = System.nanoTime();
+        try {
+            while (true) {
+                try {
+                    return future.get(50, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (token.isCancelled()) return null;
+                    if ((System.nanoTime() - start) / 1_000_000L >= timeoutMillis) return null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * MAC that frames for {@code ip} go to: the host's own when it is on-link, otherwise the
+     * gateway's for its route. Null when neither answers.
+     */
+    public String resolveNextHop(String ip, CancellationToken token) {
+        if (isOnLink(ip)) return resolve(ip, token);
+        String gateway = NetworkInterfaceManager.getGatewayFor(ip);
+        if (gateway == null) gateway = NetworkInterfaceManager.getDefaultGatewayIp();
+        return gateway != null ? resolve(gateway, token) : null;
+    }
+
+    /** Answer already known, from the cache or the kernel, without sending anything. */
+    public String lookup(String ip) {
+        Entry entry = cache.get(ip);
+        if (entry != null) {
+            if (System.currentTimeMillis() < entry.expiresMillis()) return entry.mac();
+            cache.remove(ip, entry);
+        }
+        String mac = kernelTable(KERNEL_TABLE_MILLIS).get(ip);
+        if (mac != null) remember(ip, mac);
+        return mac;
+    }
+
+    private void remember(String ip, String mac) {
+        long ttl = mac != null ? config.cacheMillis : config.negativeCacheMillis;
+        cache.put(ip, new Entry(mac, System.currentTimeMillis() + ttl));
+        CompletableFuture<String> future = pending.remove(ip);
+        if (future != null) future.complete(mac);
+    }
+
+    /** Completed entries of /proc/net/arp, re-read when the last read is older than {@code maxAgeMillis}. */
+    private Map<String, String> kernelTable(long maxAgeMillis) {
+        long now = System.currentTimeMillis();
+        if (now - kernelTableAt < maxAgeMillis || !Files.isReadable(ARP_TABLE)) return kernelTable;
+        kernelTableAt = now;
+        Map<String, String> table = new HashMap<>();
+        try (BufferedReader r = Files.newBufferedReader(ARP_TABLE, StandardCharsets.US_ASCII)) {
+            String line = r.readLine(); // header
+            while ((line = r.readLine()) != null) {
+                String[] f = line.trim().split("\\s+");
+                if (f.length > 3 && (Integer.decode(f[2]) & 0x2) != 0 && !f[3].equals("00:00:00:00:00:00")) {
+                    table.put(f[0], f[3]);
+                }
+            }
+            kernelTable = table;
+        } catch (Exception ignored) {
+        }
+        return kernelTable;
+    }
+
+    /**
+     * True when {@code ip} is another address on a directly attached Ethernet subnet, so it has
+     * to answer ARP before it can receive anything.
+     */
+    public boolean isOnLink(String ip) {
+        int address;
+        try {
+            InetAddress parsed = InetAddress.getByName(ip);
+            if (!(parsed instanceof Inet4Address)) return false;
+            address = toInt(parsed.getAddress());
+        } catch (Exception e) {
+            return false;
+        }
+        for (int[] subnet : onLinkSubnets()) {
+            if ((address & subnet[1]) == subnet[0] && address != subnet[2]) return true;
+        }
+        return false;
+    }
+
+    /** {network, mask, own address} of interfaces that speak ARP: up, not loopback or point-to-point, with a MAC. */
+    private List<int[]> onLinkSubnets() {
+        List<int[]> subnets = onLinkSubnets;
+        if (subnets != null) return subnets;
+        subnets = new ArrayList<>();
+        try {
+            for (NetworkInterface nif : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!nif.isUp() || nif.isLoopback() || nif.isPointToPoint()) continue;
+                byte[] mac = nif.getHardwareAddress();
+                if (mac == null || mac.length != 6) continue;
+                for (InterfaceAddress address : nif.getInterfaceAddresses()) {
+                    if (!(address.getAddress() instanceof Inet4Address)) continue;
+                    int prefix = address.getNetworkPrefixLength();
+                    int mask = prefix == 0 ? 0 : -1 << (32 - prefix);
+                    int own = toInt(address.getAddress().getAddress());
+                    subnets.add(new int[]{own & mask, mask, own});
+                }
+            }
+        } catch (Exception e) {
+            // no interface list: nothing is on-link
+        }
+        onLinkSubnets = subnets;
+        return subnets;
+    }
+
+    private static int toInt(byte[] a) {
+        return (a[0] & 0xff) << 24 | (a[1] & 0xff) << 16 | (a[2] & 0xff) << 8 | (a[3] & 0xff);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Link link : links.values()) link.close();
+        links.clear();
+        for (String ip : new ArrayList<>(pending.keySet())) {
+            CompletableFuture<String> future = pending.remove(ip);
+            if (future != null) future.complete(null);
+        }
+    }
+
+    /** One interface: a capture handle (when pcap works), its reply reader and the batching sender. */
+    private final class Link {
+
+        private final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        private final PcapHandle handle;
+        private final MacAddress srcMac;
+        private final Inet4Address srcAddr;
+        private final Thread sender;
+        private final Thread reader;
+
+        Link(PcapNetworkInterface nif) {
+            PcapHandle h = null;
+            MacAddress mac = null;
+            Inet4Address addr = null;
+            String name = nif != null ? nif.getName() : "kernel";
+            try {
+                if (nif != null) {
+                    for (PcapAddress a : nif.getAddresses()) {
+                        if (a.getAddress() instanceof Inet4Address v4) {
+                            addr = v4;
+                            break;
+                        }
+                    }
+                    if (addr != null && nif.getLinkLayerAddresses() != null && !nif.getLinkLayerAddresses().isEmpty()) {
+                        mac = (MacAddress) nif.getLinkLayerAddresses().get(0);
+                        h = nif.openLive(SNAP_LEN, PcapNetworkInterface.PromiscuousMode.NONPROMISCUOUS,
+                                READ_TIMEOUT_MILLIS);
+                        h.setFilter("arp", BpfProgram.BpfCompileMode.OPTIMIZE);
+                        pcapSeen = true;
+                    }
+                }
+            } catch (Exception | LinkageError e) {
+                if (h != null) h.close();
+                h = null;       // no driver or no permission: let the kernel ask
+            }
+            this.handle = h;
+            this.srcMac = mac;
+            this.srcAddr = addr;
+            this.sender = new Thread(this::send, "smartnet-arp-send-" + name);
+            sender.setDaemon(true);
+            sender.start();
+            if (handle != null) {
+                reader = new Thread(this::receive, "smartnet-arp-read-" + name);
+                reader.setDaemon(true);
+                reader.start();
+            } else {
+                reader = null;
+            }
+        }
+
+        /** Batches queued addresses and (re)sends requests until each is answered or out of retries. */
+        private void send() {
+            Map<String, long[]> outstanding = new HashMap<>();     // ip -> {attempts, next send nanos}
+            long interval = 1_000_000_000L / Math.max(1, config.packetsPerSecond);
+            List<String> batch = new ArrayList<>();
+            while (!closed) {
+                try {
+                    String first = outstanding.isEmpty() ? queue.take()
+                            : queue.poll(KERNEL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        Thread.sleep(config.batchMillis);
+                        queue.drainTo(batch);
+                        for (String ip : batch) outstanding.putIfAbsent(ip, new long[]{0, 0});
+                        batch.clear();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long next = System.nanoTime();
+                for (Iterator<Map.Entry<String, long[]>> it = outstanding.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<String, long[]> e = it.next();
+                    String ip = e.getKey();
+                    long[] state = e.getValue();
+                    if (!pending.containsKey(ip)) {         // answered by the reader
+                        it.remove();
+                        continue;
+                    }
+                    if (handle == null) {
+                        String mac = kernelTable(KERNEL_POLL_MILLIS).get(ip);
+                        if (mac != null) {
+                            remember(ip, mac);
+                            it.remove();
+                            continue;
+                        }
+                    }
+                    if (System.nanoTime() - state[1] < 0) continue;
+                    if (state[0] > config.retries) {
+                        remember(ip, null);
+                        it.remove();
+                        continue;
+                    }
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                    next += interval;
+                    request(ip);
+                    state[0]++;
+                    state[1] = System.nanoTime() + config.retryMillis * 1_000_000L;
+                }
+            }
+        }
+
+        private void request(String ip) {
+            try {
+                if (handle != null) {
+                    handle.sendPacket(buildRequest(srcMac, srcAddr, (Inet4Address) InetAddress.getByName(ip)));
+                    ScanMetrics.packetSent();
+                } else {
+                    try (DatagramChannel channel = DatagramChannel.open()) {
+                        channel.send(ByteBuffer.allocate(1), new InetSocketAddress(ip, 9));   // discard port
+                    }
+                }
+            } catch (Exception e) {
+                // no route or a closed handle: the retries run out and the answer is null
+            }
+        }
+
+        /** Any ARP packet from a pending address tells its MAC, reply or not. */
+        private void receive() {
+            while (!closed) {
+                try {
+                    Packet packet = handle.getNextPacketEx();
+                    if (packet == null) continue;
+                    ScanMetrics.packetReceived();
+                    ArpPacket arp = packet.get(ArpPacket.class);
+                    if (arp == null) continue;
+                    String ip = arp.getHeader().getSrcProtocolAddr().getHostAddress();
+                    MacAddress mac = arp.getHeader().getSrcHardwareAddr();
+                    if (pending.containsKey(ip) && !mac.equals(MacAddress.ETHER_BROADCAST_ADDRESS)) {
+                        remember(ip, mac.toString());
+                    }
+                } catch (TimeoutException ignored) {
+                } catch (NotOpenException e) {
+                    return;
+                } catch (Exception e) {
+                    if (!closed) e.printStackTrace();
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            sender.interrupt();
+            if (reader != null) reader.interrupt();
+            if (handle != null) handle.close();     // the reader's next read fails and it exits
+        }
+    }
+
+    /** Builds a broadcast who-has frame for {@code target}; no capture handle needed. */
+    static Packet buildRequest(MacAddress srcMac, Inet4Address srcAddr, Inet4Address target) {
+        ArpPacket.Builder arp = new ArpPacket.Builder()
+                .hardwareType(ArpHardwareType.ETHERNET)
+                .protocolType(EtherType.IPV4)
+                .hardwareAddrLength((byte) MacAddress.SIZE_IN_BYTES)
+                .protocolAddrLength((byte) 4)
+                .operation(ArpOperation.REQUEST)
+                .srcHardwareAddr(srcMac)
+                .srcProtocolAddr(srcAddr)
+                .dstHardwareAddr(MacAddress.getByName("00:00:00:00:00:00"))
+                .dstProtocolAddr(target);
+        return new EthernetPacket.Builder()
+                .dstAddr(MacAddress.ETHER_BROADCAST_ADDRESS)
+                .srcAddr(srcMac)
+                .type(EtherType.ARP)
+                .payloadBuilder(arp)
+                .paddingAtBuild(true)
+                .build();
+    }
+}
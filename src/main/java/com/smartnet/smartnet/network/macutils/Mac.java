@@ -1,12 +1,31 @@
 package com.smartnet.smartnet.network.macutils;
 
+import com.smartnet.smartnet.network.metrics.ScanMetrics;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.InputStreamReader;
 
 public class Mac {
     public String resolveMac(String ipAddress) {
+        return resolveMac(ipAddress, CancellationToken.NONE);
+    }
+
+    /**
+     * Resolves the MAC address through the shared {@link ArpResolver}. Only where it cannot work
+     * (no /proc/net/arp and no pcap) does this fall back to ping and arp subprocesses, killing
+     * them if the token is cancelled.
+     */
+    public String resolveMac(String ipAddress, CancellationToken token) {
+        ArpResolver resolver = ArpResolver.shared();
+        if (resolver.isAvailable()) {
+            String mac = resolver.resolve(ipAddress, token);
+            return mac != null ? mac : "Unknown";
+        }
         String os=System.getProperty("os.name").toLowerCase();
         try{
+            ScanMetrics.subprocessSpawned();
             if (os.contains("win")) {
                 Runtime.getRuntime().exec("ping -n 1" + ipAddress).waitFor();
             }else{
@@ -25,6 +44,9 @@ public class Mac {
             }
 
             Process process=pb.start();
+            ScanMetrics.subprocessSpawned();
+            Closeable kill=process::destroyForcibly;
+            token.register(kill);
             try(BufferedReader reader=new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line=reader.readLine())!=null){
@@ -33,6 +55,8 @@ public class Mac {
                         return macAddress;
                     }
                 }
+            } finally {
+                token.unregister(kill);
             }
 
 
@@ -42,7 +66,7 @@ public class Mac {
         return "Unknown";
     }
 
-    private String getMac(String line,String os) {
+    String getMac(String line,String os) {
         line=line.trim();
         String macRegexWindows = "([0-9A-Fa-f]{2}(-[0-9A-Fa-f]{2}){5})";
         String macRegexUnix = "([0-9A-Fa-f]{2}(:[0-9A-Fa-f]{2}){5})";
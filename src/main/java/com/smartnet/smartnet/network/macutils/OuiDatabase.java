@@ -0,0 +1,320 @@
+package com.smartnet.smartnet.network.macutils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * MAC vendor lookup from the IEEE registries, memory-mapped from a compact index file built
+ * once with {@link #build}. The file holds the assigned prefixes as sorted longs, a vendor
+ * number per prefix and the distinct vendor names:
+ * <pre>
+ *   int magic, int prefixes, int vendors, int nameBytes
+ *   long[prefixes]  key = prefix left-aligned in 48 bits, shifted left 8, or'ed with its bit length
+ *   int[prefixes]   vendor number
+ *   int[vendors+1]  offset of each name in the name bytes
+ *   byte[nameBytes] UTF-8 names
+ * </pre>
+ * A lookup tries the MA-S (36 bit), MA-M (28 bit) and MA-L (24 bit) prefix of the address
+ * in turn, each a binary search over the mapped keys, so longer assignments carved out of an
+ * MA-L block win. Nothing is allocated per lookup once a vendor's name has been decoded.
+ */
+public class OuiDatabase {
+
+    private static final int MAGIC = 0x4F554931;   // "OUI1"
+    private static final int HEADER_BYTES = 16;
+    private static final int[] PREFIX_BITS = {36, 28, 24};
+
+    public static final OuiDatabase EMPTY = new OuiDatabase(null, 0, 0);
+
+    private static volatile OuiDatabase shared;
+
+    private final ByteBuffer map;
+    private final int prefixes;
+    private final int vendors;
+    private final String[] names;               // decoded on first use
+    private final int vendorsAt;
+    private final int offsetsAt;
+    private final int namesAt;
+
+    private OuiDatabase(ByteBuffer map, int prefixes, int vendors) {
+        this.map = map;
+        this.prefixes = prefixes;
+        this.vendors = vendors;
+        this.names = new String[vendors];
+        this.vendorsAt = HEADER_BYTES + prefixes * 8;
+        this.offsetsAt = vendorsAt + prefixes * 4;
+        this.namesAt = offsetsAt + (vendors + 1) * 4;
+    }
+
+    /** Where the index lives unless {@link #useFile} says otherwise: {@code -Dsmartnet.oui} or ~/.smartnet/oui.db. */
+    public static Path defaultPath() {
+        String path = System.getProperty("smartnet.oui");
+        return path != null ? Path.of(path) : Path.of(System.getProperty("user.home"), ".smartnet", "oui.db");
+    }
+
+    /** The process-wide database, mapped from {@link #defaultPath()} on first use; empty if there is none. */
+    public static OuiDatabase shared() {
+        OuiDatabase db = shared;
+        if (db == null) {
+            synchronized (OuiDatabase.class) {
+                db = shared;
+                if (db == null) {
+                    db = openQuietly(defaultPath());
+                    shared = db;
+                }
+            }
+        }
+        return db;
+    }
+
+    /** Maps the given index file as the shared database. */
+    public static void useFile(Path file) throws IOException {
+        shared = open(file);
+    }
+
+    public static OuiDatabase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.capacity() < HEADER_BYTES || map.getInt(0) != MAGIC) {
+                throw new IOException("Not an OUI index: " + file);
+            }
+            int prefixes = map.getInt(4);
+            int vendors = map.getInt(8);
+            int nameBytes = map.getInt(12);
+            long expected = HEADER_BYTES + prefixes * 12L + (vendors + 1) * 4L + nameBytes;
+            if (prefixes < 0 || vendors < 0 || expected != map.capacity()) {
+                throw new IOException("Truncated OUI index: " + file);
+            }
+            return new OuiDatabase(map, prefixes, vendors);
+        }
+    }
+
+    private static OuiDatabase openQuietly(Path file) {
+        if (!Files.isRegularFile(file)) return EMPTY;
+        try {
+            return open(file);
+        } catch (IOException e) {
+            System.err.println("OUI database unavailable: " + e.getMessage());
+            return EMPTY;
+        }
+    }
+
+    public int size() {
+        return prefixes;
+    }
+
+    /** Vendor registered for the MAC's prefix, or null if the address is unknown or not a MAC. */
+    public String vendorOf(String mac) {
+        long address = parseMac(mac);
+        return address < 0 ? null : vendorOf(address);
+    }
+
+    /** Same as {@link #vendorOf(String)} for a MAC as the low 48 bits of a long. */
+    public String vendorOf(long mac) {
+        if (prefixes == 0) return null;
+        for (int bits : PREFIX_BITS) {
+            int row = find(key(mac, bits));
+            if (row >= 0) return name(map.getInt(vendorsAt + row * 4));
+        }
+        return null;
+    }
+
+    private int find(long key) {
+        int lo = 0;
+        int hi = prefixes - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long probe = map.getLong(HEADER_BYTES + mid * 8);
+            if (probe < key) lo = mid + 1;
+            else if (probe > key) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private String name(int vendor) {
+        String name = names[vendor];
+        if (name == null) {
+            int start = map.getInt(offsetsAt + vendor * 4);
+            int end = map.getInt(offsetsAt + vendor * 4 + 4);
+            byte[] bytes = new byte[end - start];
+            map.get(namesAt + start, bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+            names[vendor] = name;   // racing threads decode the same string; harmless
+        }
+        return name;
+    }
+
+    private static long key(long mac, int bits) {
+        long prefix = (mac >>> (48 - bits)) << (48 - bits);
+        return (prefix << 8) | bits;
+    }
+
+    /** aa:bb:cc:dd:ee:ff, aa-bb-..., aabb.ccdd.eeff or bare hex to a long, -1 if it is not a MAC. */
+    static long parseMac(String mac) {
+        if (mac == null) return -1;
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i < mac.length(); i++) {
+            char c = mac.charAt(i);
+            int d = Character.digit(c, 16);
+            if (d >= 0) {
+                if (++digits > 12) return -1;
+                value = (value << 4) | d;
+            } else if (c != ':' && c != '-' && c != '.') {
+                return -1;
+            }
+        }
+        return digits == 12 ? value : -1;
+    }
+
+    // ---- building the index ----
+
+    private record Assignment(long key, String vendor) {}
+
+    // "00-00-0C   (hex)		Cisco Systems, Inc"; the MA-M/MA-S listings write the whole block,
+    // "70-B3-D5-F2-F0-00/36     (hex)		Vendor", of which the first three octets are the OUI
+    private static final Pattern HEX_LINE = Pattern.compile("^\\s*([0-9A-Fa-f]{2}-[0-9A-Fa-f]{2}-[0-9A-Fa-f]{2})[-0-9A-Fa-f]*(?:/\\d+)?\\s+\\(hex\\).*$");
+    // "00000C     (base 16)	Cisco Systems, Inc" or, in the MA-M/MA-S files, "A00000-AFFFFF     (base 16)	Vendor"
+    private static final Pattern BASE16_LINE = Pattern.compile("^\\s*([0-9A-Fa-f]{6})(?:-([0-9A-Fa-f]{6}))?\\s+\\(base 16\\)\\s*(.*)$");
+
+    /**
+     * Indexes IEEE registry files into {@code out}: the text listings (oui.txt, mam.txt,
+     * oui36.txt) or the CSV exports (oui.csv, mam.csv, oui36.csv), in any mix. Returns the
+     * number of prefixes indexed.
+     */
+    public static int build(List<Path> sources, Path out) throws IOException {
+        Map<Long, String> assignments = new HashMap<>();
+        for (Path source : sources) {
+            try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+                parse(reader, assignments);
+            }
+        }
+        if (assignments.isEmpty()) throw new IOException("No IEEE assignments found in " + sources);
+
+        long[] keys = new long[assignments.size()];
+        int k = 0;
+        for (long key : assignments.keySet()) keys[k++] = key;
+        Arrays.sort(keys);
+
+        Map<String, Integer> vendorIds = new HashMap<>();
+        List<byte[]> vendorNames = new ArrayList<>();
+        int[] vendorOf = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            String vendor = assignments.get(keys[i]);
+            Integer id = vendorIds.get(vendor);
+            if (id == null) {
+                id = vendorNames.size();
+                vendorIds.put(vendor, id);
+                vendorNames.add(vendor.getBytes(StandardCharsets.UTF_8));
+            }
+            vendorOf[i] = id;
+        }
+
+        Path dir = out.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, "oui", ".tmp");
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            int nameBytes = 0;
+            for (byte[] name : vendorNames) nameBytes += name.length;
+            data.writeInt(MAGIC);
+            data.writeInt(keys.length);
+            data.writeInt(vendorNames.size());
+            data.writeInt(nameBytes);
+            for (long key : keys) data.writeLong(key);
+            for (int id : vendorOf) data.writeInt(id);
+            int offset = 0;
+            for (byte[] name : vendorNames) {
+                data.writeInt(offset);
+                offset += name.length;
+            }
+            data.writeInt(offset);
+            for (byte[] name : vendorNames) data.write(name);
+        }
+        Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return keys.length;
+    }
+
+    private static void parse(BufferedReader reader, Map<Long, String> assignments) throws IOException {
+        String line;
+        long oui = -1;      // from the last "(hex)" line, for the ranges of the MA-M/MA-S listings
+        while ((line = reader.readLine()) != null) {
+            Assignment a = null;
+            if (line.startsWith("MA-L,") || line.startsWith("MA-M,") || line.startsWith("MA-S,")) {
+                a = parseCsv(line);
+            } else {
+                Matcher hex = HEX_LINE.matcher(line);
+                if (hex.matches()) {
+                    oui = Long.parseLong(hex.group(1).replace("-", ""), 16);
+                    continue;
+                }
+                Matcher base16 = BASE16_LINE.matcher(line);
+                if (base16.matches()) a = parseBase16(base16, oui);
+            }
+            if (a != null && !a.vendor().isEmpty()) assignments.putIfAbsent(a.key(), a.vendor());
+        }
+    }
+
+    private static Assignment parseBase16(Matcher m, long oui) {
+        long start = Long.parseLong(m.group(1), 16);
+        String vendor = m.group(3).trim();
+        if (m.group(2) == null) return new Assignment(key(start << 24, 24), vendor);
+        if (oui < 0) return null;
+        long size = Long.parseLong(m.group(2), 16) - start + 1;
+        if (Long.bitCount(size) != 1) return null;
+        int bits = 48 - Long.numberOfTrailingZeros(size);
+        return new Assignment(key((oui << 24) | start, bits), vendor);
+    }
+
+    /** Registry,Assignment,"Organization Name",Organization Address */
+    private static Assignment parseCsv(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length() && fields.size() < 3; i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (fields.size() < 3) fields.add(field.toString());
+        if (fields.size() < 3) return null;
+        String hex = fields.get(1).trim();
+        if (hex.length() != 6 && hex.length() != 7 && hex.length() != 9) return null;
+        int bits = hex.length() * 4;
+        long prefix;
+        try {
+            prefix = Long.parseLong(hex, 16) << (48 - bits);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new Assignment(key(prefix, bits), fields.get(2).trim());
+    }
+}
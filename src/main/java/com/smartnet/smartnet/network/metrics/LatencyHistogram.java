@@ -0,0 +1,77 @@
+package com.smartnet.smartnet.network.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram in microseconds, in the style of HdrHistogram. Each power of
+ * two is split into {@value #SUB_BUCKETS} linear sub-buckets, so any recorded value is off by
+ * at most ~3% while the whole range from 1 µs to about 18 hours fits in about 1200 counters.
+ * Recording is lock-free and allocation-free.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final long MAX_MICROS = (1L << 36) - 1;
+    private static final int BUCKETS = indexOf(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        long micros = Math.min(Math.max(0, nanos / 1000), MAX_MICROS);
+        counts.incrementAndGet(indexOf(micros));
+        count.increment();
+        sumMicros.add(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    public long getCount() { return count.sum(); }
+    public long getMaxMicros() { return maxMicros.get(); }
+
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n > 0 ? (double) sumMicros.sum() / n : 0;
+    }
+
+    /** Upper bound of the bucket holding the given percentile (0-100), or 0 when empty. */
+    public long percentileMicros(double percentile) {
+        long total = count.sum();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.reset();
+        sumMicros.reset();
+        maxMicros.set(0);
+    }
+
+    private static int indexOf(long micros) {
+        // Values below 2 * SUB_BUCKETS are exact; above that, drop the low bits that don't fit.
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS);
+        return (int) ((long) shift * SUB_BUCKETS + (micros >>> shift));
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long offset = index - (long) shift * SUB_BUCKETS;
+        return ((offset + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,15 @@
+package com.smartnet.smartnet.network.metrics;
+
+/**
+ * Latency of one scan phase, published as {@code com.smartnet:type=Latency,phase=<PHASE>}.
+ */
+public interface PhaseLatencyMXBean {
+    long getCount();
+    double getMeanMicros();
+    long getP50Micros();
+    long getP90Micros();
+    long getP99Micros();
+    long getP999Micros();
+    long getMaxMicros();
+    void reset();
+}
@@ -0,0 +1,19 @@
+package com.smartnet.smartnet.network.metrics;
+
+/**
+ * Scan-wide counters, published as {@code com.smartnet:type=Counters}.
+ */
+public interface ScanCountersMXBean {
+    long getPortsOpen();
+    long getPortsClosed();
+    long getPortsTimedOut();
+    long getPortsErrored();
+    long getSubprocessesSpawned();
+    long getPacketsSent();
+    long getPacketsReceived();
+    long getPacketsDropped();
+    /** Tasks waiting in the scan executors currently being watched. */
+    int getExecutorQueueDepth();
+    int getExecutorActiveThreads();
+    void reset();
+}
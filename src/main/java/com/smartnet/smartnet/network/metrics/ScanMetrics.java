@@ -0,0 +1,161 @@
+package com.smartnet.smartnet.network.metrics;
+
+import com.smartnet.smartnet.network.utils.PortScanner;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide scan instrumentation: latency histograms per phase plus outcome, subprocess
+ * and packet counters, published as JMX MBeans under the {@code com.smartnet} domain.
+ * <p>
+ * Off unless the JVM is started with {@code -Dsmartnet.metrics=true}. The flag is a static
+ * final, so when it is off the JIT folds every hook down to nothing and
+ * {@link #start()} doesn't even read the clock.
+ */
+public final class ScanMetrics {
+
+    public enum Phase { HOST, DISCOVERY, PORT_PROBE, UDP, DNS, MAC, OS, SERVICES }
+
+    public static final boolean ENABLED = Boolean.getBoolean("smartnet.metrics");
+
+    private static final LatencyHistogram[] latency = new LatencyHistogram[Phase.values().length];
+    private static final LongAdder[] outcomes = new LongAdder[PortScanner.Outcome.values().length];
+    private static final LongAdder subprocesses = new LongAdder();
+    private static final LongAdder packetsSent = new LongAdder();
+    private static final LongAdder packetsReceived = new LongAdder();
+    private static final LongAdder packetsDropped = new LongAdder();
+    private static final Set<ThreadPoolExecutor> executors = ConcurrentHashMap.newKeySet();
+
+    static {
+        for (int i = 0; i < latency.length; i++) latency[i] = new LatencyHistogram();
+        for (int i = 0; i < outcomes.length; i++) outcomes[i] = new LongAdder();
+        if (ENABLED) register();
+    }
+
+    private ScanMetrics() {}
+
+    /** Start timestamp for {@link #record}; 0 when metrics are off. */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static void record(Phase phase, long startNanos) {
+        if (!ENABLED) return;
+        latency[phase.ordinal()].recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public static void outcome(PortScanner.Outcome outcome) {
+        if (!ENABLED) return;
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    public static void subprocessSpawned() {
+        if (!ENABLED) return;
+        subprocesses.increment();
+    }
+
+    public static void packetSent() {
+        if (!ENABLED) return;
+        packetsSent.increment();
+    }
+
+    public static void packetReceived() {
+        if (!ENABLED) return;
+        packetsReceived.increment();
+    }
+
+    /** Drops reported by the capture driver when a handle is closed. */
+    public static void packetsDropped(long dropped) {
+        if (!ENABLED || dropped <= 0) return;
+        packetsDropped.add(dropped);
+    }
+
+    /** Includes the executor's queue in {@link ScanCountersMXBean#getExecutorQueueDepth()} until unwatched. */
+    public static void watch(ThreadPoolExecutor executor) {
+        if (!ENABLED) return;
+        executors.add(executor);
+    }
+
+    public static void unwatch(ThreadPoolExecutor executor) {
+        if (!ENABLED) return;
+        executors.remove(executor);
+    }
+
+    public static LatencyHistogram latency(Phase phase) {
+        return latency[phase.ordinal()];
+    }
+
+    public static long outcomeCount(PortScanner.Outcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    private static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Phase phase : Phase.values()) {
+                server.registerMBean(new PhaseLatency(latency[phase.ordinal()]),
+                        new ObjectName("com.smartnet:type=Latency,phase=" + phase.name()));
+            }
+            server.registerMBean(new Counters(), new ObjectName("com.smartnet:type=Counters"));
+        } catch (Exception e) {
+            System.err.println("Failed to register scan metrics MBeans: " + e.getMessage());
+        }
+    }
+
+    private static class PhaseLatency implements PhaseLatencyMXBean {
+        private final LatencyHistogram histogram;
+
+        PhaseLatency(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override public long getCount() { return histogram.getCount(); }
+        @Override public double getMeanMicros() { return histogram.getMeanMicros(); }
+        @Override public long getP50Micros() { return histogram.percentileMicros(50); }
+        @Override public long getP90Micros() { return histogram.percentileMicros(90); }
+        @Override public long getP99Micros() { return histogram.percentileMicros(99); }
+        @Override public long getP999Micros() { return histogram.percentileMicros(99.9); }
+        @Override public long getMaxMicros() { return histogram.getMaxMicros(); }
+        @Override public void reset() { histogram.reset(); }
+    }
+
+    private static class Counters implements ScanCountersMXBean {
+        @Override public long getPortsOpen() { return outcomeCount(PortScanner.Outcome.OPEN); }
+        @Override public long getPortsClosed() { return outcomeCount(PortScanner.Outcome.CLOSED); }
+        @Override public long getPortsTimedOut() { return outcomeCount(PortScanner.Outcome.TIMEOUT); }
+        @Override public long getPortsErrored() { return outcomeCount(PortScanner.Outcome.ERROR); }
+        @Override public long getSubprocessesSpawned() { return subprocesses.sum(); }
+        @Override public long getPacketsSent() { return packetsSent.sum(); }
+        @Override public long getPacketsReceived() { return packetsReceived.sum(); }
+        @Override public long getPacketsDropped() { return packetsDropped.sum(); }
+
+        @Override
+        public int getExecutorQueueDepth() {
+            int depth = 0;
+            for (ThreadPoolExecutor executor : executors) depth += executor.getQueue().size();
+            return depth;
+        }
+
+        @Override
+        public int getExecutorActiveThreads() {
+            int active = 0;
+            for (ThreadPoolExecutor executor : executors) active += executor.getActiveCount();
+            return active;
+        }
+
+        @Override
+        public void reset() {
+            for (LongAdder adder : outcomes) adder.reset();
+            subprocesses.reset();
+            packetsSent.reset();
+            packetsReceived.reset();
+            packetsDropped.reset();
+        }
+    }
+}
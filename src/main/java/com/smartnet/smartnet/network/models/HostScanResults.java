@@ -1,6 +1,7 @@
 package com.smartnet.smartnet.network.models;
 
 import java.util.List;
+import java.util.Map;
 
 public class HostScanResults {
     /**
@@ -10,21 +11,38 @@ public class HostScanResults {
     private final boolean isReachable;
     private final List<Integer> openPorts;
     private final String macAddress;   // optional
+    private final String vendor;       // from the MAC's IEEE prefix, null when unknown
     private final String hostName;
     private final String osName;       // optional
+    private final Map<Integer, ServiceInfo> services; // by port, empty unless service detection ran
+    private final Map<Integer, UdpPortState> udpPorts; // UDP ports that were not closed, empty unless scanned
+    private volatile String openPortsText; // formatted once, on first use
 
     public HostScanResults(String ipAddress, boolean isReachable, List<Integer> openPorts, String macAddress, String hostName) {
         this(ipAddress, isReachable, openPorts, macAddress, hostName, null);
     }
-    // Full constructor (internal use)
     public HostScanResults(String ipAddress, boolean isReachable, List<Integer> openPorts,
                            String macAddress, String hostName, String osName) {
+        this(ipAddress, isReachable, openPorts, macAddress, hostName, osName, Map.of(), Map.of());
+    }
+    public HostScanResults(String ipAddress, boolean isReachable, List<Integer> openPorts,
+                           String macAddress, String hostName, String osName,
+                           Map<Integer, ServiceInfo> services, Map<Integer, UdpPortState> udpPorts) {
+        this(ipAddress, isReachable, openPorts, macAddress, null, hostName, osName, services, udpPorts);
+    }
+    // Full constructor (internal use)
+    public HostScanResults(String ipAddress, boolean isReachable, List<Integer> openPorts,
+                           String macAddress, String vendor, String hostName, String osName,
+                           Map<Integer, ServiceInfo> services, Map<Integer, UdpPortState> udpPorts) {
         this.ipAddress = ipAddress;
         this.isReachable = isReachable;
         this.openPorts = openPorts;
         this.macAddress = macAddress;
+        this.vendor = vendor;
         this.hostName = hostName;
         this.osName = osName;
+        this.services = services;
+        this.udpPorts = udpPorts;
     }
 
     public String getIpAddress() {
@@ -43,6 +61,16 @@ public class HostScanResults {
         return openPorts;
     }
 
+    /** Open ports as shown in the details panel, e.g. "[22, 80]", or "-" when there are none. */
+    public String getOpenPortsText() {
+        String text = openPortsText;
+        if (text == null) {
+            text = openPorts == null || openPorts.isEmpty() ? "-" : openPorts.toString();
+            openPortsText = text;
+        }
+        return text;
+    }
+
     public String getOsName() {
         return osName;
     }
@@ -50,6 +78,45 @@ public class HostScanResults {
     public String getMacAddress() {
         return macAddress;
     }
+
+    public String getVendor() {
+        return vendor;
+    }
+
+    /** Vendor for display and export, or "-" when the MAC or its prefix is unknown. */
+    public String getVendorText() {
+        return vendor != null ? vendor : "-";
+    }
+
+    public Map<Integer, ServiceInfo> getServices() {
+        return services;
+    }
+
+    public Map<Integer, UdpPortState> getUdpPorts() {
+        return udpPorts;
+    }
+
+    /** UDP ports joined with "; ", e.g. "53/open; 161/open|filtered", or "-". */
+    public String getUdpPortsText() {
+        if (udpPorts.isEmpty()) return "-";
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, UdpPortState> e : udpPorts.entrySet()) {
+            if (sb.length() > 0) sb.append("; ");
+            sb.append(e.getKey()).append('/').append(e.getValue().getLabel());
+        }
+        return sb.toString();
+    }
+
+    /** Detected services joined with "; ", e.g. "22/ssh OpenSSH_8.9p1; 80/http nginx", or "-". */
+    public String getServicesText() {
+        if (services.isEmpty()) return "-";
+        StringBuilder sb = new StringBuilder();
+        for (ServiceInfo info : services.values()) {
+            if (sb.length() > 0) sb.append("; ");
+            sb.append(info);
+        }
+        return sb.toString();
+    }
 }
 
 //package com.smartnet.smartnet.network.models;
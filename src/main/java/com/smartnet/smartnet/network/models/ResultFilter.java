@@ -0,0 +1,370 @@
+package com.smartnet.smartnet.network.models;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Boolean query over scan results, parsed from a search string such as
+ * {@code port:3389 os:windows net:10.2.0.0/16 -vendor:vmware} or
+ * {@code (port:22 OR port:2222) AND NOT is:down}.
+ * <ul>
+ *     <li>{@code port:n}, {@code port:n-m}, {@code port:n,m} host has one of the ports open</li>
+ *     <li>{@code os:text} OS name contains text</li>
+ *     <li>{@code vendor:text} MAC vendor contains text</li>
+ *     <li>{@code service:text} a detected service name contains text</li>
+ *     <li>{@code host:text} hostname contains text</li>
+ *     <li>{@code net:a.b.c.d/len} or {@code ip:a.b.c.d[-e.f.g.h]} address is inside the range</li>
+ *     <li>{@code is:up}, {@code is:down} host status</li>
+ *     <li>anything else must appear in the IP or hostname</li>
+ * </ul>
+ * Terms next to each other must all match; {@code OR}, {@code AND}, {@code NOT} (or a leading
+ * {@code -}) and parentheses combine them. Operators are upper case so that "or" stays
+ * searchable text. Values with spaces go in double quotes: {@code vendor:"hewlett packard"}.
+ * <p>
+ * {@link ResultIndex} answers a query from its inverted indexes; {@link #matches} checks a
+ * single result, e.g. while streaming them out.
+ */
+public class ResultFilter {
+
+    public static final ResultFilter NONE = new ResultFilter(null);
+
+    private final Node root;
+
+    private ResultFilter(Node root) {
+        this.root = root;
+    }
+
+    public static ResultFilter parse(String query) {
+        if (query == null || query.isBlank()) return NONE;
+        Parser parser = new Parser(tokenize(query));
+        Node root = parser.or();
+        if (parser.pos < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.pos) + " in query");
+        }
+        return new ResultFilter(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public boolean matches(HostScanResults r) {
+        if (root == null) return true;
+        return root.test(r, ipToLong(r.getIpAddress()), ResultIndex.osKey(r), ResultIndex.hostKey(r));
+    }
+
+    /** Row-at-a-time check with the keys {@link ResultIndex} already extracted. */
+    boolean matches(HostScanResults r, long ip, String osLower, String hostLower) {
+        return root == null || root.test(r, ip, osLower, hostLower);
+    }
+
+    /** Rows of the index that match, from its postings. */
+    BitSet evaluate(ResultIndex index) {
+        return root == null ? index.allRows() : root.eval(index);
+    }
+
+    private interface Node {
+        boolean test(HostScanResults r, long ip, String osLower, String hostLower);
+
+        /** A new set the caller may modify. */
+        BitSet eval(ResultIndex index);
+    }
+
+    private record Or(List<Node> children) implements Node {
+        public boolean test(HostScanResults r, long ip, String osLower, String hostLower) {
+            for (Node child : children) {
+                if (child.test(r, ip, osLower, hostLower)) return true;
+            }
+            return false;
+        }
+
+        public BitSet eval(ResultIndex index) {
+            BitSet out = children.get(0).eval(index);
+            for (int i = 1; i < children.size(); i++) out.or(children.get(i).eval(index));
+            return out;
+        }
+    }
+
+    private record And(List<Node> children) implements Node {
+        public boolean test(HostScanResults r, long ip, String osLower, String hostLower) {
+            for (Node child : children) {
+                if (!child.test(r, ip, osLower, hostLower)) return false;
+            }
+            return true;
+        }
+
+        /** Negated children are subtracted rather than complemented first. */
+        public BitSet eval(ResultIndex index) {
+            BitSet out = null;
+            List<Node> negated = new ArrayList<>();
+            for (Node child : children) {
+                if (child instanceof Not not) {
+                    negated.add(not.child());
+                } else if (out == null) {
+                    out = child.eval(index);
+                } else {
+                    if (out.isEmpty()) return out;
+                    out.and(child.eval(index));
+                }
+            }
+            if (out == null) out = index.allRows();
+            for (Node child : negated) {
+                if (out.isEmpty()) break;
+                out.andNot(child.eval(index));
+            }
+            return out;
+        }
+    }
+
+    private record Not(Node child) implements Node {
+        public boolean test(HostScanResults r, long ip, String osLower, String hostLower) {
+            return !child.test(r, ip, osLower, hostLower);
+        }
+
+        public BitSet eval(ResultIndex index) {
+            BitSet out = index.allRows();
+            out.andNot(child.eval(index));
+            return out;
+        }
+    }
+
+    private record Ports(int from, int to) implements Node {
+        public boolean test(HostScanResults r, long ip, String osLower, String hostLower) {
+            if (r.getOpenPorts() == null) return false;
+            for (int port : r.getOpenPorts()) {
+                if (port >= from && port <= to) return true;
+            }
+            return false;
+        }
+
+        public BitSet eval(ResultIndex index) {
+            return index.rowsWithPort(from, to);
+        }
+    }
+
+    private record Contains(Field field, String text) implements Node {
+        public boolean test(HostScanResults r, long ip, String osLower, String hostLower) {
+            return switch (field) {
+                case OS -> osLower.contains(text);
+                case HOST -> hostLower.contains(text);
+                case VENDOR -> r.getVendor() != null && r.getVendor().toLowerCase(Locale.ROOT).contains(text);
+                case SERVICE -> {
+                    if (r.getServices() == null) yield false;
+                    for (ServiceInfo service : r.getServices().values()) {
+                        if (service.getService() != null
+                                && service.getService().toLowerCase(Locale.ROOT).contains(text)) yield true;
+                    }
+                    yield false;
+                }
+                case TEXT -> r.getIpAddress().contains(text) || hostLower.contains(text);
+            };
+        }
+
+        public BitSet eval(ResultIndex index) {
+            return index.rowsContaining(field, text);
+        }
+    }
+
+    private record Addresses(long start, long end) implements Node {
+        public boolean test(HostScanResults r, long ip, String osLower, String hostLower) {
+            return ip >= start && ip <= end;
+        }
+
+        public BitSet eval(ResultIndex index) {
+            return index.rowsInRange(start, end);
+        }
+    }
+
+    private record Status(boolean up) implements Node {
+        public boolean test(HostScanResults r, long ip, String osLower, String hostLower) {
+            return r.isReachable() == up;
+        }
+
+        public BitSet eval(ResultIndex index) {
+            BitSet out = index.rowsUp();
+            if (!up) out.flip(0, index.size());
+            return out;
+        }
+    }
+
+    /** String-valued fields; the index keeps postings for the low-cardinality ones. */
+    enum Field { OS, VENDOR, SERVICE, HOST, TEXT }
+
+    private static final class Parser {
+        private final List<String> tokens;
+        private int pos;
+
+        private Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        private Node or() {
+            List<Node> children = new ArrayList<>();
+            children.add(and());
+            while (accept("OR")) children.add(and());
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        private Node and() {
+            List<Node> children = new ArrayList<>();
+            children.add(unary());
+            while (pos < tokens.size() && !tokens.get(pos).equals("OR") && !tokens.get(pos).equals(")")) {
+                accept("AND");
+                children.add(unary());
+            }
+            return children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        private Node unary() {
+            if (pos >= tokens.size()) throw new IllegalArgumentException("Query ends too early");
+            if (accept("NOT") || accept("-")) return new Not(unary());
+            if (accept("(")) {
+                Node inner = or();
+                if (!accept(")")) throw new IllegalArgumentException("Missing ) in query");
+                return inner;
+            }
+            String token = tokens.get(pos);
+            if (token.equals(")") || token.equals("OR") || token.equals("AND")) {
+                throw new IllegalArgumentException("Unexpected " + token + " in query");
+            }
+            pos++;
+            return term(token);
+        }
+
+        private boolean accept(String token) {
+            if (pos < tokens.size() && tokens.get(pos).equals(token)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static Node term(String term) {
+        String lower = term.toLowerCase(Locale.ROOT);
+        int colon = lower.indexOf(':');
+        String key = colon > 0 ? lower.substring(0, colon) : "";
+        String value = colon > 0 ? lower.substring(colon + 1) : lower;
+        switch (key) {
+            case "port": return ports(term, value);
+            case "os": return contains(Field.OS, term, value);
+            case "vendor": return contains(Field.VENDOR, term, value);
+            case "service": return contains(Field.SERVICE, term, value);
+            case "host": return contains(Field.HOST, term, value);
+            case "net": {
+                long[] range = cidrRange(value);
+                return new Addresses(range[0], range[1]);
+            }
+            case "ip": return addresses(term, value);
+            case "is": {
+                if (value.equals("up")) return new Status(true);
+                if (value.equals("down")) return new Status(false);
+                throw new IllegalArgumentException("Invalid status filter: " + term);
+            }
+            default: return new Contains(Field.TEXT, lower);
+        }
+    }
+
+    private static Node ports(String term, String value) {
+        List<Node> any = new ArrayList<>();
+        try {
+            for (String part : value.split(",")) {
+                int dash = part.indexOf('-');
+                int from = Integer.parseInt(dash < 0 ? part : part.substring(0, dash));
+                int to = dash < 0 ? from : Integer.parseInt(part.substring(dash + 1));
+                if (from < 0 || to > 65535 || from > to) throw new NumberFormatException();
+                any.add(new Ports(from, to));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port filter: " + term);
+        }
+        return any.size() == 1 ? any.get(0) : new Or(any);
+    }
+
+    private static Node contains(Field field, String term, String value) {
+        if (value.isEmpty()) throw new IllegalArgumentException("Empty filter: " + term);
+        return new Contains(field, value);
+    }
+
+    private static Node addresses(String term, String value) {
+        if (value.contains("/")) {
+            long[] range = cidrRange(value);
+            return new Addresses(range[0], range[1]);
+        }
+        int dash = value.indexOf('-');
+        long start = ipToLong(dash < 0 ? value : value.substring(0, dash));
+        long end = dash < 0 ? start : ipToLong(value.substring(dash + 1));
+        if (start < 0 || end < start) throw new IllegalArgumentException("Invalid address filter: " + term);
+        return new Addresses(start, end);
+    }
+
+    /** Splits on whitespace and parentheses; double quotes group, a leading - negates. */
+    private static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted && i < query.length()) {
+                current.append(c);
+            } else if (Character.isWhitespace(c) || c == '(' || c == ')') {
+                if (!current.isEmpty()) {
+                    if (current.charAt(0) == '-' && current.length() > 1) {
+                        tokens.add("-");
+                        current.deleteCharAt(0);
+                    }
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+                if (c == '(' || c == ')') tokens.add(String.valueOf(c));
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("Unclosed quote in query");
+        return tokens;
+    }
+
+    /** Inclusive [start, end] of a CIDR block as unsigned ints in longs. */
+    static long[] cidrRange(String cidr) {
+        String[] parts = cidr.split("/");
+        long base = ipToLong(parts[0]);
+        if (base < 0) throw new IllegalArgumentException("Invalid subnet: " + cidr);
+        int prefix;
+        try {
+            prefix = parts.length > 1 ? Integer.parseInt(parts[1]) : 32;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid subnet: " + cidr);
+        }
+        if (prefix < 0 || prefix > 32) throw new IllegalArgumentException("Invalid subnet: " + cidr);
+        long size = 1L << (32 - prefix);
+        long start = base & ~(size - 1) & 0xFFFFFFFFL;
+        return new long[]{start, start + size - 1};
+    }
+
+    /** Dotted quad to unsigned value, or -1 if it isn't one. */
+    static long ipToLong(String ip) {
+        long value = 0;
+        int octets = 0;
+        int current = -1;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (current < 0 || current > 255) return -1;
+                value = (value << 8) | current;
+                octets++;
+                current = -1;
+            } else if (c >= '0' && c <= '9') {
+                current = (current < 0 ? 0 : current * 10) + (c - '0');
+                if (current > 255) return -1;
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? value : -1;
+    }
+}
@@ -0,0 +1,340 @@
+package com.smartnet.smartnet.network.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, indexed snapshot of scan results for sorting and filtering large tables off
+ * the FX thread. Sort keys are extracted once per row, and a pre-sorted index array is
+ * kept per column. {@link #append} produces a new snapshot that merges the new rows into
+ * the existing orders instead of re-sorting everything.
+ * <p>
+ * Filters are answered from inverted indexes rather than by testing every row: row-id
+ * postings per open port, OS, vendor and service name, a bitmap of hosts that are up, and
+ * the IP-sorted order as an interval index for address ranges. Postings are built on the
+ * first filtered query and extended by {@link #append} after that.
+ */
+public final class ResultIndex {
+
+    public enum Column { IP, STATUS, OS, HOSTNAME }
+
+    public static final ResultIndex EMPTY = new ResultIndex(new HostScanResults[0], new long[0],
+            new String[0], new String[0], new int[Column.values().length][]);
+
+    private final HostScanResults[] rows;
+    private final long[] ipKeys;
+    private final String[] osKeys;
+    private final String[] hostKeys;
+    private final int[][] sorted; // per column, built lazily
+    private Postings postings;    // built lazily
+
+    private ResultIndex(HostScanResults[] rows, long[] ipKeys, String[] osKeys, String[] hostKeys, int[][] sorted) {
+        this.rows = rows;
+        this.ipKeys = ipKeys;
+        this.osKeys = osKeys;
+        this.hostKeys = hostKeys;
+        this.sorted = sorted;
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    public HostScanResults get(int row) {
+        return rows[row];
+    }
+
+    /** Returns a new index with the rows added; column orders that were built are merged, not rebuilt. */
+    public ResultIndex append(List<HostScanResults> more) {
+        if (more.isEmpty()) return this;
+        int n = rows.length;
+        int total = n + more.size();
+        HostScanResults[] newRows = Arrays.copyOf(rows, total);
+        long[] newIp = Arrays.copyOf(ipKeys, total);
+        String[] newOs = Arrays.copyOf(osKeys, total);
+        String[] newHost = Arrays.copyOf(hostKeys, total);
+        for (int i = n; i < total; i++) {
+            HostScanResults r = more.get(i - n);
+            newRows[i] = r;
+            newIp[i] = ResultFilter.ipToLong(r.getIpAddress());
+            newOs[i] = osKey(r);
+            newHost[i] = hostKey(r);
+            r.getOpenPortsText(); // format here rather than on the FX thread when a row is selected
+        }
+
+        ResultIndex next = new ResultIndex(newRows, newIp, newOs, newHost, new int[sorted.length][]);
+        for (Column column : Column.values()) {
+            int[] old;
+            synchronized (this) {
+                old = sorted[column.ordinal()];
+            }
+            if (old != null) {
+                int[] tail = new int[total - n];
+                for (int i = 0; i < tail.length; i++) tail[i] = n + i;
+                next.sortRange(tail, column);
+                next.sorted[column.ordinal()] = next.merge(old, tail, column);
+            }
+        }
+        Postings built;
+        synchronized (this) {
+            built = postings;
+        }
+        if (built != null) next.postings = built.extend(newRows, newOs, n, total);
+        return next;
+    }
+
+    /**
+     * Rows matching the filter, ordered by the column (or insertion order when column is null).
+     */
+    public List<HostScanResults> query(ResultFilter filter, Column column, boolean ascending) {
+        int[] order = column != null ? order(column) : null;
+        if (filter.isEmpty()) {
+            List<HostScanResults> out = new ArrayList<>(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                out.add(rows[order == null ? i : order[ascending ? i : rows.length - 1 - i]]);
+            }
+            return out;
+        }
+        BitSet hits = filter.evaluate(this);
+        List<HostScanResults> out = new ArrayList<>(hits.cardinality());
+        if (order == null) {
+            for (int row = hits.nextSetBit(0); row >= 0; row = hits.nextSetBit(row + 1)) out.add(rows[row]);
+        } else {
+            for (int i = 0; i < rows.length; i++) {
+                int row = order[ascending ? i : rows.length - 1 - i];
+                if (hits.get(row)) out.add(rows[row]);
+            }
+        }
+        return out;
+    }
+
+    /** Number of matching rows, without materializing them. */
+    public int count(ResultFilter filter) {
+        return filter.isEmpty() ? rows.length : filter.evaluate(this).cardinality();
+    }
+
+    static String osKey(HostScanResults r) {
+        return r.getOsName() != null ? r.getOsName().toLowerCase(Locale.ROOT) : "unknown";
+    }
+
+    static String hostKey(HostScanResults r) {
+        return r.getHostName() != null ? r.getHostName().toLowerCase(Locale.ROOT) : "";
+    }
+
+    BitSet allRows() {
+        BitSet out = new BitSet(rows.length);
+        out.set(0, rows.length);
+        return out;
+    }
+
+    BitSet rowsUp() {
+        return (BitSet) postings().up.clone();
+    }
+
+    BitSet rowsWithPort(int from, int to) {
+        Map<Integer, int[]> ports = postings().ports;
+        BitSet out = new BitSet(rows.length);
+        if (to - from < ports.size()) {
+            for (int port = from; port <= to; port++) set(out, ports.get(port));
+        } else {
+            for (Map.Entry<Integer, int[]> e : ports.entrySet()) {
+                if (e.getKey() >= from && e.getKey() <= to) set(out, e.getValue());
+            }
+        }
+        return out;
+    }
+
+    /** Substring match over the distinct values where there are postings, over the rows otherwise. */
+    BitSet rowsContaining(ResultFilter.Field field, String text) {
+        BitSet out = new BitSet(rows.length);
+        Map<String, int[]> values = switch (field) {
+            case OS -> postings().os;
+            case VENDOR -> postings().vendors;
+            case SERVICE -> postings().services;
+            case HOST, TEXT -> null;
+        };
+        if (values != null) {
+            for (Map.Entry<String, int[]> e : values.entrySet()) {
+                if (e.getKey().contains(text)) set(out, e.getValue());
+            }
+            return out;
+        }
+        for (int row = 0; row < rows.length; row++) {
+            boolean match = hostKeys[row].contains(text)
+                    || (field == ResultFilter.Field.TEXT && rows[row].getIpAddress().contains(text));
+            if (match) out.set(row);
+        }
+        return out;
+    }
+
+    /** IPv4 rows in [start, end], by binary search over the IP order. */
+    BitSet rowsInRange(long start, long end) {
+        int[] order = order(Column.IP);
+        int lo = 0, hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ipKeys[order[mid]] < start) lo = mid + 1;
+            else hi = mid;
+        }
+        BitSet out = new BitSet(rows.length);
+        for (int i = lo; i < order.length && ipKeys[order[i]] <= end; i++) out.set(order[i]);
+        return out;
+    }
+
+    private static BitSet set(BitSet out, int[] rowIds) {
+        if (rowIds != null) {
+            for (int row : rowIds) out.set(row);
+        }
+        return out;
+    }
+
+    private synchronized Postings postings() {
+        if (postings == null) postings = new Postings().extend(rows, osKeys, 0, rows.length);
+        return postings;
+    }
+
+    private synchronized int[] order(Column column) {
+        int[] order = sorted[column.ordinal()];
+        if (order == null) {
+            order = new int[rows.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            sortRange(order, column);
+            sorted[column.ordinal()] = order;
+        }
+        return order;
+    }
+
+    private void sortRange(int[] ids, Column column) {
+        if (column == Column.IP || column == Column.STATUS) {
+            // Pack (ip, row) into longs so a primitive sort does the work; status then splits that
+            // order stably, so ties break the same way as in compare() and merges stay sorted.
+            long[] packed = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) packed[i] = (ipKeys[ids[i]] << 31) | ids[i];
+            Arrays.sort(packed);
+            int k = 0;
+            for (long p : packed) {
+                int row = (int) (p & 0x7FFFFFFFL);
+                if (column == Column.IP || rows[row].isReachable()) ids[k++] = row;
+            }
+            if (column == Column.STATUS) {
+                for (long p : packed) {
+                    int row = (int) (p & 0x7FFFFFFFL);
+                    if (!rows[row].isReachable()) ids[k++] = row;
+                }
+            }
+            return;
+        }
+        Integer[] boxed = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) boxed[i] = ids[i];
+        Arrays.sort(boxed, (a, b) -> compare(a, b, column));
+        for (int i = 0; i < ids.length; i++) ids[i] = boxed[i];
+    }
+
+    private int[] merge(int[] a, int[] b, Column column) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            out[k++] = compare(a[i], b[j], column) <= 0 ? a[i++] : b[j++];
+        }
+        while (i < a.length) out[k++] = a[i++];
+        while (j < b.length) out[k++] = b[j++];
+        return out;
+    }
+
+    private int compare(int a, int b, Column column) {
+        int c = switch (column) {
+            case IP -> Long.compare(ipKeys[a], ipKeys[b]);
+            case STATUS -> Boolean.compare(rows[b].isReachable(), rows[a].isReachable());
+            case OS -> osKeys[a].compareTo(osKeys[b]);
+            case HOSTNAME -> hostKeys[a].compareTo(hostKeys[b]);
+        };
+        if (c != 0) return c;
+        c = Long.compare(ipKeys[a], ipKeys[b]);
+        return c != 0 ? c : Integer.compare(a, b);
+    }
+
+    /**
+     * Ascending row ids per key. Immutable once published: extending copies the lists that
+     * gain rows and shares the rest with the previous snapshot.
+     */
+    private static final class Postings {
+        private final Map<Integer, int[]> ports;
+        private final Map<String, int[]> os;
+        private final Map<String, int[]> vendors;
+        private final Map<String, int[]> services;
+        private final BitSet up;
+
+        private Postings() {
+            this(Map.of(), Map.of(), Map.of(), Map.of(), new BitSet());
+        }
+
+        private Postings(Map<Integer, int[]> ports, Map<String, int[]> os, Map<String, int[]> vendors,
+                         Map<String, int[]> services, BitSet up) {
+            this.ports = ports;
+            this.os = os;
+            this.vendors = vendors;
+            this.services = services;
+            this.up = up;
+        }
+
+        private Postings extend(HostScanResults[] rows, String[] osKeys, int from, int to) {
+            Map<Integer, RowIds> newPorts = new HashMap<>();
+            Map<String, RowIds> newOs = new HashMap<>();
+            Map<String, RowIds> newVendors = new HashMap<>();
+            Map<String, RowIds> newServices = new HashMap<>();
+            BitSet newUp = (BitSet) up.clone();
+            Set<String> seen = new HashSet<>();
+            for (int row = from; row < to; row++) {
+                HostScanResults r = rows[row];
+                if (r.isReachable()) newUp.set(row);
+                if (r.getOpenPorts() != null) {
+                    for (int port : r.getOpenPorts()) newPorts.computeIfAbsent(port, k -> new RowIds()).add(row);
+                }
+                newOs.computeIfAbsent(osKeys[row], k -> new RowIds()).add(row);
+                if (r.getVendor() != null) {
+                    newVendors.computeIfAbsent(r.getVendor().toLowerCase(Locale.ROOT), k -> new RowIds()).add(row);
+                }
+                if (r.getServices() != null) {
+                    seen.clear();
+                    for (ServiceInfo service : r.getServices().values()) {
+                        String name = service.getService();
+                        if (name == null || !seen.add(name.toLowerCase(Locale.ROOT))) continue;
+                        newServices.computeIfAbsent(name.toLowerCase(Locale.ROOT), k -> new RowIds()).add(row);
+                    }
+                }
+            }
+            return new Postings(merge(ports, newPorts), merge(os, newOs), merge(vendors, newVendors),
+                    merge(services, newServices), newUp);
+        }
+
+        private static <K> Map<K, int[]> merge(Map<K, int[]> base, Map<K, RowIds> added) {
+            if (added.isEmpty()) return base;
+            Map<K, int[]> out = new HashMap<>(base);
+            for (Map.Entry<K, RowIds> e : added.entrySet()) {
+                int[] old = base.getOrDefault(e.getKey(), new int[0]);
+                RowIds more = e.getValue();
+                int[] merged = Arrays.copyOf(old, old.length + more.count);
+                System.arraycopy(more.ids, 0, merged, old.length, more.count);
+                out.put(e.getKey(), merged);
+            }
+            return out;
+        }
+    }
+
+    private static final class RowIds {
+        private int[] ids = new int[4];
+        private int count;
+
+        private void add(int row) {
+            if (count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+            ids[count++] = row;
+        }
+    }
+}
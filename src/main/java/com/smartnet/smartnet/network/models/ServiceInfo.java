@@ -0,0 +1,34 @@
+package com.smartnet.smartnet.network.models;
+
+/**
+ * What is listening on an open port. {@code identified} is false when nothing matched and
+ * the service name is only the usual one for that port number.
+ */
+public class ServiceInfo {
+
+    private final int port;
+    private final String service;
+    private final String version;      // may be null
+    private final boolean identified;
+
+    public ServiceInfo(int port, String service, String version, boolean identified) {
+        this.port = port;
+        this.service = service;
+        this.version = version;
+        this.identified = identified;
+    }
+
+    public int getPort() { return port; }
+    public String getService() { return service; }
+    public String getVersion() { return version; }
+    public boolean isIdentified() { return identified; }
+
+    /** e.g. "22/ssh OpenSSH_8.9p1", or "8443/https?" for a port-number guess. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append(port).append('/').append(service);
+        if (!identified) sb.append('?');
+        if (version != null) sb.append(' ').append(version);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package com.smartnet.smartnet.network.models;
+
+/**
+ * Outcome of a UDP probe. Silence is ambiguous for UDP: an open service may simply ignore the
+ * payload, so a port that never answers is {@link #OPEN_FILTERED} rather than open.
+ */
+public enum UdpPortState {
+    OPEN("open"),                       // the service replied
+    OPEN_FILTERED("open|filtered"),     // no reply after all retransmissions
+    FILTERED("filtered"),               // ICMP unreachable other than port-unreachable
+    CLOSED("closed");                   // ICMP port unreachable
+
+    private final String label;
+
+    UdpPortState(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -1,15 +1,46 @@
 package com.smartnet.smartnet.network.networkinterfacemanager;
 
+import com.smartnet.smartnet.network.metrics.ScanMetrics;
+
 import org.pcap4j.core.*;
 
+import com.smartnet.smartnet.network.macutils.ArpResolver;
+import com.smartnet.smartnet.network.macutils.Mac;
+
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class NetworkInterfaceManager {
 
     private static PcapNetworkInterface defaultInterface;
+    private static List<PcapNetworkInterface> interfaces;
+
+    /**
+     * Reads the route table and resolves the default interface on background threads, so the
+     * first scan finds both ready. Called at application and CLI start.
+     */
+    public static void warmUp() {
+        RouteTable.warmUp().thenRun(() -> {
+            try {
+                getDefaultInterface();
+            } catch (Exception | LinkageError ignored) {
+                // no capture driver: the scan falls back to socket probes and reports it then
+            }
+        });
+    }
+
+    /** Forgets the interfaces picked so far; called when the route table sees interfaces change. */
+    public static synchronized void invalidate() {
+        defaultInterface = null;
+        interfaces = null;
+    }
 
     public static synchronized PcapNetworkInterface getDefaultInterface() throws Exception {
         if (defaultInterface == null) {
@@ -24,8 +55,9 @@ public class NetworkInterfaceManager {
             throw new IllegalStateException("No NPF interfaces found. Is Npcap installed?");
         }
 
-        // 1. Try to detect default local IP on Windows via "route print -4"
-        String defaultLocalIp = detectDefaultLocalIpWindows();
+        // 1. The interface holding the default route's source address (route table on Linux,
+        //    an unsent UDP connect elsewhere)
+        String defaultLocalIp = RouteTable.current().defaultSourceAddress();
         if (defaultLocalIp != null) {
             for (PcapNetworkInterface nif : nifs) {
                 for (PcapAddress addr : nif.getAddresses()) {
@@ -92,28 +124,132 @@ public class NetworkInterfaceManager {
         return null; // no IPv4 found
     }
 
-    private static String detectDefaultLocalIpWindows() {
+    /**
+     * Every capture interface with an IPv4 address, loopback excluded. Scans spread their raw
+     * probes over these so each NIC sends and captures for its own targets.
+     */
+    public static synchronized List<PcapNetworkInterface> getInterfaces() throws Exception {
+        if (interfaces == null) {
+            List<PcapNetworkInterface> usable = new ArrayList<>();
+            List<PcapNetworkInterface> nifs = Pcaps.findAllDevs();
+            if (nifs != null) {
+                for (PcapNetworkInterface nif : nifs) {
+                    if (!nif.isLoopBack() && ipv4Address(nif) != null) usable.add(nif);
+                }
+            }
+            if (usable.isEmpty()) {
+                throw new IllegalStateException("No usable IPv4 adapter found.");
+            }
+            interfaces = List.copyOf(usable);
+        }
+        return interfaces;
+    }
+
+    /**
+     * Interface that frames for the target leave through: the one whose subnet contains it, else
+     * the one the kernel routes it over, else the default interface.
+     */
+    public static PcapNetworkInterface getInterfaceFor(String ip) throws Exception {
+        int target = toInt(ip);
+        PcapNetworkInterface best = null;
+        int bestMask = 0;
+        for (PcapNetworkInterface nif : getInterfaces()) {
+            for (PcapAddress addr : nif.getAddresses()) {
+                if (!(addr.getAddress() instanceof Inet4Address) || addr.getNetmask() == null) continue;
+                int mask = toInt(addr.getNetmask().getHostAddress());
+                int network = toInt(addr.getAddress().getHostAddress()) & mask;
+                if ((target & mask) == network && (best == null || Integer.compareUnsigned(mask, bestMask) > 0)) {
+                    best = nif;
+                    bestMask = mask;
+                }
+            }
+        }
+        if (best != null) return best;
+        String iface = RouteTable.current().interfaceFor(InetAddress.getByName(ip));
+        if (iface != null) {
+            for (PcapNetworkInterface nif : getInterfaces()) {
+                if (nif.getName().equals(iface)) return nif;
+            }
+        }
+        return getDefaultInterface();
+    }
+
+    /** First IPv4 address of the interface, or null. */
+    public static Inet4Address ipv4Address(PcapNetworkInterface nif) {
+        for (PcapAddress addr : nif.getAddresses()) {
+            if (addr.getAddress() instanceof Inet4Address a) return a;
+        }
+        return null;
+    }
+
+    /** IPv4 addresses of all capture interfaces, so a subnet scan can skip this machine. */
+    public static Set<String> getLocalAddresses() throws Exception {
+        Set<String> local = new HashSet<>();
+        for (PcapNetworkInterface nif : getInterfaces()) {
+            for (PcapAddress addr : nif.getAddresses()) {
+                if (addr.getAddress() instanceof Inet4Address) local.add(addr.getAddress().getHostAddress());
+            }
+        }
+        return local;
+    }
+
+    /**
+     * Next hop of the default route, read from /proc/net/route on Linux and "route print" on
+     * Windows; null when there is none or the platform is not supported.
+     */
+    public static String getDefaultGatewayIp() {
+        if (RouteTable.current().isAvailable()) {
+            return getGatewayFor("0.0.0.0");
+        }
+        return detectDefaultGatewayWindows();
+    }
+
+    /**
+     * Gateway of the most specific route to the target, or null when the target is on-link or
+     * no route table is available (then the default gateway is the best guess).
+     */
+    public static String getGatewayFor(String ip) {
+        try {
+            InetAddress gateway = RouteTable.current().gatewayFor(InetAddress.getByName(ip));
+            return gateway != null ? gateway.getHostAddress() : null;
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * MAC address of the default gateway, which is where frames for off-link targets go.
+     * Resolved like any other host, through the shared {@link ArpResolver}.
+     */
+    public static String getDefaultGatewayMac() {
+        return getGatewayMac(getDefaultGatewayIp());
+    }
+
+    public static String getGatewayMac(String gateway) {
+        if (gateway == null) return null;
+        String mac = new Mac().resolveMac(gateway);
+        return "Unknown".equals(mac) ? null : mac;
+    }
+
+    private static int toInt(String ip) {
+        String[] parts = ip.split("\\.");
+        return Integer.parseInt(parts[0]) << 24 | Integer.parseInt(parts[1]) << 16
+                | Integer.parseInt(parts[2]) << 8 | Integer.parseInt(parts[3]);
+    }
+
+    private static String detectDefaultGatewayWindows() {
         try {
             String os = System.getProperty("os.name").toLowerCase();
             if (!os.contains("win")) return null;
 
             Process p = Runtime.getRuntime().exec(new String[]{"cmd.exe", "/c", "route print -4"});
+            ScanMetrics.subprocessSpawned();
             try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
                 String line;
-                boolean inIpv4Table = false;
                 while ((line = r.readLine()) != null) {
-                    line = line.trim();
-                    if (line.startsWith("IPv4 Route Table")) {
-                        inIpv4Table = true;
-                        continue;
-                    }
-                    if (!inIpv4Table) continue;
-
-                    if (line.startsWith("0.0.0.0")) {
-                        String[] parts = line.split("\\s+");
-                        if (parts.length >= 4) {
-                            return parts[3]; // local interface IP
-                        }
+                    String[] parts = line.trim().split("\\s+");
+                    if (parts.length >= 4 && parts[0].equals("0.0.0.0") && parts[1].equals("0.0.0.0")) {
+                        return parts[2]; // gateway
                     }
                 }
             }
@@ -0,0 +1,277 @@
+package com.smartnet.smartnet.network.networkinterfacemanager;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Snapshot of the kernel's routing state, read straight from {@code /proc/net/route},
+ * {@code /proc/net/ipv6_route} and {@code /proc/net/if_inet6} on Linux; no subprocess, no pcap.
+ * Answers which interface and gateway a target is reached through.
+ * <p>
+ * {@link #warmUp()} loads it on a background thread at startup so the first scan does not pay
+ * for it, and starts a watcher that reloads it, and drops the interface choices cached by
+ * {@link NetworkInterfaceManager}, when interfaces or routes change. Elsewhere the table only
+ * knows the source address of the default route, found by connecting a UDP socket (which sends
+ * nothing).
+ */
+public final class RouteTable {
+
+    /** A route; IPv4 addresses are kept in the low 32 bits, IPv6 in all 128. */
+    public record Route(String iface, BigInteger destination, int prefixLength, InetAddress gateway, int metric) {
+        boolean matches(BigInteger target, int bits) {
+            return prefixLength == 0 || target.shiftRight(bits - prefixLength).equals(destination.shiftRight(bits - prefixLength));
+        }
+    }
+
+    private static final Path ROUTES = Path.of("/proc/net/route");
+    private static final Path IPV6_ROUTES = Path.of("/proc/net/ipv6_route");
+    private static final Path IPV6_ADDRESSES = Path.of("/proc/net/if_inet6");
+    private static final long WATCH_INTERVAL_MILLIS = 2000;
+
+    private static volatile RouteTable current;
+    private static CompletableFuture<RouteTable> loading;
+    private static Thread watcher;
+
+    private final List<Route> ipv4;
+    private final List<Route> ipv6;
+    private final String defaultSourceAddress;
+    private final Object signature;     // state the table was built from, compared by the watcher
+
+    private RouteTable(List<Route> ipv4, List<Route> ipv6, String defaultSourceAddress, Object signature) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.defaultSourceAddress = defaultSourceAddress;
+        this.signature = signature;
+    }
+
+    /** The cached table, loading it on the calling thread if {@link #warmUp()} has not finished yet. */
+    public static RouteTable current() {
+        RouteTable table = current;
+        if (table != null) return table;
+        return warmUp().join();
+    }
+
+    /** Starts loading the table in the background and watching for changes; safe to call repeatedly. */
+    public static synchronized CompletableFuture<RouteTable> warmUp() {
+        if (loading == null) {
+            loading = CompletableFuture.supplyAsync(() -> {
+                RouteTable table = load();
+                current = table;
+                return table;
+            }, r -> {
+                Thread t = new Thread(r, "smartnet-route-table");
+                t.setDaemon(true);
+                t.start();
+            });
+            startWatcher();
+        }
+        return loading;
+    }
+
+    /** Forgets the table so the next lookup reads the kernel state again. */
+    public static synchronized void invalidate() {
+        current = null;
+        loading = null;
+    }
+
+    /** Most specific route to the target, lowest metric on ties; null if none matches. */
+    public Route lookup(InetAddress target) {
+        boolean v6 = target instanceof Inet6Address;
+        int bits = v6 ? 128 : 32;
+        BigInteger address = new BigInteger(1, target.getAddress());
+        Route best = null;
+        for (Route route : v6 ? ipv6 : ipv4) {
+            if (!route.matches(address, bits)) continue;
+            if (best == null || route.prefixLength() > best.prefixLength()
+                    || route.prefixLength() == best.prefixLength() && route.metric() < best.metric()) {
+                best = route;
+            }
+        }
+        return best;
+    }
+
+    /** Name of the interface the target is reached through, or null. */
+    public String interfaceFor(InetAddress target) {
+        Route route = lookup(target);
+        return route != null ? route.iface() : null;
+    }
+
+    /** Next hop for the target, or null when it is on-link or unknown. */
+    public InetAddress gatewayFor(InetAddress target) {
+        Route route = lookup(target);
+        return route != null ? route.gateway() : null;
+    }
+
+    /** Local IPv4 address the default route leaves from, or null without a default route. */
+    public String defaultSourceAddress() {
+        return defaultSourceAddress;
+    }
+
+    /** Whether a route table was read (Linux); otherwise lookups find nothing. */
+    public boolean isAvailable() {
+        return !ipv4.isEmpty() || !ipv6.isEmpty();
+    }
+
+    private static RouteTable load() {
+        List<Route> ipv4 = new ArrayList<>();
+        List<Route> ipv6 = new ArrayList<>();
+        readRoutes(ipv4, ipv6);
+        return new RouteTable(List.copyOf(ipv4), List.copyOf(ipv6), findDefaultSource(ipv4), signature(ipv4, ipv6));
+    }
+
+    private static void readRoutes(List<Route> ipv4, List<Route> ipv6) {
+        try {
+            if (Files.isReadable(ROUTES)) readIpv4(ipv4);
+            if (Files.isReadable(IPV6_ADDRESSES)) readIpv6Addresses(ipv6);
+            if (Files.isReadable(IPV6_ROUTES)) readIpv6Routes(ipv6);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not read the route table: " + e.getMessage());
+        }
+    }
+
+    /** Iface Destination Gateway Flags RefCnt Use Metric Mask ..., addresses in little-endian hex. */
+    private static void readIpv4(List<Route> routes) throws IOException {
+        List<String> lines = Files.readAllLines(ROUTES, StandardCharsets.US_ASCII);
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            String[] f = line.trim().split("\\s+");
+            if (f.length < 8) continue;
+            int flags = Integer.parseInt(f[3], 16);
+            if ((flags & 0x1) == 0) continue; // not up
+            int destination = Integer.reverseBytes(Integer.parseUnsignedInt(f[1], 16));
+            int mask = Integer.reverseBytes(Integer.parseUnsignedInt(f[7], 16));
+            int gateway = Integer.reverseBytes(Integer.parseUnsignedInt(f[2], 16));
+            routes.add(new Route(f[0], BigInteger.valueOf(Integer.toUnsignedLong(destination)), Integer.bitCount(mask),
+                    (flags & 0x2) != 0 ? toInet(BigInteger.valueOf(Integer.toUnsignedLong(gateway)), 4) : null,
+                    Integer.parseInt(f[6])));
+        }
+    }
+
+    /** address ifindex prefixlen scope flags name: each address's prefix is on-link on its interface. */
+    private static void readIpv6Addresses(List<Route> routes) throws IOException {
+        for (String line : Files.readAllLines(IPV6_ADDRESSES, StandardCharsets.US_ASCII)) {
+            String[] f = line.trim().split("\\s+");
+            if (f.length < 6 || f[5].equals("lo")) continue;
+            routes.add(new Route(f[5], new BigInteger(f[0], 16), Integer.parseInt(f[2], 16), null, 256));
+        }
+    }
+
+    /** dest destlen src srclen nexthop metric refcnt use flags iface. */
+    private static void readIpv6Routes(List<Route> routes) throws IOException {
+        for (String line : Files.readAllLines(IPV6_ROUTES, StandardCharsets.US_ASCII)) {
+            String[] f = line.trim().split("\\s+");
+            if (f.length < 10 || f[9].equals("lo")) continue;
+            int flags = Integer.parseUnsignedInt(f[8], 16);
+            if ((flags & 0x1) == 0 || (flags & 0x0200) != 0) continue; // down, or a reject route
+            if ((flags & 0x01000000) != 0) continue;                    // RTF_CACHE, comes and goes with traffic
+            BigInteger nextHop = new BigInteger(f[4], 16);
+            routes.add(new Route(f[9], new BigInteger(f[0], 16), Integer.parseInt(f[1], 16),
+                    (flags & 0x2) != 0 && nextHop.signum() != 0 ? toInet(nextHop, 16) : null,
+                    Integer.parseUnsignedInt(f[5], 16)));
+        }
+    }
+
+    /**
+     * Address of the default route's interface when the table was read; otherwise the source
+     * address the kernel would pick for a public destination.
+     */
+    private static String findDefaultSource(List<Route> ipv4) {
+        Route best = null;
+        for (Route route : ipv4) {
+            if (route.prefixLength() == 0 && (best == null || route.metric() < best.metric())) best = route;
+        }
+        if (best != null) {
+            try {
+                NetworkInterface nif = NetworkInterface.getByName(best.iface());
+                if (nif != null) {
+                    for (InetAddress address : Collections.list(nif.getInetAddresses())) {
+                        if (address instanceof Inet4Address) return address.getHostAddress();
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.connect(new InetSocketAddress("192.0.2.1", 9)); // TEST-NET-1, nothing is sent
+            InetAddress local = socket.getLocalAddress();
+            if (local instanceof Inet4Address && !local.isAnyLocalAddress()) return local.getHostAddress();
+        } catch (IOException | RuntimeException ignored) {
+        }
+        return null;
+    }
+
+    private static InetAddress toInet(BigInteger value, int length) {
+        byte[] raw = value.toByteArray();
+        byte[] address = new byte[length];
+        int copy = Math.min(raw.length, length);
+        System.arraycopy(raw, raw.length - copy, address, length - copy, copy);
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * The parsed routes and IPv6 addresses, ignoring order and the refcnt/use counters that
+     * change with traffic; the interface list where there is no /proc route table.
+     */
+    private static Object signature(List<Route> ipv4, List<Route> ipv6) {
+        if (Files.isReadable(ROUTES) || Files.isReadable(IPV6_ROUTES)) {
+            return List.of(new HashSet<>(ipv4), new HashSet<>(ipv6));
+        }
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (NetworkInterface nif : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                sb.append(nif.getName()).append(nif.isUp())
+                        .append(Arrays.toString(nif.getHardwareAddress()))
+                        .append(nif.getInterfaceAddresses()).append('\n');
+            }
+        } catch (IOException ignored) {
+        }
+        return sb.toString();
+    }
+
+    private static Object readSignature() {
+        List<Route> ipv4 = new ArrayList<>();
+        List<Route> ipv6 = new ArrayList<>();
+        readRoutes(ipv4, ipv6);
+        return signature(ipv4, ipv6);
+    }
+
+    /** Called under the class lock, so at most one watcher is ever started. */
+    private static synchronized void startWatcher() {
+        if (watcher != null) return;
+        watcher = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(WATCH_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                RouteTable table = current;
+                if (table != null && !table.signature.equals(readSignature())) {
+                    invalidate();
+                    NetworkInterfaceManager.invalidate();
+                    warmUp();
+                }
+            }
+        }, "smartnet-route-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+}
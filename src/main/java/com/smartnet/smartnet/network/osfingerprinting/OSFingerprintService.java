@@ -1,6 +1,9 @@
 package com.smartnet.smartnet.network.osfingerprinting;
 
+import com.smartnet.smartnet.network.macutils.ArpResolver;
+import com.smartnet.smartnet.network.metrics.ScanMetrics;
 import com.smartnet.smartnet.network.networkinterfacemanager.NetworkInterfaceManager;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
 import org.pcap4j.core.*;
 import org.pcap4j.packet.*;
 import org.pcap4j.packet.namednumber.*;
@@ -26,14 +29,22 @@ public class OSFingerprintService {
     }
 
     private final Config cfg;
-    private final PcapNetworkInterface nif;
 
-    public OSFingerprintService() throws Exception { this.cfg = new Config();this.nif= NetworkInterfaceManager.getDefaultInterface();
+    // Fails fast without a capture driver; the interface itself is picked per target.
+    public OSFingerprintService() throws Exception { this.cfg = new Config();NetworkInterfaceManager.getInterfaces();
     }
-    public OSFingerprintService(Config cfg) throws Exception{ this.cfg = cfg;this.nif=NetworkInterfaceManager.getDefaultInterface(); }
+    public OSFingerprintService(Config cfg) throws Exception{ this.cfg = cfg;NetworkInterfaceManager.getInterfaces(); }
 
     public OSFingerprintResult fingerprint(String targetIp) throws Exception {
+        return fingerprint(targetIp, CancellationToken.NONE);
+    }
+
+    /**
+     * Fingerprints the target, closing the capture handle as soon as the token is cancelled.
+     */
+    public OSFingerprintResult fingerprint(String targetIp, CancellationToken token) throws Exception {
         InetAddress dst = InetAddress.getByName(targetIp);
+        PcapNetworkInterface nif = NetworkInterfaceManager.getInterfaceFor(targetIp);
 
         if (nif == null) {
             throw new IllegalStateException("No suitable network interface found for " + targetIp);
@@ -49,12 +60,13 @@ public class OSFingerprintService {
                         : PcapNetworkInterface.PromiscuousMode.NONPROMISCUOUS;
 
         try (PcapHandle handle = nif.openLive(cfg.snapLen, mode, cfg.readTimeoutMillis)) {
+            token.register(handle);
             String bpf = "ip and (tcp or icmp) and host " + targetIp;
             handle.setFilter(bpf, BpfProgram.BpfCompileMode.OPTIMIZE);
 
             // Send probes
             for (int port : cfg.probePorts) {
-                sendTcpSyn(handle, nif, dst, port);
+                sendTcpSyn(handle, nif, dst, port, token);
             }
 
             long end = System.currentTimeMillis() + cfg.waitPerTargetMillis;
@@ -62,10 +74,11 @@ public class OSFingerprintService {
             Integer windowSize = null;
             String tcpOptions = null;
 
-            while (System.currentTimeMillis() < end) {
+            while (System.currentTimeMillis() < end && !token.isCancelled()) {
                 try {
                     Packet packet = handle.getNextPacketEx();
                     if (packet == null) continue;
+                    ScanMetrics.packetReceived();
 
                     if (packet.contains(IpV4Packet.class)) {
                         IpV4Packet ip = packet.get(IpV4Packet.class);
@@ -78,63 +91,73 @@ public class OSFingerprintService {
                             break; // got what we need
                         }
                     }
-                } catch (TimeoutException ignored) {}
+                } catch (TimeoutException ignored) {
+                } catch (NotOpenException e) {
+                    break; // handle closed by cancellation
+                }
             }
+            token.unregister(handle);
+            recordDrops(handle);
 
-            // --- Refined OS heuristic (uses TTL + Window size rules you supplied) ---
-            OSFamily osFamily = OSFamily.UNKNOWN;
-            String desc = "No strong match";
-            double conf = 0.3;
-
-            if (ttl != null && windowSize != null) {
-                // Windows: TTL ~128, Win 65535 (64KB)
-                if (ttl >= 120 && ttl <= 130 && windowSize == 65535) {
-                    osFamily = OSFamily.WINDOWS;
-                    desc = "Windows Server (TTL~128, Win=65535)";
-                    conf = 0.95;
-                }
-                // Linux server: TTL ~64, Win 65535
-                else if (ttl >= 60 && ttl <= 70 && windowSize == 65535) {
-                    osFamily = OSFamily.LINUX;
-                    desc = "Linux (TTL~64, Win=65535)";
-                    conf = 0.9;
-                }
-                // FreeBSD: TTL ~64, Win 32768
-                else if (ttl >= 60 && ttl <= 70 && windowSize == 32768) {
-                    osFamily = OSFamily.BSD; // using BSD enum for FreeBSD
-                    desc = "FreeBSD (TTL~64, Win=32768)";
+            return classify(targetIp, ttl, windowSize, tcpOptions);
+        }
+    }
+
+    // --- Helpers ---
+
+    /** Maps the TTL and TCP window of a SYN/ACK to an OS family. Pure function, no I/O. */
+    static OSFingerprintResult classify(String targetIp, Integer ttl, Integer windowSize, String tcpOptions) {
+        // --- Refined OS heuristic (uses TTL + Window size rules you supplied) ---
+        OSFamily osFamily = OSFamily.UNKNOWN;
+        String desc = "No strong match";
+        double conf = 0.3;
+
+        if (ttl != null && windowSize != null) {
+            // Windows: TTL ~128, Win 65535 (64KB)
+            if (ttl >= 120 && ttl <= 130 && windowSize == 65535) {
+                osFamily = OSFamily.WINDOWS;
+                desc = "Windows Server (TTL~128, Win=65535)";
+                conf = 0.95;
+            }
+            // Linux server: TTL ~64, Win 65535
+            else if (ttl >= 60 && ttl <= 70 && windowSize == 65535) {
+                osFamily = OSFamily.LINUX;
+                desc = "Linux (TTL~64, Win=65535)";
+                conf = 0.9;
+            }
+            // FreeBSD: TTL ~64, Win 32768
+            else if (ttl >= 60 && ttl <= 70 && windowSize == 32768) {
+                osFamily = OSFamily.BSD; // using BSD enum for FreeBSD
+                desc = "FreeBSD (TTL~64, Win=32768)";
+                conf = 0.9;
+            }
+            // Solaris/AIX/Cisco devices: TTL ~255
+            else if (ttl >= 240 && ttl <= 255) {
+                if (windowSize == 65535) {
+                    osFamily = OSFamily.MACOS; // reuse MACOS enum for Solaris/AIX-like
+                    desc = "Solaris/AIX-like (TTL~255, Win=65535)";
                     conf = 0.9;
+                } else if (windowSize == 16384) {
+                    osFamily = OSFamily.BSD; // Cisco/AIX routers often show 16384
+                    desc = "Cisco/AIX-like (TTL~255, Win=16384)";
+                    conf = 0.85;
                 }
-                // Solaris/AIX/Cisco devices: TTL ~255
-                else if (ttl >= 240 && ttl <= 255) {
-                    if (windowSize == 65535) {
-                        osFamily = OSFamily.MACOS; // reuse MACOS enum for Solaris/AIX-like
-                        desc = "Solaris/AIX-like (TTL~255, Win=65535)";
-                        conf = 0.9;
-                    } else if (windowSize == 16384) {
-                        osFamily = OSFamily.BSD; // Cisco/AIX routers often show 16384
-                        desc = "Cisco/AIX-like (TTL~255, Win=16384)";
-                        conf = 0.85;
-                    }
-                }
-                // If TTL matches 64 and window is one of common Linux multiples, nudge Linux
-                else if (ttl >= 60 && ttl <= 70) {
-                    if (windowSize == 5840 || windowSize == 29200 || windowSize == 64240) {
-                        osFamily = OSFamily.LINUX;
-                        desc = "Linux-like (TTL~64, win=" + windowSize + ")";
-                        conf = 0.7;
-                    }
+            }
+            // If TTL matches 64 and window is one of common Linux multiples, nudge Linux
+            else if (ttl >= 60 && ttl <= 70) {
+                if (windowSize == 5840 || windowSize == 29200 || windowSize == 64240) {
+                    osFamily = OSFamily.LINUX;
+                    desc = "Linux-like (TTL~64, win=" + windowSize + ")";
+                    conf = 0.7;
                 }
             }
-
-            return new OSFingerprintResult(targetIp, osFamily, desc, conf, ttl, windowSize, tcpOptions);
         }
-    }
 
-    // --- Helpers ---
+        return new OSFingerprintResult(targetIp, osFamily, desc, conf, ttl, windowSize, tcpOptions);
+    }
 
     private void sendTcpSyn(PcapHandle handle, PcapNetworkInterface nif,
-                            InetAddress dst, int dstPort) throws Exception {
+                            InetAddress dst, int dstPort, CancellationToken token) throws Exception {
 
         // Source IPv4 from selected interface
         Inet4Address srcAddr = null;
@@ -154,12 +177,10 @@ public class OSFingerprintService {
         }
         MacAddress srcMac = (MacAddress) nif.getLinkLayerAddresses().get(0);
 
-        // Destination MAC via your resolver
-        com.smartnet.smartnet.network.macutils.Mac macResolver =
-                new com.smartnet.smartnet.network.macutils.Mac();
-        String dstMacStr = macResolver.resolveMac(dst.getHostAddress());
+        // Destination MAC: the host's on-link, its gateway's otherwise; batched and cached
+        String dstMacStr = ArpResolver.shared().resolveNextHop(dst.getHostAddress(), token);
         MacAddress dstMac = null;
-        if (dstMacStr != null && !"Unknown".equalsIgnoreCase(dstMacStr)) {
+        if (dstMacStr != null) {
             dstMac = toMacAddress(dstMacStr);
         }
         if (dstMac == null) {
@@ -167,6 +188,13 @@ public class OSFingerprintService {
             dstMac = MacAddress.getByName("ff:ff:ff:ff:ff:ff");
         }
 
+        handle.sendPacket(buildTcpSyn(srcMac, dstMac, srcAddr, (Inet4Address) dst, dstPort));
+        ScanMetrics.packetSent();
+    }
+
+    /** Builds the Ethernet/IPv4/TCP SYN frame sent by {@link #sendTcpSyn}; no capture handle needed. */
+    static Packet buildTcpSyn(MacAddress srcMac, MacAddress dstMac, Inet4Address srcAddr,
+                              Inet4Address dst, int dstPort) {
         // TCP builder — include pseudo-header IPs for checksum
         TcpPacket.Builder tcpBuilder = new TcpPacket.Builder();
         tcpBuilder
@@ -178,7 +206,7 @@ public class OSFingerprintService {
                 .correctChecksumAtBuild(true)
                 .correctLengthAtBuild(true)
                 .srcAddr(srcAddr)
-                .dstAddr((Inet4Address) dst);
+                .dstAddr(dst);
 
         // IPv4 builder
         IpV4Packet.Builder ipBuilder = new IpV4Packet.Builder();
@@ -188,7 +216,7 @@ public class OSFingerprintService {
                 .ttl((byte) 64)
                 .protocol(IpNumber.TCP)
                 .srcAddr(srcAddr)
-                .dstAddr((Inet4Address) dst)
+                .dstAddr(dst)
                 .payloadBuilder(tcpBuilder)
                 .correctChecksumAtBuild(true)
                 .correctLengthAtBuild(true);
@@ -202,7 +230,16 @@ public class OSFingerprintService {
                 .payloadBuilder(ipBuilder)
                 .paddingAtBuild(true);
 
-        handle.sendPacket(etherBuilder.build());
+        return etherBuilder.build();
+    }
+
+    private void recordDrops(PcapHandle handle) {
+        if (!ScanMetrics.ENABLED || !handle.isOpen()) return;
+        try {
+            ScanMetrics.packetsDropped(handle.getStats().getNumPacketsDropped());
+        } catch (PcapNativeException | NotOpenException | UnsupportedOperationException ignored) {
+            // not every platform reports capture stats
+        }
     }
 
     /** Normalize various MAC formats into something MacAddress can parse. */
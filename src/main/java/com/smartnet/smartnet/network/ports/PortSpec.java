@@ -0,0 +1,97 @@
+package com.smartnet.smartnet.network.ports;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Parses port specifications such as {@code 1-1024,3389,8000-8100,!25}.
+ * <ul>
+ *     <li>{@code n} a single port</li>
+ *     <li>{@code a-b} an inclusive range</li>
+ *     <li>{@code top:n} the n most common ports (see {@link TopPorts})</li>
+ *     <li>{@code !x} excludes a port, range or top list, regardless of position</li>
+ * </ul>
+ * Ports keep the order they first appear in; duplicates are dropped.
+ */
+public final class PortSpec {
+
+    private PortSpec() {
+    }
+
+    public static int[] parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            throw new IllegalArgumentException("Port list is empty.");
+        }
+        int[] ports = new int[16];
+        int count = 0;
+        BitSet seen = new BitSet(65536);
+        BitSet excluded = new BitSet(65536);
+
+        for (String raw : spec.split(",")) {
+            String token = raw.trim();
+            if (token.isEmpty()) continue;
+            boolean exclude = token.startsWith("!");
+            if (exclude) token = token.substring(1).trim();
+
+            if (token.regionMatches(true, 0, "top:", 0, 4)) {
+                int[] top = TopPorts.top(parsePort(token.substring(4), 65535));
+                for (int port : top) {
+                    if (exclude) {
+                        excluded.set(port);
+                    } else if (!seen.get(port)) {
+                        seen.set(port);
+                        ports = grow(ports, count);
+                        ports[count++] = port;
+                    }
+                }
+                continue;
+            }
+
+            int dash = token.indexOf('-');
+            int from = parsePort(dash < 0 ? token : token.substring(0, dash), 65535);
+            int to = dash < 0 ? from : parsePort(token.substring(dash + 1), 65535);
+            if (from > to) {
+                throw new IllegalArgumentException("Invalid port range: " + token);
+            }
+            if (exclude) {
+                excluded.set(from, to + 1);
+                continue;
+            }
+            for (int port = from; port <= to; port++) {
+                if (!seen.get(port)) {
+                    seen.set(port);
+                    ports = grow(ports, count);
+                    ports[count++] = port;
+                }
+            }
+        }
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (!excluded.get(ports[i])) {
+                ports[kept++] = ports[i];
+            }
+        }
+        if (kept == 0) {
+            throw new IllegalArgumentException("Port list selects no ports: " + spec);
+        }
+        return Arrays.copyOf(ports, kept);
+    }
+
+    private static int[] grow(int[] ports, int count) {
+        return count < ports.length ? ports : Arrays.copyOf(ports, ports.length * 2);
+    }
+
+    private static int parsePort(String value, int max) {
+        int port;
+        try {
+            port = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port: " + value.trim());
+        }
+        if (port < 1 || port > max) {
+            throw new IllegalArgumentException("Port number out of range: " + port);
+        }
+        return port;
+    }
+}
@@ -0,0 +1,90 @@
+package com.smartnet.smartnet.network.ports;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * TCP ports ranked by how often they are found open in the wild, most common first. The
+ * ranking is nmap's top 1000 TCP ports, the head of it in nmap-services frequency order, plus
+ * a few newer service ports; it is read from {@code top-ports.txt} next to this class.
+ * Ports beyond it fall back to ascending order.
+ */
+public final class TopPorts {
+
+    private static final int[] RANKED = load();
+
+    /** rank[port] = position in the ranking; unranked ports sort after all ranked ones. */
+    private static final int[] RANK = new int[65536];
+
+    static {
+        Arrays.fill(RANK, Integer.MAX_VALUE);
+        for (int i = 0; i < RANKED.length; i++) {
+            RANK[RANKED[i]] = i;
+        }
+    }
+
+    private TopPorts() {
+    }
+
+    /** The n most common ports, most likely first. */
+    public static int[] top(int n) {
+        n = Math.max(0, Math.min(n, 65535));
+        int[] ports = new int[n];
+        int count = Math.min(n, RANKED.length);
+        System.arraycopy(RANKED, 0, ports, 0, count);
+        for (int port = 1; count < n; port++) {
+            if (RANK[port] == Integer.MAX_VALUE) {
+                ports[count++] = port;
+            }
+        }
+        return ports;
+    }
+
+    public static int rankOf(int port) {
+        return RANK[port];
+    }
+
+    /**
+     * Returns the ports reordered so the most commonly open ones come first. Unranked ports
+     * keep ascending order after the ranked ones.
+     */
+    public static int[] rank(int[] ports) {
+        long[] keys = new long[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            int rank = RANK[ports[i]];
+            keys[i] = ((long) (rank == Integer.MAX_VALUE ? RANKED.length : rank) << 16) | ports[i];
+        }
+        Arrays.sort(keys);
+        int[] ranked = new int[ports.length];
+        for (int i = 0; i < keys.length; i++) {
+            ranked[i] = (int) (keys[i] & 0xFFFF);
+        }
+        return ranked;
+    }
+
+    private static int[] load() {
+        InputStream in = TopPorts.class.getResourceAsStream("top-ports.txt");
+        if (in == null) throw new IllegalStateException("top-ports.txt is missing from the build");
+        int[] ports = new int[1024];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+                for (String port : line.split("[,\\s]+")) {
+                    if (port.isEmpty()) continue;
+                    if (count == ports.length) ports = Arrays.copyOf(ports, count * 2);
+                    ports[count++] = Integer.parseInt(port);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Arrays.copyOf(ports, count);
+    }
+}
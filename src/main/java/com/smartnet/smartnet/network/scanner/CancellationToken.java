@@ -0,0 +1,77 @@
+package com.smartnet.smartnet.network.scanner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared cancellation flag for a running scan. Probes register the sockets, pcap handles
+ * and processes they block on, so cancelling (or hitting the deadline) releases them
+ * immediately instead of waiting for their own timeouts.
+ */
+public class CancellationToken {
+
+    /** Token that is never cancelled, for callers that don't need cancellation. */
+    public static final CancellationToken NONE = new CancellationToken(0) {
+        @Override
+        public void cancel() { }
+    };
+
+    private final long deadlineNanos;   // 0 = no deadline
+    private final Set<Closeable> resources = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public CancellationToken(long deadlineMillis) {
+        this.deadlineNanos = deadlineMillis > 0 ? System.nanoTime() + deadlineMillis * 1_000_000L : 0;
+    }
+
+    public boolean isCancelled() {
+        if (!cancelled && deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0) {
+            cancel();
+        }
+        return cancelled;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != 0;
+    }
+
+    /** Milliseconds left before the deadline, or {@link Long#MAX_VALUE} without one. */
+    public long remainingMillis() {
+        if (deadlineNanos == 0) return Long.MAX_VALUE;
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Closeable resource : resources) {
+            closeQuietly(resource);
+        }
+        resources.clear();
+    }
+
+    /**
+     * Tracks a resource until {@link #unregister} is called. If the token is already
+     * cancelled the resource is closed right away.
+     */
+    public void register(Closeable resource) {
+        if (this == NONE) return;
+        resources.add(resource);
+        if (cancelled && resources.remove(resource)) {
+            closeQuietly(resource);
+        }
+    }
+
+    public void unregister(Closeable resource) {
+        if (this == NONE) return;
+        resources.remove(resource);
+    }
+
+    private static void closeQuietly(Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException | RuntimeException ignored) {
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.smartnet.smartnet.network.scanner;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD limit on port probes in flight, kept separately for each destination subnet so a slow
+ * or lossy path does not hold back the others. Like TCP's congestion window: every answer
+ * that arrives within the expected RTT grows the window by about one probe per window's
+ * worth of answers. Each window of probes (or {@link Config#minSamples}, whichever is more)
+ * is one epoch; when an epoch's timeout share rises more than {@link Config#lossThreshold}
+ * above the subnet's usual share, the window is cut by {@link Config#decrease}. The usual
+ * share is a moving average over past epochs, so filtered ports that never answer count as
+ * the baseline of that subnet rather than as congestion.
+ * <p>
+ * Only connect probes feed it. Discovery of hosts that are down times out by design and
+ * would drive every window to the floor.
+ */
+public class CongestionControl {
+
+    public static class Config {
+        public double initialWindow = 8;
+        public double minWindow = 1;
+        public double maxWindow = 1024;
+        public double decrease = 0.5;               // window multiplier on a cut
+        public double lossThreshold = 0.1;          // timeout share above the baseline that triggers a cut
+        public double baselineGain = 0.125;         // weight of the latest epoch in the baseline average
+        public int minSamples = 8;                  // probes judged at once when the window is smaller
+        public int ipv4PrefixLength = 24;           // addresses sharing this prefix share a window
+        public int ipv6PrefixLength = 64;
+    }
+
+    /** Read-only view of one subnet's window, for progress displays. */
+    public record WindowState(String subnet, double window, int inFlight, long srttMicros,
+                              long responses, long timeouts, long cuts) {}
+
+    private static final long POLL_MILLIS = 50;
+
+    private final Config config;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public CongestionControl() {
+        this(new Config());
+    }
+
+    public CongestionControl(Config config) {
+        if (config.minWindow < 1 || config.initialWindow < config.minWindow || config.maxWindow < config.initialWindow) {
+            throw new IllegalArgumentException("Need 1 <= minWindow <= initialWindow <= maxWindow");
+        }
+        this.config = config;
+    }
+
+    /** The window of the subnet {@code ip} belongs to, created on first use. */
+    public Window windowFor(String ip) {
+        return windows.computeIfAbsent(subnetOf(ip), subnet -> new Window(subnet));
+    }
+
+    public List<WindowState> getWindows() {
+        List<WindowState> states = new ArrayList<>();
+        for (Window window : windows.values()) {
+            states.add(window.state());
+        }
+        states.sort((a, b) -> a.subnet().compareTo(b.subnet()));
+        return states;
+    }
+
+    /** Sum of all windows: the probes the controller would let run at once right now. */
+    public int getTotalWindow() {
+        int total = 0;
+        for (Window window : windows.values()) {
+            total += window.limit();
+        }
+        return total;
+    }
+
+    private String subnetOf(String ip) {
+        byte[] address;
+        try {
+            address = InetAddress.getByName(ip).getAddress();   // literal, no lookup
+        } catch (UnknownHostException e) {
+            return ip;
+        }
+        int prefix = Math.min(address.length * 8, address.length == 4 ? config.ipv4PrefixLength : config.ipv6PrefixLength);
+        for (int bit = prefix; bit < address.length * 8; bit++) {
+            address[bit / 8] &= (byte) ~(0x80 >>> (bit % 8));
+        }
+        try {
+            return InetAddress.getByAddress(address).getHostAddress() + "/" + prefix;
+        } catch (UnknownHostException e) {
+            return ip;
+        }
+    }
+
+    /** Probes in flight towards one subnet. */
+    public class Window {
+
+        private final String subnet;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition opened = lock.newCondition();
+
+        // Guarded by lock; window is also read unlocked for totals.
+        private volatile double window = config.initialWindow;
+        private int inFlight;
+        private long srttNanos = -1;
+        private long rttVarNanos;
+        private int epochCompleted;             // probes finished since the last loss check
+        private int epochTimeouts;
+        private double baseline = -1;           // average timeout share per epoch, -1 until the first
+        private long responses;
+        private long timeouts;
+        private long cuts;
+
+        private Window(String subnet) {
+            this.subnet = subnet;
+        }
+
+        /**
+         * Waits until the window has room. Returns false without a slot if the scan is
+         * cancelled (or the thread interrupted) first.
+         */
+        public boolean acquire(CancellationToken token) {
+            lock.lock();
+            try {
+                while (inFlight >= limit()) {
+                    if (token.isCancelled()) return false;
+                    opened.await(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                inFlight++;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** A probe got an answer (open or refused) after {@code rttNanos}. */
+        public void answered(long rttNanos) {
+            lock.lock();
+            try {
+                responses++;
+                // Within the expected RTT (the TCP retransmission-timeout estimate) the path is not
+                // queueing. Only a full window grows; otherwise the thread pools are the limit.
+                boolean full = inFlight >= limit();
+                if (full && (srttNanos < 0 || rttNanos <= srttNanos + 4 * rttVarNanos)) {
+                    window = Math.min(config.maxWindow, window + 1 / window);
+                }
+                sampleRtt(rttNanos);
+                finish(false);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** A probe got no answer before the connect timeout. */
+        public void timedOut() {
+            lock.lock();
+            try {
+                timeouts++;
+                finish(true);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** A probe ended without telling anything about the path, e.g. a local error. */
+        public void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                opened.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void sampleRtt(long rttNanos) {
+            if (srttNanos < 0) {
+                srttNanos = rttNanos;
+                rttVarNanos = rttNanos / 2;
+            } else {
+                rttVarNanos += (Math.abs(srttNanos - rttNanos) - rttVarNanos) / 4;
+                srttNanos += (rttNanos - srttNanos) / 8;
+            }
+        }
+
+        private void finish(boolean timedOut) {
+            inFlight--;
+            epochCompleted++;
+            if (timedOut) epochTimeouts++;
+            if (epochCompleted >= Math.max(limit(), config.minSamples)) {
+                double share = (double) epochTimeouts / epochCompleted;
+                if (baseline < 0) {
+                    baseline = share;
+                } else {
+                    if (share > baseline + config.lossThreshold) {
+                        window = Math.max(config.minWindow, window * config.decrease);
+                        cuts++;
+                    }
+                    baseline += (share - baseline) * config.baselineGain;
+                }
+                epochCompleted = 0;
+                epochTimeouts = 0;
+            }
+            opened.signalAll();
+        }
+
+        private int limit() {
+            return (int) window;
+        }
+
+        public WindowState state() {
+            lock.lock();
+            try {
+                return new WindowState(subnet, window, inFlight, Math.max(0, srttNanos) / 1000,
+                        responses, timeouts, cuts);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,25 +1,74 @@
 package com.smartnet.smartnet.network.scanner;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import com.smartnet.smartnet.network.checkpoint.ScanCheckpoint;
+import com.smartnet.smartnet.network.discovery.HostDiscovery;
+import com.smartnet.smartnet.network.discovery.IcmpSweep;
 import com.smartnet.smartnet.network.dnsutils.DnsResolver;
 import com.smartnet.smartnet.network.ipgenerator.IPGenerator;
+import com.smartnet.smartnet.network.ipgenerator.TargetPermutation;
+import com.smartnet.smartnet.network.macutils.ArpResolver;
 import com.smartnet.smartnet.network.macutils.Mac;
+import com.smartnet.smartnet.network.macutils.OuiDatabase;
+import com.smartnet.smartnet.network.metrics.ScanMetrics;
 import com.smartnet.smartnet.network.models.HostScanResults;
+import com.smartnet.smartnet.network.models.ServiceInfo;
+import com.smartnet.smartnet.network.models.UdpPortState;
 import com.smartnet.smartnet.network.networkinterfacemanager.NetworkInterfaceManager;
+import com.smartnet.smartnet.network.services.ServiceDetector;
+import com.smartnet.smartnet.network.udp.UdpScanner;
 import com.smartnet.smartnet.network.utils.PortScanner;
-import com.smartnet.smartnet.network.utils.Reachability;
 import com.smartnet.smartnet.network.osfingerprinting.*;
 /**
  * NetworkScanner provides utilities to scan hosts and subnets for reachability and open ports.
  */
 public class NetworkScanner {
 
+    public static class Config {
+        public int threads = 10;
+        public boolean osScan = false;
+        public int portTimeoutMillis = 200;
+        public int maxOpenPorts = 0;                // stop probing a host after this many open ports, 0 = all
+        public Path checkpointFile = null;          // no checkpointing when null
+        public long checkpointIntervalMillis = 5000;
+        public long deadlineMillis = 0;              // overall scan budget, 0 = unlimited
+        public Consumer<HostScanResults> onResult = null; // called from pool threads as hosts finish
+        public boolean randomizeOrder = false;      // walk (host, port) pairs in a seeded pseudo-random order
+        public long seed = 0;
+        public long shardStart = 0;                 // permutation index range [shardStart, shardEnd) of a randomized scan
+        public long shardEnd = -1;                  // -1 = up to the end
+        public ScanTelemetry telemetry = null;      // live counters for progress displays
+        public int discoveryThreads = 0;            // per-stage pool sizes for subnet scans, 0 = threads
+        public int portThreads = 0;
+        public int enrichThreads = 0;               // DNS, MAC and OS lookups
+        public int stageQueueCapacity = 256;        // hosts buffered between stages before the feeder blocks
+        public boolean detectServices = false;      // read banners on open ports to identify services
+        public ServiceDetector.Config serviceDetection = new ServiceDetector.Config();
+        public int[] udpPorts = new int[0];         // UDP ports to probe on hosts that are up, empty = no UDP scan
+        public UdpScanner.Config udp = new UdpScanner.Config();
+        public HostDiscovery.Config discovery = new HostDiscovery.Config(); // probes raced to decide if a host is up
+        public boolean icmpSweep = false;           // ping every target over pcap before a subnet scan
+        public IcmpSweep.Config sweep = new IcmpSweep.Config();
+        public ProbeBudget probeBudget = null;      // cap on probes in flight shared with other scans, null = none
+        public CongestionControl congestion = null; // adaptive per-subnet limit on port probes, null = threads only
+    }
+
+    /** Sink for scans started without telemetry; nobody reads it. */
+    private static final ScanTelemetry UNOBSERVED = new ScanTelemetry();
 
-    private final Reachability reachability=new Reachability();
+    private final HostDiscovery hostDiscovery=new HostDiscovery();
     private final Mac macResolver=new Mac();
     private final PortScanner portScanner=new PortScanner();
     private final DnsResolver dnsResolver=new DnsResolver();
@@ -27,46 +76,276 @@ public class NetworkScanner {
      * Scans a single host for reachability and open ports.
      */
     public HostScanResults scanHost(String ip, List<Integer> ports) {
-        boolean isUP = reachability.isReachable(ip);
-        List<Integer> openPorts = new ArrayList<>();
-        String macAddress="-";
-        String hostName="N/A";
-        if (isUP) {
-            for (int port : ports) {
-                if (portScanner.isPortOpen(ip, port, 200)) {
-                    openPorts.add(port);
+        return scanHost(ip, ports, 200);
+    }
+
+    public HostScanResults scanHost(String ip, List<Integer> ports, int portTimeoutMillis) {
+        Config config=new Config();
+        config.portTimeoutMillis=portTimeoutMillis;
+        try {
+            return scanHost(ip, toArray(ports), config, CancellationToken.NONE);
+        } catch (Exception e) {
+            throw new IllegalStateException(e); // only the OS scan throws
+        }
+    }
+
+    public HostScanResults scanHost(String ip, List<Integer> ports, boolean osScan) throws Exception {
+        return scanHost(ip, ports, osScan, 200);
+    }
+
+    public HostScanResults scanHost(String ip, List<Integer> ports, boolean osScan, int portTimeoutMillis) throws Exception {
+        Config config=new Config();
+        config.osScan=osScan;
+        config.portTimeoutMillis=portTimeoutMillis;
+        return scanHost(ip, toArray(ports), config, CancellationToken.NONE);
+    }
+
+    /**
+     * Scans a single host with the given settings. Ports are probed in array order, so
+     * ranked lists (see {@link com.smartnet.smartnet.network.ports.TopPorts}) find the likely ones first.
+     */
+    public HostScanResults scanHost(String ip, int[] ports, Config config) throws Exception {
+        return scanHost(ip, ports, config, CancellationToken.NONE);
+    }
+
+    private HostScanResults scanHost(String ip, int[] ports, Config config, CancellationToken token) throws Exception {
+        long start = ScanMetrics.start();
+        try (ScanEngines engines = ScanEngines.open(config)) {
+            if (!discover(ip, config, token, engines)) {
+                return downHost(ip, config);
+            }
+            List<Integer> openPorts = probePorts(ip, ports, config, token, engines);
+            return enrichHost(ip, openPorts, probeUdp(ip, config, token, engines), config, token, engines);
+        } finally {
+            ScanMetrics.record(ScanMetrics.Phase.HOST, start);
+        }
+    }
+
+    /**
+     * Engines shared by every host of one scan, each running its own selector thread. A field is
+     * null when its feature is off or the engine could not be started.
+     */
+    private static final class ScanEngines implements AutoCloseable {
+        final ServiceDetector detector;
+        final UdpScanner udp;
+        volatile Map<String, Long> echoReplies;     // ICMP sweep responders and their RTT in microseconds
+
+        private ScanEngines(ServiceDetector detector, UdpScanner udp) {
+            this.detector = detector;
+            this.udp = udp;
+        }
+
+        /**
+         * Pings the targets in one pcap sweep. Without pcap the scan carries on with per-host
+         * discovery, ICMP included.
+         */
+        void sweep(List<String> targets, Config config, CancellationToken token) {
+            if (!config.icmpSweep || targets.isEmpty() || !config.discovery.probes.contains(HostDiscovery.Probe.ICMP)) {
+                return;
+            }
+            long start = ScanMetrics.start();
+            try {
+                echoReplies = new IcmpSweep(config.sweep).sweep(targets, token);
+            } catch (Exception | LinkageError e) {
+                System.err.println("ICMP sweep disabled: " + e.getMessage());
+            } finally {
+                ScanMetrics.record(ScanMetrics.Phase.DISCOVERY, start);
+            }
+        }
+
+        static ScanEngines open(Config config) {
+            ServiceDetector detector = null;
+            UdpScanner udp = null;
+            if (config.detectServices) {
+                try {
+                    detector = new ServiceDetector(config.serviceDetection);
+                } catch (IOException e) {
+                    System.err.println("Service detection disabled: " + e.getMessage());
+                }
+            }
+            if (config.udpPorts.length > 0) {
+                try {
+                    udp = new UdpScanner(config.udp);
+                } catch (IOException e) {
+                    System.err.println("UDP scan disabled: " + e.getMessage());
                 }
             }
-            hostName=dnsResolver.resolveReverseDns(ip);
-            macAddress=macResolver.resolveMac(ip);
+            return new ScanEngines(detector, udp);
+        }
 
+        @Override
+        public void close() {
+            if (detector != null) detector.close();
+            if (udp != null) udp.close();
         }
+    }
 
-        return new HostScanResults(ip, isUP, openPorts,macAddress,hostName);
+    private static HostScanResults downHost(String ip, Config config) {
+        return new HostScanResults(ip, false, new ArrayList<>(), "-", "N/A", config.osScan ? "Unknown" : null);
     }
-    public HostScanResults scanHost(String ip, List<Integer> ports, boolean osScan) throws Exception {
-        boolean isUP = reachability.isReachable(ip);
+
+    private List<Integer> probePorts(String ip, int[] ports, Config config, CancellationToken token,
+                                     ScanEngines engines) {
         List<Integer> openPorts = new ArrayList<>();
+        for (int port : ports) {
+            if (token.isCancelled()) break;
+            if (probePort(ip, port, config, token, engines.detector)) {
+                openPorts.add(port);
+                if (config.maxOpenPorts > 0 && openPorts.size() >= config.maxOpenPorts) break;
+            }
+        }
+        return openPorts;
+    }
+
+    /** After an ICMP sweep, responders are up and the rest race the probes other than ICMP. */
+    private boolean discover(String ip, Config config, CancellationToken token, ScanEngines engines) {
+        Map<String, Long> echoReplies = engines.echoReplies;
+        if (echoReplies != null && echoReplies.containsKey(ip)) return true;
+        ScanTelemetry telemetry = telemetry(config);
+        telemetry.enter(ScanTelemetry.Stage.DISCOVERY);
+        long start = ScanMetrics.start();
+        ProbeBudget budget = config.probeBudget;
+        if (budget != null && !budget.acquire(token)) {
+            telemetry.exit(ScanTelemetry.Stage.DISCOVERY);
+            return false;
+        }
+        try {
+            if (echoReplies == null) return hostDiscovery.isUp(ip, config.discovery, token);
+            HostDiscovery.Config remaining = config.discovery.without(HostDiscovery.Probe.ICMP);
+            return !remaining.probes.isEmpty() && hostDiscovery.isUp(ip, remaining, token);
+        } finally {
+            if (budget != null) budget.release();
+            ScanMetrics.record(ScanMetrics.Phase.DISCOVERY, start);
+            telemetry.exit(ScanTelemetry.Stage.DISCOVERY);
+        }
+    }
+
+    /** With a detector, an open port's connection is handed over for banner reading instead of closed. */
+    private boolean probePort(String ip, int port, Config config, CancellationToken token, ServiceDetector detector) {
+        // The subnet's window first, so a throttled path does not sit on shared budget permits.
+        CongestionControl.Window window = config.congestion != null ? config.congestion.windowFor(ip) : null;
+        if (window != null && !window.acquire(token)) return false;
+        ProbeBudget budget = config.probeBudget;
+        if (budget != null && !budget.acquire(token)) {
+            if (window != null) window.release();
+            return false;
+        }
+        ScanTelemetry telemetry = telemetry(config);
+        telemetry.enter(ScanTelemetry.Stage.PORTS);
+        PortScanner.Outcome outcome = PortScanner.Outcome.ERROR;
+        long start = System.nanoTime();
+        try {
+            outcome = portScanner.probe(ip, port, config.portTimeoutMillis, token,
+                    detector != null ? channel -> detector.submit(ip, port, channel) : null);
+            telemetry.probeCompleted(outcome == PortScanner.Outcome.OPEN, outcome == PortScanner.Outcome.TIMEOUT);
+            return outcome == PortScanner.Outcome.OPEN;
+        } finally {
+            if (budget != null) budget.release();
+            if (window != null) {
+                switch (outcome) {
+                    case OPEN, CLOSED -> window.answered(System.nanoTime() - start);
+                    case TIMEOUT -> window.timedOut();
+                    case ERROR -> window.release();
+                }
+            }
+            telemetry.exit(ScanTelemetry.Stage.PORTS);
+        }
+    }
+
+    /** UDP ports of a host that did not answer with port-unreachable. */
+    private Map<Integer, UdpPortState> probeUdp(String ip, Config config, CancellationToken token,
+                                                ScanEngines engines) {
+        if (engines.udp == null || token.isCancelled()) return Map.of();
+        ProbeBudget budget = config.probeBudget;    // one permit per host; UdpScanner paces the ports itself
+        if (budget != null && !budget.acquire(token)) return Map.of();
+        ScanTelemetry telemetry = telemetry(config);
+        telemetry.enter(ScanTelemetry.Stage.UDP);
+        long start = ScanMetrics.start();
+        try {
+            Map<Integer, UdpPortState> states = engines.udp.scan(ip, config.udpPorts, token);
+            states.values().removeIf(state -> state == UdpPortState.CLOSED);
+            return states;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Map.of();
+        } finally {
+            if (budget != null) budget.release();
+            ScanMetrics.record(ScanMetrics.Phase.UDP, start);
+            telemetry.exit(ScanTelemetry.Stage.UDP);
+        }
+    }
+
+    private static ScanTelemetry telemetry(Config config) {
+        return config.telemetry != null ? config.telemetry : UNOBSERVED;
+    }
+
+    /**
+     * Reverse DNS, MAC and (optionally) OS fingerprint and services for a host that is up.
+     * Banners are read in the background while the lookups run, so they are collected last.
+     */
+    private HostScanResults enrichHost(String ip, List<Integer> openPorts, Map<Integer, UdpPortState> udpPorts,
+                                       Config config, CancellationToken token, ScanEngines engines) throws Exception {
         String macAddress="-";
+        String vendor=null;
         String hostName="N/A";
-        String os="Unknown";
-        if (isUP) {
-            for (int port : ports) {
-                if (portScanner.isPortOpen(ip, port, 200)) {
-                    openPorts.add(port);
-                }
+        String os=config.osScan ? "Unknown" : null;
+        ScanTelemetry telemetry = telemetry(config);
+        if (!token.isCancelled()) {
+            telemetry.enter(ScanTelemetry.Stage.DNS);
+            long start = ScanMetrics.start();
+            try {
+                hostName=dnsResolver.resolveReverseDns(ip);
+            } finally {
+                ScanMetrics.record(ScanMetrics.Phase.DNS, start);
+                telemetry.exit(ScanTelemetry.Stage.DNS);
+            }
+            telemetry.enter(ScanTelemetry.Stage.MAC);
+            start = ScanMetrics.start();
+            try {
+                macAddress=macResolver.resolveMac(ip, token);
+                vendor=OuiDatabase.shared().vendorOf(macAddress);
+            } finally {
+                ScanMetrics.record(ScanMetrics.Phase.MAC, start);
+                telemetry.exit(ScanTelemetry.Stage.MAC);
+            }
+        }
+        if (config.osScan && !token.isCancelled()) {
+            OSFingerprintService.Config osConfig=new OSFingerprintService.Config();
+            osConfig.verbose=true;
+            osConfig.usePromiscuous=false;
+            telemetry.enter(ScanTelemetry.Stage.OS);
+            long start = ScanMetrics.start();
+            try {
+                OSFingerprintService service=new OSFingerprintService(osConfig);
+                OSFingerprintResult result=service.fingerprint(ip, token);
+                os=result.getOsName();
+            } finally {
+                ScanMetrics.record(ScanMetrics.Phase.OS, start);
+                telemetry.exit(ScanTelemetry.Stage.OS);
             }
-            hostName=dnsResolver.resolveReverseDns(ip);
-            macAddress=macResolver.resolveMac(ip);
-            OSFingerprintService.Config config=new OSFingerprintService.Config();
-            config.verbose=true;
-            config.usePromiscuous=false;
-            OSFingerprintService service=new OSFingerprintService(config);
-            OSFingerprintResult result=service.fingerprint(ip);
-            os=result.getOsName();
         }
+        Map<Integer, ServiceInfo> services = Map.of();
+        ServiceDetector detector = engines.detector;
+        if (detector != null) {
+            telemetry.enter(ScanTelemetry.Stage.SERVICES);
+            long start = ScanMetrics.start();
+            try {
+                // Ports still unread after the token's deadline fall back to their port-number guess.
+                services = detector.await(ip, Math.min(detector.maxWaitMillis() + 500, token.remainingMillis()));
+            } finally {
+                ScanMetrics.record(ScanMetrics.Phase.SERVICES, start);
+                telemetry.exit(ScanTelemetry.Stage.SERVICES);
+            }
+        }
+        return new HostScanResults(ip, true, openPorts,macAddress,vendor,hostName,os,services,udpPorts);
+    }
 
-        return new HostScanResults(ip, isUP, openPorts,macAddress,hostName,os);
+    private static int[] toArray(List<Integer> ports) {
+        int[] array = new int[ports.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ports.get(i);
+        }
+        return array;
     }
 
 
@@ -74,42 +353,440 @@ public class NetworkScanner {
      * Scans a subnet using a thread pool for concurrency.
      */
     public List<HostScanResults> scanSubnetCIDRThreadPool(String cidr, List<Integer> ports, int threads,boolean osScan) {
+        Config config=new Config();
+        config.threads=threads;
+        config.osScan=osScan;
+        return scanSubnet(cidr, toArray(ports), config);
+    }
+
+    /**
+     * Scans a subnet with the given settings and waits for it to finish. When
+     * {@link Config#checkpointFile} is set, progress is written there periodically and the
+     * scan can be continued with {@link #resumeScan}.
+     */
+    public List<HostScanResults> scanSubnet(String cidr, int[] ports, Config config) {
+        return awaitQuietly(startScan(cidr, ports, config)).getResults();
+    }
+
+    /**
+     * Continues a scan from a checkpoint file, skipping addresses that were already completed
+     * and reusing the original scan settings.
+     */
+    public List<HostScanResults> resumeScan(Path checkpointFile) throws IOException {
+        return awaitQuietly(startResume(checkpointFile, 0)).getResults();
+    }
+
+    /**
+     * Starts a subnet scan in the background. The returned handle can cancel it; with
+     * {@link Config#deadlineMillis} set the scan stops by itself once the budget is spent.
+     */
+    public ScanHandle startScan(String cidr, int[] ports, Config config) {
+        ScanCheckpoint checkpoint=null;
+        if (config.checkpointFile != null) {
+            checkpoint=new ScanCheckpoint(cidr, ports, config);
+        }
+        return launch(cidr, ports, config, checkpoint);
+    }
+
+    public ScanHandle startResume(Path checkpointFile, long deadlineMillis) throws IOException {
+        ScanCheckpoint checkpoint=ScanCheckpoint.load(checkpointFile);
+        Config config=checkpoint.toConfig();
+        config.checkpointFile=checkpointFile;
+        if (deadlineMillis > 0) config.deadlineMillis=deadlineMillis;   // else the original budget again
+        return launch(checkpoint.getCidr(), checkpoint.getPorts(), config, checkpoint);
+    }
+
+    private ScanHandle launch(String cidr, int[] ports, Config config, ScanCheckpoint checkpoint) {
+        CancellationToken token=new CancellationToken(config.deadlineMillis);
+        CompletableFuture<ScanResult> future=new CompletableFuture<>();
+        ScanHandle handle=new ScanHandle(token, future);
+        Thread worker=new Thread(() -> {
+            try {
+                future.complete(runScan(cidr, ports, config, checkpoint, token));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, "smartnet-scan-" + cidr);
+        worker.setDaemon(true);
+        handle.attach(worker);
+        worker.start();
+        return handle;
+    }
+
+    private ScanResult runScan(String cidr, int[] ports, Config config, ScanCheckpoint checkpoint,
+                               CancellationToken token) {
         IPGenerator generator=new IPGenerator();
         List<String> ipAddresses = generator.generateIP(cidr);
-        threads=Math.min(threads, ipAddresses.size());
-        ExecutorService executor = Executors.newFixedThreadPool(threads);
-        List<Future<HostScanResults>> futures = new ArrayList<>();
-        String host_Ip= null;
+        Set<String> localAddresses = Set.of();
         try {
-            host_Ip = NetworkInterfaceManager.getDefaultInterfaceIp();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        ipAddresses.remove(host_Ip);
-//        for (String ip : ipAddresses) {
-//            futures.add(executor.submit(() -> scanHost(ip, ports)));
-//        }
-        for (String ip : ipAddresses) {
-            futures.add(executor.submit(() -> {
-                if (osScan) {
-                    return scanHost(ip, ports, true);
-                } else {
-                    return scanHost(ip, ports);
-                }
-            }));
+            localAddresses = NetworkInterfaceManager.getLocalAddresses();
+        } catch (Exception | LinkageError e) {
+            // No capture driver (e.g. headless server without libpcap): scan everything.
+        }
+
+        ScheduledExecutorService checkpointWriter=null;
+        if (checkpoint != null) {
+            checkpointWriter=Executors.newSingleThreadScheduledExecutor();
+            checkpointWriter.scheduleWithFixedDelay(() -> saveCheckpoint(checkpoint, config.checkpointFile),
+                    config.checkpointIntervalMillis, config.checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        // Index into the generated list is the unit of progress, so it stays stable across resumes.
+        HostScanResults[] slots = new HostScanResults[ipAddresses.size()];
+        boolean[] skip = new boolean[ipAddresses.size()];
+        for (int i = 0; i < ipAddresses.size(); i++) {
+            if (checkpoint != null && checkpoint.isCompleted(i)) {
+                HostScanResults restored = checkpoint.getResult(i);
+                slots[i] = restored != null ? restored
+                        : new HostScanResults(ipAddresses.get(i), false, new ArrayList<>(), "-", "N/A");
+                skip[i] = true;
+            } else if (localAddresses.contains(ipAddresses.get(i))) {
+                skip[i] = true;
+            }
+        }
+
+        long pending = 0;
+        for (boolean skipped : skip) {
+            if (!skipped) pending++;
+        }
+        telemetry(config).begin(pending, pending * ports.length);
+
+        try (ScanEngines engines = ScanEngines.open(config)) {
+            List<String> targets = new ArrayList<>();
+            for (int i = 0; i < skip.length; i++) {
+                if (!skip[i]) targets.add(ipAddresses.get(i));
+            }
+            engines.sweep(targets, config, token);
+            if (config.randomizeOrder) {
+                sweepTargets(ipAddresses, skip, ports, config, checkpoint, token, slots, engines);
+            } else {
+                scanHosts(ipAddresses, skip, ports, config, checkpoint, token, slots, engines);
+            }
         }
 
+        boolean cancelled = token.isCancelled();
+        if (checkpointWriter != null) {
+            checkpointWriter.shutdownNow();
+            saveCheckpoint(checkpoint, config.checkpointFile);
+        }
+        Thread.interrupted(); // clear a pending cancel interrupt before handing back to the caller
+
         List<HostScanResults> results = new ArrayList<>();
-        for (Future<HostScanResults> future : futures) {
+        for (HostScanResults slot : slots) {
+            if (slot != null) results.add(slot);
+        }
+        ScanResult.Status status = ScanResult.Status.COMPLETED;
+        if (cancelled) {
+            status = token.hasDeadline() && token.remainingMillis() == 0
+                    ? ScanResult.Status.DEADLINE_EXCEEDED
+                    : ScanResult.Status.CANCELLED;
+        }
+        return new ScanResult(results, status);
+    }
+
+    /**
+     * Scans hosts in address order as a pipeline of three stages: discovery, port probing and
+     * enrichment (DNS, MAC, OS). Each stage has its own pool and a bounded queue in front of
+     * it, so a hung DNS lookup only holds an enrichment thread while port probing carries on
+     * for other hosts, and a backed-up stage blocks the one feeding it.
+     */
+    private void scanHosts(List<String> ipAddresses, boolean[] skip, int[] ports, Config config,
+                           ScanCheckpoint checkpoint, CancellationToken token, HostScanResults[] slots,
+                           ScanEngines engines) {
+        int pending = 0;
+        for (boolean skipped : skip) {
+            if (!skipped) pending++;
+        }
+        if (pending == 0) return;
+
+        HostPipeline pipeline = new HostPipeline(pending, ports, config, checkpoint, token, slots, engines);
+        try {
+            for (int i = 0; i < ipAddresses.size() && !token.isCancelled(); i++) {
+                if (!skip[i]) pipeline.submit(i, ipAddresses.get(i));
+            }
+            pipeline.await();
+        } catch (InterruptedException e) {
+            token.cancel();
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    private static int stageThreads(int stageThreads, Config config, long work) {
+        int threads = stageThreads > 0 ? stageThreads : config.threads;
+        return (int) Math.max(1, Math.min(threads, work));
+    }
+
+    /**
+     * Per-scan state of the staged pipeline. Every submitted host counts down {@code remaining}
+     * exactly once: when its result is recorded, or when it is dropped because the scan was
+     * cancelled or a stage failed.
+     */
+    private final class HostPipeline {
+        private final int[] ports;
+        private final Config config;
+        private final ScanCheckpoint checkpoint;
+        private final CancellationToken token;
+        private final HostScanResults[] slots;
+        private final ScanEngines engines;
+        private final CountDownLatch remaining;
+        private final ThreadPoolExecutor discovery;
+        private final ThreadPoolExecutor probing;
+        private final ThreadPoolExecutor enrichment;
+
+        HostPipeline(int hosts, int[] ports, Config config, ScanCheckpoint checkpoint, CancellationToken token,
+                     HostScanResults[] slots, ScanEngines engines) {
+            this.ports = ports;
+            this.config = config;
+            this.checkpoint = checkpoint;
+            this.token = token;
+            this.slots = slots;
+            this.engines = engines;
+            this.remaining = new CountDownLatch(hosts);
+            this.discovery = StageExecutor.create("discovery",
+                    stageThreads(config.discoveryThreads, config, hosts), config.stageQueueCapacity);
+            this.probing = StageExecutor.create("ports",
+                    stageThreads(config.portThreads, config, hosts), config.stageQueueCapacity);
+            this.enrichment = StageExecutor.create("enrich",
+                    stageThreads(config.enrichThreads, config, hosts), config.stageQueueCapacity);
+            ScanMetrics.watch(discovery);
+            ScanMetrics.watch(probing);
+            ScanMetrics.watch(enrichment);
+        }
+
+        /** Blocks while the discovery queue is full. */
+        void submit(int index, String ip) {
+            handOff(discovery, () -> discover(index, ip));
+        }
+
+        /** Waits for every host, cancelling the scan if the deadline passes first. */
+        void await() throws InterruptedException {
+            if (token.isCancelled()) return;
+            if (!remaining.await(token.remainingMillis(), TimeUnit.MILLISECONDS)) {
+                token.cancel();
+            }
+        }
+
+        void shutdown() {
+            for (ThreadPoolExecutor stage : List.of(discovery, probing, enrichment)) {
+                stage.shutdownNow();
+                ScanMetrics.unwatch(stage);
+            }
+            try {
+                // Cancelled probes have had their sockets closed; give them a moment to record results.
+                for (ThreadPoolExecutor stage : List.of(discovery, probing, enrichment)) {
+                    stage.awaitTermination(1, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void discover(int index, String ip) {
+            if (token.isCancelled()) {
+                remaining.countDown();
+                return;
+            }
+            long start = ScanMetrics.start();
+            if (!NetworkScanner.this.discover(ip, config, token, engines)) {
+                complete(index, downHost(ip, config), start);
+                return;
+            }
+            // Queue the MAC now: ARP for every live host goes out in batches while ports are probed.
+            ArpResolver.shared().resolve(ip);
+            handOff(probing, () -> probe(index, ip, start));
+        }
+
+        private void probe(int index, String ip, long start) {
+            if (token.isCancelled()) {
+                remaining.countDown();
+                return;
+            }
+            List<Integer> openPorts = probePorts(ip, ports, config, token, engines);
+            Map<Integer, UdpPortState> udpPorts = probeUdp(ip, config, token, engines);
+            handOff(enrichment, () -> enrich(index, ip, openPorts, udpPorts, start));
+        }
+
+        private void enrich(int index, String ip, List<Integer> openPorts, Map<Integer, UdpPortState> udpPorts,
+                            long start) {
+            if (token.isCancelled()) {
+                remaining.countDown();
+                return;
+            }
+            HostScanResults result;
             try {
-                results.add(future.get());
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+                result = enrichHost(ip, openPorts, udpPorts, config, token, engines);
+            } catch (Exception e) {
+                if (!token.isCancelled()) e.printStackTrace();
+                remaining.countDown();
+                return;
             }
+            complete(index, result, start);
         }
 
-        executor.shutdown();
-        return results;
+        private void complete(int index, HostScanResults result, long start) {
+            ScanMetrics.record(ScanMetrics.Phase.HOST, start);
+            slots[index] = result;
+            try {
+                finishHost(index, result, config, checkpoint, token);
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // a failing result callback must not stall the scan
+            } finally {
+                remaining.countDown();
+            }
+        }
+
+        private void handOff(ThreadPoolExecutor stage, Runnable task) {
+            try {
+                stage.execute(() -> {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        if (!token.isCancelled()) e.printStackTrace();
+                        remaining.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                remaining.countDown(); // stage shut down by a cancel
+            }
+        }
+    }
+
+    /**
+     * Walks the (host, port) space in the seeded order of a {@link TargetPermutation}, so
+     * consecutive probes land on different hosts. Workers pull the next index from a shared
+     * cursor, which keeps scheduling memory constant however large the space is. Once a host's
+     * last port is probed it is handed to the enrichment stage (DNS, MAC, OS), whose bounded
+     * queue throttles the probing workers if lookups fall behind.
+     */
+    private void sweepTargets(List<String> ipAddresses, boolean[] skip, int[] ports, Config config,
+                              ScanCheckpoint checkpoint, CancellationToken token, HostScanResults[] slots,
+                              ScanEngines engines) {
+        if (ipAddresses.isEmpty() || ports.length == 0) return;
+        TargetPermutation permutation = new TargetPermutation(ipAddresses.size(), ports.length, config.seed);
+        long from = Math.max(0, config.shardStart);
+        long to = config.shardEnd < 0 ? permutation.size() : Math.min(config.shardEnd, permutation.size());
+        if (from >= to) return;
+
+        // Probes left per host. The whole space gives every host all its ports; a shard needs a counting pass.
+        AtomicIntegerArray remaining = new AtomicIntegerArray(ipAddresses.size());
+        if (from == 0 && to == permutation.size()) {
+            for (int h = 0; h < ipAddresses.size(); h++) remaining.set(h, ports.length);
+        } else {
+            for (long i = from; i < to; i++) remaining.incrementAndGet(permutation.hostOf(permutation.permute(i)));
+        }
+        Map<Integer, List<Integer>> openByHost = new ConcurrentHashMap<>();
+        AtomicLong cursor = new AtomicLong(from);
+        ThreadPoolExecutor enrichment = StageExecutor.create("enrich",
+                stageThreads(config.enrichThreads, config, ipAddresses.size()), config.stageQueueCapacity);
+        ScanMetrics.watch(enrichment);
+
+        Runnable worker = () -> {
+            long i;
+            while (!token.isCancelled() && (i = cursor.getAndIncrement()) < to) {
+                long value = permutation.permute(i);
+                int h = permutation.hostOf(value);
+                if (skip[h]) continue;
+                int port = ports[permutation.portOf(value)];
+                String ip = ipAddresses.get(h);
+
+                List<Integer> open = openByHost.get(h);
+                boolean saturated = config.maxOpenPorts > 0 && open != null && open.size() >= config.maxOpenPorts;
+                if (!saturated && probePort(ip, port, config, token, engines.detector)) {
+                    openByHost.computeIfAbsent(h, k -> Collections.synchronizedList(new ArrayList<>())).add(port);
+                }
+                if (remaining.decrementAndGet(h) == 0 && !token.isCancelled()) {
+                    List<Integer> found = new ArrayList<>(openByHost.getOrDefault(h, List.of()));
+                    Collections.sort(found);
+                    enrichment.execute(() -> {
+                        try {
+                            HostScanResults result = finishSweptHost(ip, found, config, token, engines);
+                            slots[h] = result;
+                            finishHost(h, result, config, checkpoint, token);
+                        } catch (Exception e) {
+                            if (!token.isCancelled()) e.printStackTrace();
+                        }
+                    });
+                }
+            }
+        };
+
+        int threads = stageThreads(config.portThreads, config, to - from);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads);
+        ScanMetrics.watch(executor);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(worker));
+        }
+        for (Future<?> future : workers) {
+            if (token.isCancelled()) break;
+            try {
+                future.get(token.remainingMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | InterruptedException e) {
+                token.cancel();
+            } catch (ExecutionException e) {
+                if (!token.isCancelled()) e.printStackTrace();
+            }
+        }
+        executor.shutdownNow();
+        ScanMetrics.unwatch(executor);
+
+        enrichment.shutdown(); // let queued hosts finish
+        try {
+            if (!token.isCancelled()
+                    && !enrichment.awaitTermination(token.remainingMillis(), TimeUnit.MILLISECONDS)) {
+                token.cancel();
+            }
+        } catch (InterruptedException e) {
+            token.cancel();
+        }
+        enrichment.shutdownNow();
+        ScanMetrics.unwatch(enrichment);
+    }
+
+    /**
+     * An open TCP port or an answer on UDP proves the host is up; otherwise fall back to the
+     * reachability check. UDP is not part of the permuted space, so it is probed here.
+     */
+    private HostScanResults finishSweptHost(String ip, List<Integer> openPorts, Config config,
+                                            CancellationToken token, ScanEngines engines) throws Exception {
+        Map<Integer, UdpPortState> udpPorts = probeUdp(ip, config, token, engines);
+        boolean isUP = !openPorts.isEmpty() || udpPorts.containsValue(UdpPortState.OPEN)
+                || discover(ip, config, token, engines);
+        if (!isUP) {
+            return downHost(ip, config);
+        }
+        return enrichHost(ip, openPorts, udpPorts, config, token, engines);
+    }
+
+    private void finishHost(int index, HostScanResults result, Config config, ScanCheckpoint checkpoint,
+                            CancellationToken token) {
+        // A host cut short by cancellation is not finished; leave it for the resume.
+        if (checkpoint != null && !token.isCancelled()) {
+            checkpoint.markCompleted(index, result);
+        }
+        telemetry(config).hostCompleted(result.isReachable());
+        if (config.onResult != null) {
+            config.onResult.accept(result);
+        }
+    }
+
+    private ScanResult awaitQuietly(ScanHandle handle) {
+        try {
+            return handle.await();
+        } catch (InterruptedException e) {
+            handle.cancel();
+            Thread.currentThread().interrupt();
+            return handle.asFuture().join();
+        }
+    }
+
+    private void saveCheckpoint(ScanCheckpoint checkpoint, Path file) {
+        try {
+            checkpoint.save(file);
+        } catch (IOException e) {
+            System.err.println("Failed to write scan checkpoint " + file + ": " + e.getMessage());
+        }
     }
 
     // Uncomment for testing
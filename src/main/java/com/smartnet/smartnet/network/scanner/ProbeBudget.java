@@ -0,0 +1,47 @@
+package com.smartnet.smartnet.network.scanner;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cap on probes in flight shared by several scans, so jobs that run at the same time cannot
+ * together overload the network or this machine. Each scan still has its own thread pools;
+ * a probe holds a permit from just before it is sent until its outcome is known.
+ */
+public class ProbeBudget {
+
+    private static final long POLL_MILLIS = 50;
+
+    private final int permits;
+    private final Semaphore semaphore;
+
+    public ProbeBudget(int permits) {
+        if (permits < 1) throw new IllegalArgumentException("Probe budget must be at least 1, got " + permits);
+        this.permits = permits;
+        this.semaphore = new Semaphore(permits, true); // fair: a big job cannot starve a small one
+    }
+
+    /**
+     * Waits for a permit. Returns false without one if the scan is cancelled (or the thread
+     * interrupted) first.
+     */
+    public boolean acquire(CancellationToken token) {
+        try {
+            while (!token.isCancelled()) {
+                if (semaphore.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    public void release() {
+        semaphore.release();
+    }
+
+    public int getPermits() { return permits; }
+
+    /** Probes in flight right now, across every scan sharing the budget. */
+    public int getInUse() { return permits - semaphore.availablePermits(); }
+}
@@ -0,0 +1,70 @@
+package com.smartnet.smartnet.network.scanner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handle to a scan running in the background, returned by {@link NetworkScanner#startScan}.
+ */
+public class ScanHandle {
+
+    private final CancellationToken token;
+    private final CompletableFuture<ScanResult> result;
+    private volatile Thread worker;
+
+    ScanHandle(CancellationToken token, CompletableFuture<ScanResult> result) {
+        this.token = token;
+        this.result = result;
+    }
+
+    void attach(Thread worker) {
+        this.worker = worker;
+    }
+
+    /**
+     * Stops the scan: no new hosts are submitted, in-flight probes are interrupted and
+     * their sockets and capture handles closed. {@link #await()} then returns the partial results.
+     */
+    public void cancel() {
+        token.cancel();
+        Thread t = worker;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    public boolean isCancelled() {
+        return token.isCancelled();
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    public CancellationToken getToken() {
+        return token;
+    }
+
+    /** Blocks until the scan finishes, is cancelled or reaches its deadline. */
+    public ScanResult await() throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Scan failed", e.getCause());
+        }
+    }
+
+    public ScanResult await(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        try {
+            return result.get(timeout, unit);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Scan failed", e.getCause());
+        }
+    }
+
+    public CompletableFuture<ScanResult> asFuture() {
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package com.smartnet.smartnet.network.scanner;
+
+import com.smartnet.smartnet.network.models.HostScanResults;
+
+import java.util.List;
+
+/**
+ * Outcome of a subnet scan. Scans that were cancelled or ran into their deadline
+ * still return the hosts finished so far, flagged as incomplete.
+ */
+public class ScanResult {
+
+    public enum Status { COMPLETED, CANCELLED, DEADLINE_EXCEEDED }
+
+    private final List<HostScanResults> results;
+    private final Status status;
+
+    public ScanResult(List<HostScanResults> results, Status status) {
+        this.results = results;
+        this.status = status;
+    }
+
+    public List<HostScanResults> getResults() { return results; }
+    public Status getStatus() { return status; }
+    public boolean isComplete() { return status == Status.COMPLETED; }
+}
@@ -0,0 +1,116 @@
+package com.smartnet.smartnet.network.scanner;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live progress counters for a running scan. Workers update striped {@link LongAdder}s,
+ * so recording costs no contention; readers take a {@link Snapshot} a few times a second.
+ */
+public class ScanTelemetry {
+
+    public enum Stage { DISCOVERY, PORTS, UDP, DNS, MAC, OS, SERVICES }
+
+    private final LongAdder hostsCompleted = new LongAdder();
+    private final LongAdder hostsUp = new LongAdder();
+    private final LongAdder probesCompleted = new LongAdder();
+    private final LongAdder probesOpen = new LongAdder();
+    private final LongAdder probeTimeouts = new LongAdder();
+    private final LongAdder[] inFlight = new LongAdder[Stage.values().length];
+
+    private volatile long hostsTotal;
+    private volatile long probesPlanned;
+    private volatile long startNanos = System.nanoTime();
+
+    public ScanTelemetry() {
+        for (int i = 0; i < inFlight.length; i++) {
+            inFlight[i] = new LongAdder();
+        }
+    }
+
+    /** Called once the target list is known. */
+    public void begin(long hosts, long probes) {
+        this.hostsTotal = hosts;
+        this.probesPlanned = probes;
+        this.startNanos = System.nanoTime();
+    }
+
+    public void enter(Stage stage) { inFlight[stage.ordinal()].increment(); }
+    public void exit(Stage stage) { inFlight[stage.ordinal()].decrement(); }
+
+    public void probeCompleted(boolean open, boolean timedOut) {
+        probesCompleted.increment();
+        if (open) probesOpen.increment();
+        if (timedOut) probeTimeouts.increment();
+    }
+
+    public void hostCompleted(boolean up) {
+        hostsCompleted.increment();
+        if (up) hostsUp.increment();
+    }
+
+    public Snapshot snapshot() {
+        long[] stages = new long[inFlight.length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = inFlight[i].sum();
+        }
+        return new Snapshot(System.nanoTime() - startNanos, hostsTotal, hostsCompleted.sum(), hostsUp.sum(),
+                probesPlanned, probesCompleted.sum(), probesOpen.sum(), probeTimeouts.sum(), stages);
+    }
+
+    /** Point-in-time copy of the counters with derived rates. */
+    public static class Snapshot {
+        private final long elapsedNanos;
+        private final long hostsTotal;
+        private final long hostsCompleted;
+        private final long hostsUp;
+        private final long probesPlanned;
+        private final long probesCompleted;
+        private final long probesOpen;
+        private final long probeTimeouts;
+        private final long[] inFlight;
+
+        Snapshot(long elapsedNanos, long hostsTotal, long hostsCompleted, long hostsUp, long probesPlanned,
+                 long probesCompleted, long probesOpen, long probeTimeouts, long[] inFlight) {
+            this.elapsedNanos = elapsedNanos;
+            this.hostsTotal = hostsTotal;
+            this.hostsCompleted = hostsCompleted;
+            this.hostsUp = hostsUp;
+            this.probesPlanned = probesPlanned;
+            this.probesCompleted = probesCompleted;
+            this.probesOpen = probesOpen;
+            this.probeTimeouts = probeTimeouts;
+            this.inFlight = inFlight;
+        }
+
+        public long getHostsTotal() { return hostsTotal; }
+        public long getHostsCompleted() { return hostsCompleted; }
+        public long getHostsUp() { return hostsUp; }
+        public long getProbesPlanned() { return probesPlanned; }
+        public long getProbesCompleted() { return probesCompleted; }
+        public long getProbesOpen() { return probesOpen; }
+        public long getProbeTimeouts() { return probeTimeouts; }
+        public long getInFlight(Stage stage) { return inFlight[stage.ordinal()]; }
+        public double getElapsedSeconds() { return elapsedNanos / 1e9; }
+
+        public double getProbesPerSecond() {
+            double s = getElapsedSeconds();
+            return s > 0 ? probesCompleted / s : 0;
+        }
+
+        public double getHostsPerSecond() {
+            double s = getElapsedSeconds();
+            return s > 0 ? hostsCompleted / s : 0;
+        }
+
+        public double getTimeoutRatio() {
+            return probesCompleted > 0 ? (double) probeTimeouts / probesCompleted : 0;
+        }
+
+        /** Seconds left at the current host rate, or -1 until there is a rate to go on. */
+        public long getEtaSeconds() {
+            double rate = getHostsPerSecond();
+            if (rate <= 0 || hostsTotal <= 0) return -1;
+            return (long) Math.ceil(Math.max(0, hostsTotal - hostsCompleted) / rate);
+        }
+    }
+}
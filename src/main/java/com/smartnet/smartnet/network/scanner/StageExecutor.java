@@ -0,0 +1,39 @@
+package com.smartnet.smartnet.network.scanner;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pools for the stages of a scan pipeline. Each stage has a fixed number of threads and a
+ * bounded hand-off queue; {@code execute} blocks the submitting thread while the queue is
+ * full, so a slow stage pushes back on the one feeding it instead of buffering every host.
+ */
+final class StageExecutor {
+
+    private StageExecutor() {}
+
+    static ThreadPoolExecutor create(String name, int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "smartnet-" + name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), factory, (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException(name + " stage is shut down");
+                    }
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(name + " stage hand-off interrupted", e);
+                    }
+                });
+    }
+}
@@ -0,0 +1,18 @@
+package com.smartnet.smartnet.network.scheduler;
+
+import java.time.Instant;
+
+/**
+ * One finished run of a {@link ScanJob}. {@code status} is the scan's
+ * {@link com.smartnet.smartnet.network.scanner.ScanResult.Status} name, or FAILED with
+ * {@code error} set when the scan threw.
+ */
+public record JobRun(String job, Instant started, long durationMillis, String status,
+                     int hostsScanned, int hostsUp, String error) {
+
+    @Override
+    public String toString() {
+        return String.format("[%s] %s %s: %d/%d hosts up in %.1fs%s", job, started, status, hostsUp, hostsScanned,
+                durationMillis / 1000.0, error != null ? " (" + error + ")" : "");
+    }
+}
@@ -0,0 +1,91 @@
+package com.smartnet.smartnet.network.scheduler;
+
+import com.smartnet.smartnet.network.scanner.NetworkScanner;
+import com.smartnet.smartnet.network.scanner.ScanHandle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A subnet scan run by the {@link ScanScheduler}: once (ad hoc) or every {@code intervalMillis}.
+ * Higher priorities leave the queue first. Each run gets a fresh {@link NetworkScanner.Config}
+ * from the supplier, so listeners and telemetry are not shared between runs.
+ */
+public class ScanJob {
+
+    public enum State { SCHEDULED, QUEUED, RUNNING, DONE, CANCELLED }
+
+    private final String name;
+    private final String cidr;
+    private final int[] ports;
+    private final Supplier<NetworkScanner.Config> config;
+    private final int priority;
+    private final long intervalMillis;     // 0 = run once
+
+    // Guarded by the scheduler.
+    private State state = State.SCHEDULED;
+    private long nextRunMillis;
+    private int runs;
+    private int skippedRuns;                // recurrences that came due while the previous run was still going
+    private ScanHandle running;
+    private final Deque<JobRun> history = new ArrayDeque<>();
+
+    private ScanJob(String name, String cidr, int[] ports, Supplier<NetworkScanner.Config> config,
+                    int priority, long intervalMillis) {
+        this.name = name;
+        this.cidr = cidr;
+        this.ports = ports.clone();
+        this.config = config;
+        this.priority = priority;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public static ScanJob recurring(String name, String cidr, int[] ports, Supplier<NetworkScanner.Config> config,
+                                    int priority, long intervalMillis) {
+        if (intervalMillis <= 0) throw new IllegalArgumentException("Interval must be positive: " + intervalMillis);
+        return new ScanJob(name, cidr, ports, config, priority, intervalMillis);
+    }
+
+    public static ScanJob once(String name, String cidr, int[] ports, Supplier<NetworkScanner.Config> config,
+                               int priority) {
+        return new ScanJob(name, cidr, ports, config, priority, 0);
+    }
+
+    public String getName() { return name; }
+    public String getCidr() { return cidr; }
+    public int[] getPorts() { return ports.clone(); }
+    public int getPriority() { return priority; }
+    public long getIntervalMillis() { return intervalMillis; }
+    public boolean isRecurring() { return intervalMillis > 0; }
+
+    NetworkScanner.Config newConfig() { return config.get(); }
+
+    public synchronized State getState() { return state; }
+    public synchronized long getNextRunMillis() { return nextRunMillis; }
+    public synchronized int getRuns() { return runs; }
+    public synchronized int getSkippedRuns() { return skippedRuns; }
+
+    /** Finished runs, oldest first. */
+    public synchronized List<JobRun> getHistory() { return new ArrayList<>(history); }
+
+    synchronized void setState(State state) { this.state = state; }
+    synchronized void setNextRunMillis(long nextRunMillis) { this.nextRunMillis = nextRunMillis; }
+    synchronized void skipped() { skippedRuns++; }
+    synchronized ScanHandle getRunning() { return running; }
+
+    synchronized void started(ScanHandle handle) {
+        running = handle;
+        state = State.RUNNING;
+    }
+
+    synchronized void finished(JobRun run, int historySize) {
+        running = null;
+        runs++;
+        history.addLast(run);
+        while (history.size() > historySize) history.removeFirst();
+        if (state != State.CANCELLED) state = isRecurring() ? State.SCHEDULED : State.DONE;
+    }
+}
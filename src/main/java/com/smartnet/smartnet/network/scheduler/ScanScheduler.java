@@ -0,0 +1,219 @@
+package com.smartnet.smartnet.network.scheduler;
+
+import com.smartnet.smartnet.network.models.HostScanResults;
+import com.smartnet.smartnet.network.scanner.NetworkScanner;
+import com.smartnet.smartnet.network.scanner.ProbeBudget;
+import com.smartnet.smartnet.network.scanner.ScanHandle;
+import com.smartnet.smartnet.network.scanner.ScanResult;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs recurring and ad-hoc subnet scans from one priority queue. A timer thread queues
+ * recurring jobs as they come due; a fixed number of dispatcher threads take the most urgent
+ * job (highest priority, then longest waiting) and run it. Every scan draws its probes from
+ * one shared {@link ProbeBudget}, so however many jobs overlap, the network sees at most
+ * {@link Config#probeBudget} probes in flight.
+ * <p>
+ * A recurring job is never queued twice: if it comes due while its previous run is still
+ * queued or running, the recurrence is skipped and counted.
+ */
+public class ScanScheduler implements AutoCloseable {
+
+    public static class Config {
+        public int maxConcurrentJobs = 2;
+        public int probeBudget = 256;               // probes in flight across all running jobs
+        public int historySize = 50;                // finished runs kept per job
+        public Consumer<JobRun> onRunFinished = null; // called from dispatcher threads
+    }
+
+    private record Ticket(ScanJob job, long sequence) {}
+
+    private static final Comparator<Ticket> URGENCY = Comparator
+            .comparingInt((Ticket t) -> -t.job().getPriority())
+            .thenComparingLong(Ticket::sequence);
+
+    private final Config config;
+    private final NetworkScanner scanner;
+    private final ProbeBudget budget;
+    private final PriorityBlockingQueue<Ticket> queue = new PriorityBlockingQueue<>(16, URGENCY);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, ScanJob> jobs = new LinkedHashMap<>();
+    private final Map<String, ScheduledFuture<?>> timers = new LinkedHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final List<Thread> dispatchers = new ArrayList<>();
+    private volatile boolean closed;
+
+    public ScanScheduler(Config config) {
+        this(config, new NetworkScanner());
+    }
+
+    public ScanScheduler(Config config, NetworkScanner scanner) {
+        this.config = config;
+        this.scanner = scanner;
+        this.budget = new ProbeBudget(config.probeBudget);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "smartnet-scheduler-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < Math.max(1, config.maxConcurrentJobs); i++) {
+            Thread t = new Thread(this::dispatch, "smartnet-scheduler-" + (i + 1));
+            t.setDaemon(true);
+            dispatchers.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * Adds a job. A recurring job runs right away and then every interval; an ad-hoc job runs
+     * once. Job names are unique among the jobs the scheduler knows.
+     */
+    public synchronized void add(ScanJob job) {
+        if (closed) throw new IllegalStateException("Scheduler is shut down");
+        ScanJob existing = jobs.get(job.getName());
+        if (existing != null && existing.getState() != ScanJob.State.DONE
+                && existing.getState() != ScanJob.State.CANCELLED) {
+            throw new IllegalArgumentException("A job named " + job.getName() + " is already scheduled");
+        }
+        jobs.put(job.getName(), job);
+        if (job.isRecurring()) {
+            timers.put(job.getName(), timer.scheduleAtFixedRate(() -> due(job),
+                    0, job.getIntervalMillis(), TimeUnit.MILLISECONDS));
+        } else {
+            due(job);
+        }
+    }
+
+    /** Stops a job: drops it from the queue, stops its recurrence and cancels a running scan. */
+    public synchronized boolean cancel(String name) {
+        ScanJob job = jobs.get(name);
+        if (job == null) return false;
+        ScheduledFuture<?> recurrence = timers.remove(name);
+        if (recurrence != null) recurrence.cancel(false);
+        queue.removeIf(t -> t.job() == job);
+        job.setState(ScanJob.State.CANCELLED);
+        ScanHandle running = job.getRunning();
+        if (running != null) running.cancel();
+        return true;
+    }
+
+    public synchronized List<ScanJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    public synchronized ScanJob getJob(String name) {
+        return jobs.get(name);
+    }
+
+    /** Jobs waiting for a dispatcher. */
+    public int getQueueLength() {
+        return queue.size();
+    }
+
+    public ProbeBudget getProbeBudget() {
+        return budget;
+    }
+
+    /** Queues the job unless a previous run is still queued or running. */
+    private void due(ScanJob job) {
+        synchronized (job) {
+            ScanJob.State state = job.getState();
+            if (state == ScanJob.State.CANCELLED || closed) return;
+            if (state == ScanJob.State.QUEUED || state == ScanJob.State.RUNNING) {
+                job.skipped();
+                return;
+            }
+            job.setState(ScanJob.State.QUEUED);
+            job.setNextRunMillis(job.isRecurring() ? System.currentTimeMillis() + job.getIntervalMillis() : 0);
+        }
+        queue.add(new Ticket(job, sequence.incrementAndGet()));
+    }
+
+    private void dispatch() {
+        while (!closed) {
+            Ticket ticket;
+            try {
+                ticket = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            run(ticket.job());
+        }
+    }
+
+    private void run(ScanJob job) {
+        NetworkScanner.Config scanConfig = job.newConfig();
+        scanConfig.probeBudget = budget;
+        Instant started = Instant.now();
+        long start = System.nanoTime();
+        JobRun run;
+        synchronized (job) {
+            if (job.getState() != ScanJob.State.QUEUED) return;  // cancelled after it was taken
+            job.started(scanner.startScan(job.getCidr(), job.getPorts(), scanConfig));
+        }
+        try {
+            ScanResult result = job.getRunning().await();
+            int up = 0;
+            for (HostScanResults host : result.getResults()) {
+                if (host.isReachable()) up++;
+            }
+            run = new JobRun(job.getName(), started, elapsedMillis(start), result.getStatus().name(),
+                    result.getResults().size(), up, null);
+        } catch (InterruptedException e) {
+            job.getRunning().cancel();
+            run = new JobRun(job.getName(), started, elapsedMillis(start), ScanResult.Status.CANCELLED.name(),
+                    0, 0, null);
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.err.println("Scan job " + job.getName() + " failed: " + cause);
+            run = new JobRun(job.getName(), started, elapsedMillis(start), "FAILED", 0, 0, String.valueOf(cause));
+        }
+        job.finished(run, config.historySize);
+        if (config.onRunFinished != null) {
+            try {
+                config.onRunFinished.accept(run);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    /** Stops the timer and dispatchers and cancels running scans; waits briefly for them to wind down. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            for (String name : new ArrayList<>(jobs.keySet())) {
+                cancel(name);
+            }
+        }
+        timer.shutdownNow();
+        for (Thread dispatcher : dispatchers) dispatcher.interrupt();
+        for (Thread dispatcher : dispatchers) {
+            try {
+                dispatcher.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.smartnet.smartnet.network.services;
+
+import com.smartnet.smartnet.network.models.ServiceInfo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Identifies services on ports the scanner already has connected. Channels are handed over
+ * as soon as a port is found open and multiplexed on one selector thread, so thousands of
+ * ports are read in a single pass. Each connection first waits for a server-first banner
+ * (SSH, SMTP, FTP...); if none arrives, a minimal probe is sent (HTTP HEAD, Redis PING) and
+ * the reply is read. Reads stop at {@link Config#maxBytes} or when the time budget runs out,
+ * and the data is matched against {@link ServiceSignatures}.
+ */
+public class ServiceDetector implements Closeable {
+
+    public static class Config {
+        public int bannerWaitMillis = 800;     // silence before sending a probe
+        public int probeWaitMillis = 1200;     // budget for the reply to the probe
+        public int maxBytes = 2048;            // per-connection read budget
+    }
+
+    private final Config config;
+    private final Selector selector;
+    private final Thread loop;
+    private final Queue<Connection> incoming = new ConcurrentLinkedQueue<>();
+    private final Map<String, Map<Integer, CompletableFuture<ServiceInfo>>> byHost = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public ServiceDetector(Config config) throws IOException {
+        this.config = config;
+        this.selector = Selector.open();
+        this.loop = new Thread(this::run, "smartnet-service-detector");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /** Takes ownership of a connected channel; it is closed once the service is identified. */
+    public void submit(String ip, int port, SocketChannel channel) {
+        Connection c = new Connection(port, channel);
+        byHost.computeIfAbsent(ip, k -> new ConcurrentHashMap<>()).put(port, c.result);
+        if (closed) {
+            c.finish(ServiceSignatures.guess(port));
+            return;
+        }
+        incoming.add(c);
+        selector.wakeup();
+    }
+
+    /**
+     * Waits for every port submitted for the host and returns the services by port. Ports still
+     * pending after the wait keep their port-number guess.
+     */
+    public Map<Integer, ServiceInfo> await(String ip, long timeoutMillis) throws InterruptedException {
+        Map<Integer, CompletableFuture<ServiceInfo>> pending = byHost.remove(ip);
+        Map<Integer, ServiceInfo> services = new TreeMap<>();
+        if (pending == null) return services;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Map.Entry<Integer, CompletableFuture<ServiceInfo>> e : pending.entrySet()) {
+            long left = Math.max(0, deadline - System.nanoTime());
+            ServiceInfo info;
+            try {
+                info = e.getValue().get(left, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException ex) {
+                info = ServiceSignatures.guess(e.getKey());
+            }
+            services.put(e.getKey(), info);
+        }
+        return services;
+    }
+
+    /** Upper bound on how long one connection can take. */
+    public long maxWaitMillis() {
+        return config.bannerWaitMillis + config.probeWaitMillis;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                long now = System.nanoTime();
+                long nextDeadline = now + TimeUnit.MILLISECONDS.toNanos(100);
+                for (SelectionKey key : selector.keys()) {
+                    Connection c = (Connection) key.attachment();
+                    if (now - c.deadline >= 0) {
+                        expire(c);
+                    } else if (c.deadline - nextDeadline < 0) {
+                        nextDeadline = c.deadline;
+                    }
+                }
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextDeadline - System.nanoTime())));
+                register();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        read((Connection) key.attachment());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                Connection c = (Connection) key.attachment();
+                c.finish(c.bestEffort());
+            }
+            Connection c;
+            while ((c = incoming.poll()) != null) {
+                c.finish(ServiceSignatures.guess(c.port));
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void register() {
+        Connection c;
+        while ((c = incoming.poll()) != null) {
+            try {
+                c.channel.configureBlocking(false);
+                c.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.bannerWaitMillis);
+                c.key = c.channel.register(selector, SelectionKey.OP_READ, c);
+            } catch (IOException e) {
+                c.finish(ServiceSignatures.guess(c.port));
+            }
+        }
+    }
+
+    private void read(Connection c) {
+        int n;
+        try {
+            n = c.channel.read(c.buffer);
+        } catch (IOException e) {
+            n = -1;
+        }
+        if (n < 0 || !c.buffer.hasRemaining()) {
+            c.finish(c.bestEffort());
+            return;
+        }
+        if (ServiceSignatures.isComplete(c.buffer.array(), c.buffer.position())) {
+            ServiceInfo info = ServiceSignatures.match(c.port, c.buffer.array(), c.buffer.position());
+            if (info != null) c.finish(info);
+        }
+    }
+
+    /** Banner wait over: probe a silent server once, otherwise settle with what was read. */
+    private void expire(Connection c) {
+        if (!c.probed && c.buffer.position() == 0) {
+            c.probed = true;
+            try {
+                c.channel.write(ByteBuffer.wrap(ServiceSignatures.probeFor(c.port)));
+                c.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.probeWaitMillis);
+                return;
+            } catch (IOException e) {
+                // fall through and settle
+            }
+        }
+        c.finish(c.bestEffort());
+    }
+
+    private final class Connection {
+        final int port;
+        final SocketChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocate(config.maxBytes);
+        final CompletableFuture<ServiceInfo> result = new CompletableFuture<>();
+        SelectionKey key;
+        long deadline;
+        boolean probed;
+
+        Connection(int port, SocketChannel channel) {
+            this.port = port;
+            this.channel = channel;
+        }
+
+        ServiceInfo bestEffort() {
+            ServiceInfo info = ServiceSignatures.match(port, buffer.array(), buffer.position());
+            return info != null ? info : ServiceSignatures.guess(port);
+        }
+
+        void finish(ServiceInfo info) {
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            result.complete(info);
+        }
+    }
+}
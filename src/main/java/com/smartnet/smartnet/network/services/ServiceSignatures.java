@@ -0,0 +1,115 @@
+package com.smartnet.smartnet.network.services;
+
+import com.smartnet.smartnet.network.models.ServiceInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Response signatures and client-first probes for service detection. Patterns are compiled
+ * once and tried in table order, so more specific entries (SMTP) come before looser ones that
+ * share a prefix (FTP's "220"). Responses are decoded as ISO-8859-1, which maps every byte
+ * to one char and lets binary handshakes (MySQL, telnet) be matched with regexes too.
+ */
+final class ServiceSignatures {
+
+    private static final class Signature {
+        final String service;
+        final Pattern pattern;
+        final int versionGroup;            // 0 = no version in the match itself
+        final Pattern versionPattern;      // looked up separately, e.g. an HTTP Server header
+
+        Signature(String service, String regex, int versionGroup, String versionRegex) {
+            this.service = service;
+            this.pattern = Pattern.compile(regex);
+            this.versionGroup = versionGroup;
+            this.versionPattern = versionRegex != null ? Pattern.compile(versionRegex) : null;
+        }
+    }
+
+    private static final List<Signature> SIGNATURES = List.of(
+            new Signature("ssh", "^SSH-[\\d.]+-([^\\s\\r\\n]+)", 1, null),
+            new Signature("smtp", "^220[ -][^\\r\\n]*\\bE?SMTP\\b ?([^\\r\\n]*)", 1, null),
+            new Signature("ftp", "^220[ -][^\\r\\n]*?((?:vsFTPd|ProFTPD|Pure-FTPd|FileZilla Server)[ \\w.]*)", 1, null),
+            new Signature("ftp", "^220[ -][^\\r\\n]*\\bFTP\\b", 0, null),
+            new Signature("pop3", "^\\+OK ([^\\r\\n]*)", 1, null),
+            new Signature("imap", "^\\* OK ([^\\r\\n]*)", 1, null),
+            new Signature("http", "^HTTP/\\d(?:\\.\\d)? \\d{3}", 0, "(?mi)^Server:[ \\t]*([^\\r\\n]+)"),
+            new Signature("redis", "^\\+PONG|^-NOAUTH|^-DENIED", 0, null),
+            new Signature("vnc", "^RFB (\\d{3}\\.\\d{3})", 1, null),
+            new Signature("mysql", "(?s)^.{4}\\n(\\d[\\w.\\-]*)\\x00", 1, null),
+            new Signature("telnet", "^\\xff[\\xfb-\\xfe]", 0, null),
+            new Signature("ftp", "^220[ -]", 0, null)
+    );
+
+    private static final byte[] HTTP_PROBE = "HEAD / HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REDIS_PROBE = "PING\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /** Ports with a specific client-first probe; everything else that stays silent gets HTTP. */
+    private static final Map<Integer, byte[]> PROBES = Map.of(6379, REDIS_PROBE);
+
+    /** Fallback names when nothing matched, as in nmap-services. */
+    private static final Map<Integer, String> WELL_KNOWN = Map.ofEntries(
+            Map.entry(21, "ftp"), Map.entry(22, "ssh"), Map.entry(23, "telnet"), Map.entry(25, "smtp"),
+            Map.entry(53, "domain"), Map.entry(80, "http"), Map.entry(110, "pop3"), Map.entry(135, "msrpc"),
+            Map.entry(139, "netbios-ssn"), Map.entry(143, "imap"), Map.entry(443, "https"),
+            Map.entry(445, "microsoft-ds"), Map.entry(587, "submission"), Map.entry(993, "imaps"),
+            Map.entry(995, "pop3s"), Map.entry(1433, "ms-sql-s"), Map.entry(3306, "mysql"),
+            Map.entry(3389, "ms-wbt-server"), Map.entry(5432, "postgresql"), Map.entry(5900, "vnc"),
+            Map.entry(6379, "redis"), Map.entry(8080, "http-proxy"), Map.entry(8443, "https-alt"));
+
+    private ServiceSignatures() {}
+
+    /** Bytes to send when the server stays silent. */
+    static byte[] probeFor(int port) {
+        return PROBES.getOrDefault(port, HTTP_PROBE);
+    }
+
+    /**
+     * Whether enough has arrived to match without waiting for more: a full header block for
+     * HTTP, otherwise the first line.
+     */
+    static boolean isComplete(byte[] data, int length) {
+        boolean http = length >= 5 && data[0] == 'H' && data[1] == 'T' && data[2] == 'T' && data[3] == 'P' && data[4] == '/';
+        for (int i = 0; i < length; i++) {
+            if (data[i] != '\n') continue;
+            if (!http || (i >= 3 && data[i - 1] == '\r' && data[i - 2] == '\n')) return true;
+        }
+        return false;
+    }
+
+    /** Matches a response, or returns null if no signature fits. */
+    static ServiceInfo match(int port, byte[] data, int length) {
+        if (length <= 0) return null;
+        String text = new String(data, 0, length, StandardCharsets.ISO_8859_1);
+        for (Signature signature : SIGNATURES) {
+            Matcher m = signature.pattern.matcher(text);
+            if (!m.find()) continue;
+            String version = null;
+            if (signature.versionGroup > 0) {
+                version = m.group(signature.versionGroup);
+            } else if (signature.versionPattern != null) {
+                Matcher v = signature.versionPattern.matcher(text);
+                if (v.find()) version = v.group(1);
+            }
+            return new ServiceInfo(port, signature.service, clean(version), true);
+        }
+        return null;
+    }
+
+    /** Port-number guess for an unidentified service. */
+    static ServiceInfo guess(int port) {
+        return new ServiceInfo(port, WELL_KNOWN.getOrDefault(port, "unknown"), null, false);
+    }
+
+    /** Banner text goes into CSV and checkpoints; keep it to one printable line. */
+    private static String clean(String version) {
+        if (version == null) return null;
+        String v = version.replaceAll("[\\x00-\\x1f\\x7f;|]", " ").trim();
+        if (v.length() > 80) v = v.substring(0, 80);
+        return v.isEmpty() ? null : v;
+    }
+}
@@ -0,0 +1,179 @@
+package com.smartnet.smartnet.network.simulator;
+
+import com.smartnet.smartnet.network.ipgenerator.IPGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates a subnet of hosts on the loopback range (127.0.0.0/8 is all local on Linux), so
+ * scans can be benchmarked end to end without a network.
+ * <ul>
+ *     <li>open ports are real listeners; accepted connections get the optional banner after
+ *     {@code latencyMillis ± jitterMillis} and are then closed</li>
+ *     <li>closed ports are simply not bound, so the kernel answers with a RST</li>
+ *     <li>dropped ports are listeners whose accept queue is filled and never drained; Linux
+ *     then ignores further SYNs and the client times out as on a filtered port</li>
+ * </ul>
+ * The kernel completes the TCP handshake itself, so latency can only be injected on what the
+ * host sends after accepting, not on connect. Every address also answers pings, so all
+ * simulated hosts are up. Each listener costs a file descriptor (three for a dropped port),
+ * so large subnets may need a higher {@code ulimit -n}.
+ */
+public class LoopbackSimulator implements Closeable {
+
+    public static class Config {
+        public String network = "127.42.0.0/24";
+        public int[] openPorts = {22, 80, 443};
+        public double openRatio = 1.0;          // chance that a given host has a given open port bound
+        public int[] droppedPorts = {8080};
+        public int latencyMillis = 0;
+        public int jitterMillis = 0;
+        public byte[] banner = null;            // sent on open ports after the delay, e.g. "SSH-2.0-sim\r\n"
+        public long seed = 0;
+    }
+
+    private final Config config;
+    private final List<ServerSocketChannel> listeners = new ArrayList<>();
+    private final List<SocketChannel> fillers = new ArrayList<>();
+    private final ScheduledExecutorService responders = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "smartnet-sim-responder");
+        t.setDaemon(true);
+        return t;
+    });
+    private Selector selector;
+    private Thread acceptor;
+    private int hosts;
+    private int openListeners;
+
+    public LoopbackSimulator(Config config) {
+        this.config = config;
+    }
+
+    /** Binds every listener; on failure everything bound so far is released. */
+    public LoopbackSimulator start() throws IOException {
+        List<String> ips = new IPGenerator().generateIP(config.network);
+        if (!ips.get(0).startsWith("127.")) {
+            throw new IllegalArgumentException("Simulated network must be inside 127.0.0.0/8: " + config.network);
+        }
+        Random random = new Random(config.seed);
+        selector = Selector.open();
+        try {
+            for (String ip : ips) {
+                for (int port : config.openPorts) {
+                    if (random.nextDouble() >= config.openRatio) continue;
+                    ServerSocketChannel server = ServerSocketChannel.open();
+                    listeners.add(server);
+                    server.bind(new InetSocketAddress(ip, port), 128);
+                    server.configureBlocking(false);
+                    server.register(selector, SelectionKey.OP_ACCEPT);
+                    openListeners++;
+                }
+                for (int port : config.droppedPorts) {
+                    bindDropped(ip, port);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw new IOException("Could not bind simulated hosts (" + e.getMessage()
+                    + "); try a smaller network or raise ulimit -n", e);
+        }
+        hosts = ips.size();
+        acceptor = new Thread(this::acceptLoop, "smartnet-sim-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    public int getHostCount() { return hosts; }
+    public int getOpenListenerCount() { return openListeners; }
+    public String getNetwork() { return config.network; }
+
+    private void bindDropped(String ip, int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        listeners.add(server);
+        // Linux counts the queue as full once it holds backlog + 1 connections.
+        server.bind(new InetSocketAddress(ip, port), 1);
+        for (int i = 0; i < 2; i++) {
+            SocketChannel filler = SocketChannel.open();
+            fillers.add(filler);
+            filler.connect(new InetSocketAddress(ip, port));
+        }
+    }
+
+    private void acceptLoop() {
+        Random random = new Random(config.seed);
+        while (selector.isOpen()) {
+            try {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel client = ((ServerSocketChannel) key.channel()).accept();
+                    if (client != null) respond(client, random);
+                }
+                selector.selectedKeys().clear();
+            } catch (IOException | RuntimeException e) {
+                if (selector.isOpen()) e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private void respond(SocketChannel client, Random random) {
+        int delay = config.latencyMillis;
+        if (config.jitterMillis > 0) {
+            delay = Math.max(0, delay + random.nextInt(2 * config.jitterMillis + 1) - config.jitterMillis);
+        }
+        Runnable reply = () -> {
+            try (client) {
+                if (config.banner != null) {
+                    client.write(ByteBuffer.wrap(config.banner));
+                }
+            } catch (IOException ignored) {
+                // the scanner usually hangs up first
+            }
+        };
+        if (delay == 0 && config.banner == null) {
+            reply.run();
+        } else {
+            responders.schedule(reply, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+        responders.shutdownNow();
+        for (SocketChannel filler : fillers) {
+            closeQuietly(filler);
+        }
+        for (ServerSocketChannel listener : listeners) {
+            closeQuietly(listener);
+        }
+        fillers.clear();
+        listeners.clear();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.smartnet.smartnet.network.simulator;
+
+import com.smartnet.smartnet.network.ports.PortSpec;
+import com.smartnet.smartnet.network.scanner.NetworkScanner;
+import com.smartnet.smartnet.network.scanner.ScanTelemetry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * End-to-end scan benchmark against a {@link LoopbackSimulator}. Runs every scan mode at every
+ * concurrency setting and prints hosts/s and ports/s.
+ * <pre>
+ * java ... com.smartnet.smartnet.network.simulator.ScanBenchmark --network 127.42.0.0/22 --threads 16,64,256
+ * </pre>
+ */
+public class ScanBenchmark {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: ScanBenchmark [options]",
+            "  --network <cidr>     simulated subnet inside 127.0.0.0/8 (default: 127.42.0.0/24)",
+            "  --open <spec>        ports with listeners (default: 22,80,443)",
+            "  --open-ratio <0-1>   chance a host has each open port (default: 1)",
+            "  --dropped <spec>     ports that silently drop SYNs (default: 8080)",
+            "  --closed <spec>      extra ports to probe that nothing listens on (default: 21,23,25,3389)",
+            "  --latency <ms>       reply delay on open ports (default: 0)",
+            "  --jitter <ms>        +/- random spread on the delay (default: 0)",
+            "  --threads <list>     concurrency settings to try (default: 16,64,256)",
+            "  --modes <list>       ordered, randomized (default: both)",
+            "  --timeout <ms>       scanner connect timeout (default: 200)",
+            "  --repeat <n>         runs per setting, best one is reported (default: 1)");
+
+    public static void main(String[] args) throws Exception {
+        LoopbackSimulator.Config sim = new LoopbackSimulator.Config();
+        int[] closed = {21, 23, 25, 3389};
+        int[] threads = {16, 64, 256};
+        List<String> modes = List.of("ordered", "randomized");
+        int timeout = 200;
+        int repeat = 1;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (arg.equals("-h") || arg.equals("--help")) {
+                    System.out.println(USAGE);
+                    return;
+                }
+                if (value == null) throw new IllegalArgumentException("Missing value for " + arg);
+                i++;
+                switch (arg) {
+                    case "--network" -> sim.network = value;
+                    case "--open" -> sim.openPorts = PortSpec.parse(value);
+                    case "--open-ratio" -> sim.openRatio = Double.parseDouble(value);
+                    case "--dropped" -> sim.droppedPorts = PortSpec.parse(value);
+                    case "--closed" -> closed = PortSpec.parse(value);
+                    case "--latency" -> sim.latencyMillis = Integer.parseInt(value);
+                    case "--jitter" -> sim.jitterMillis = Integer.parseInt(value);
+                    case "--threads" -> threads = parseInts(value);
+                    case "--modes" -> modes = List.of(value.split(","));
+                    case "--timeout" -> timeout = Integer.parseInt(value);
+                    case "--repeat" -> repeat = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        int[] ports = union(sim.openPorts, sim.droppedPorts, closed);
+        try (LoopbackSimulator simulator = new LoopbackSimulator(sim).start()) {
+            System.out.printf("Simulating %d hosts on %s, %d open listeners, probing %d ports per host%n",
+                    simulator.getHostCount(), sim.network, simulator.getOpenListenerCount(), ports.length);
+            System.out.printf("%-11s %8s %8s %10s %10s %12s %8s%n",
+                    "mode", "threads", "hosts", "probes", "seconds", "hosts/s", "ports/s");
+            for (String mode : modes) {
+                for (int t : threads) {
+                    Run best = null;
+                    for (int r = 0; r < repeat; r++) {
+                        Run run = run(sim.network, ports, mode, t, timeout);
+                        if (best == null || run.seconds < best.seconds) best = run;
+                    }
+                    System.out.printf("%-11s %8d %8d %10d %10.2f %12.1f %8.0f%n", mode, t, best.hosts,
+                            best.probes, best.seconds, best.hosts / best.seconds, best.probes / best.seconds);
+                }
+            }
+        }
+    }
+
+    private static Run run(String network, int[] ports, String mode, int threads, int timeout) {
+        NetworkScanner.Config config = new NetworkScanner.Config();
+        config.threads = threads;
+        config.portTimeoutMillis = timeout;
+        config.telemetry = new ScanTelemetry();
+        switch (mode) {
+            case "ordered" -> config.randomizeOrder = false;
+            case "randomized" -> {
+                config.randomizeOrder = true;
+                config.seed = 42;
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        long start = System.nanoTime();
+        new NetworkScanner().scanSubnet(network, ports, config);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        ScanTelemetry.Snapshot snap = config.telemetry.snapshot();
+        return new Run(snap.getHostsCompleted(), snap.getProbesCompleted(), seconds);
+    }
+
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] out = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            out[i] = Integer.parseInt(parts[i].trim());
+            if (out[i] <= 0) throw new IllegalArgumentException("Expected positive numbers: " + list);
+        }
+        return out;
+    }
+
+    private static int[] union(int[]... lists) {
+        Set<Integer> all = new LinkedHashSet<>();
+        for (int[] list : lists) {
+            for (int port : list) all.add(port);
+        }
+        List<Integer> ordered = new ArrayList<>(all);
+        int[] out = new int[ordered.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ordered.get(i);
+        return out;
+    }
+
+    private record Run(long hosts, long probes, double seconds) {}
+}
@@ -0,0 +1,106 @@
+package com.smartnet.smartnet.network.udp;
+
+import com.smartnet.smartnet.network.metrics.ScanMetrics;
+import org.pcap4j.core.BpfProgram;
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNativeException;
+import org.pcap4j.core.PcapNetworkInterface;
+import org.pcap4j.packet.IcmpV4CommonPacket;
+import org.pcap4j.packet.Packet;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Watches one interface for ICMP destination-unreachable messages about UDP datagrams
+ * and reports which (address, port) they refer to. The kernel only passes these errors to the
+ * socket that sent the datagram, and only while it is connected; capturing them as well catches
+ * replies that arrive after the socket has moved on.
+ */
+final class IcmpUnreachableCapture implements Closeable {
+
+    /** An ICMP type 3 message quoting a UDP datagram we sent to {@code ip:port} from {@code sourcePort}. */
+    record Unreachable(String ip, int port, int sourcePort, int code) {}
+
+    private static final int SNAP_LEN = 128;           // ICMP header plus the quoted IP/UDP headers
+    private static final int READ_TIMEOUT_MILLIS = 100;
+
+    private final PcapHandle handle;
+    private final Thread reader;
+    private volatile boolean closed;
+
+    private IcmpUnreachableCapture(PcapHandle handle, String name, Consumer<Unreachable> sink) {
+        this.handle = handle;
+        this.reader = new Thread(() -> read(sink), "smartnet-udp-icmp-" + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /** Opens the capture, or returns null when pcap is unavailable (no driver, no permission). */
+    static IcmpUnreachableCapture open(PcapNetworkInterface nif, Consumer<Unreachable> sink) {
+        try {
+            PcapHandle handle = nif.openLive(SNAP_LEN, PcapNetworkInterface.PromiscuousMode.NONPROMISCUOUS,
+                    READ_TIMEOUT_MILLIS);
+            try {
+                handle.setFilter("icmp[icmptype] == icmp-unreach", BpfProgram.BpfCompileMode.OPTIMIZE);
+            } catch (PcapNativeException | NotOpenException e) {
+                handle.close();
+                throw e;
+            }
+            return new IcmpUnreachableCapture(handle, nif.getName(), sink);
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+    private void read(Consumer<Unreachable> sink) {
+        while (!closed) {
+            try {
+                Packet packet = handle.getNextPacketEx();
+                if (packet == null) continue;
+                ScanMetrics.packetReceived();
+                IcmpV4CommonPacket icmp = packet.get(IcmpV4CommonPacket.class);
+                if (icmp == null) continue;
+                Unreachable unreachable = parse(icmp.getRawData());
+                if (unreachable != null) sink.accept(unreachable);
+            } catch (TimeoutException ignored) {
+            } catch (NotOpenException e) {
+                return;
+            } catch (Exception e) {
+                if (!closed) e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the quoted datagram by hand: the quote is often truncated right after the UDP
+     * header, which pcap4j's decoder does not always accept.
+     */
+    static Unreachable parse(byte[] icmp) {
+        if (icmp.length < 8 + 20 + 8 || (icmp[0] & 0xff) != 3) return null;
+        int ip = 8;
+        int headerLength = (icmp[ip] & 0x0f) * 4;
+        if ((icmp[ip] >> 4 & 0x0f) != 4 || (icmp[ip + 9] & 0xff) != 17) return null;
+        int udp = ip + headerLength;
+        if (icmp.length < udp + 4) return null;
+        String dst = (icmp[ip + 16] & 0xff) + "." + (icmp[ip + 17] & 0xff) + "."
+                + (icmp[ip + 18] & 0xff) + "." + (icmp[ip + 19] & 0xff);
+        int sourcePort = (icmp[udp] & 0xff) << 8 | (icmp[udp + 1] & 0xff);
+        int port = (icmp[udp + 2] & 0xff) << 8 | (icmp[udp + 3] & 0xff);
+        return new Unreachable(dst, port, sourcePort, icmp[1] & 0xff);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            reader.join(READ_TIMEOUT_MILLIS * 3L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        handle.close();
+    }
+}
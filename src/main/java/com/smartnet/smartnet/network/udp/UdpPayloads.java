@@ -0,0 +1,111 @@
+package com.smartnet.smartnet.network.udp;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Protocol-appropriate probe payloads. Most UDP services drop datagrams they cannot parse, so a
+ * bare probe only tells open from closed through the ICMP reply; a well-formed request gets an
+ * answer and proves the port open. Ports without an entry get a single NUL byte: some stacks and
+ * firewalls silently drop zero-length datagrams instead of answering with port-unreachable.
+ */
+final class UdpPayloads {
+
+    private static final byte[] DEFAULT = new byte[1];
+
+    private static final Map<Integer, byte[]> PAYLOADS = Map.of(
+            53, dnsQuery("version.bind", 16, 3),                    // TXT CHAOS
+            69, tftpReadRequest(),
+            123, ntpClientRequest(),
+            137, netbiosStatusQuery(),
+            161, snmpGetSysDescr(),
+            1900, ("M-SEARCH * HTTP/1.1\r\nHOST: 239.255.255.250:1900\r\nMAN: \"ssdp:discover\"\r\n"
+                    + "MX: 1\r\nST: ssdp:all\r\n\r\n").getBytes(StandardCharsets.US_ASCII),
+            5353, dnsQuery("_services._dns-sd._udp.local", 12, 1)   // PTR IN, answered as legacy unicast
+    );
+
+    private UdpPayloads() {}
+
+    static byte[] forPort(int port) {
+        return PAYLOADS.getOrDefault(port, DEFAULT);
+    }
+
+    private static byte[] dnsQuery(String name, int type, int qclass) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{0x53, 0x4e, 0x01, 0x00, 0, 1, 0, 0, 0, 0, 0, 0}); // id, RD, one question
+        for (String label : name.split("\\.")) {
+            out.write(label.length());
+            out.writeBytes(label.getBytes(StandardCharsets.US_ASCII));
+        }
+        out.write(0);
+        out.write(type >> 8);
+        out.write(type);
+        out.write(qclass >> 8);
+        out.write(qclass);
+        return out.toByteArray();
+    }
+
+    /** Read request for a file that won't exist; a TFTP server answers with an error packet. */
+    private static byte[] tftpReadRequest() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{0, 1});
+        out.writeBytes("smartnet.txt\0octet\0".getBytes(StandardCharsets.US_ASCII));
+        return out.toByteArray();
+    }
+
+    /** NTPv4 client mode with an unsynchronized leap indicator, as sent by ntpdate. */
+    private static byte[] ntpClientRequest() {
+        byte[] packet = new byte[48];
+        packet[0] = (byte) 0xe3;
+        return packet;
+    }
+
+    /** NBSTAT query for the wildcard name "*", answered by any NetBIOS name service. */
+    private static byte[] netbiosStatusQuery() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{0x53, 0x4e, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0});
+        out.write(32);
+        byte[] name = new byte[16];
+        name[0] = '*';
+        for (byte b : name) {           // first-level encoding: each nibble becomes 'A' + nibble
+            out.write('A' + ((b >> 4) & 0x0f));
+            out.write('A' + (b & 0x0f));
+        }
+        out.writeBytes(new byte[]{0, 0, 0x21, 0, 1});
+        return out.toByteArray();
+    }
+
+    /** SNMPv1 get-request for sysDescr.0 with the "public" community. */
+    private static byte[] snmpGetSysDescr() {
+        byte[] oid = {0x2b, 6, 1, 2, 1, 1, 1, 0};              // 1.3.6.1.2.1.1.1.0
+        byte[] varbind = tlv(0x30, concat(tlv(0x06, oid), tlv(0x05)));
+        byte[] pdu = tlv(0xa0, concat(
+                tlv(0x02, 0x53, 0x4e, 0x45, 0x54),               // request id
+                tlv(0x02, 0),                                    // error status
+                tlv(0x02, 0),                                    // error index
+                tlv(0x30, varbind)));
+        return tlv(0x30, concat(tlv(0x02, 0), tlv(0x04, "public".getBytes(StandardCharsets.US_ASCII)), pdu));
+    }
+
+    /** BER type-length-value with a short-form length, enough for these small messages. */
+    private static byte[] tlv(int tag, byte... value) {
+        byte[] out = new byte[value.length + 2];
+        out[0] = (byte) tag;
+        out[1] = (byte) value.length;
+        System.arraycopy(value, 0, out, 2, value.length);
+        return out;
+    }
+
+    private static byte[] tlv(int tag, int... value) {
+        byte[] bytes = new byte[value.length];
+        for (int i = 0; i < value.length; i++) bytes[i] = (byte) value[i];
+        return tlv(tag, bytes);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.writeBytes(part);
+        return out.toByteArray();
+    }
+}
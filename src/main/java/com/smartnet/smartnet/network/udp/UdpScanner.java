@@ -0,0 +1,393 @@
+package com.smartnet.smartnet.network.udp;
+
+import com.smartnet.smartnet.network.metrics.ScanMetrics;
+import com.smartnet.smartnet.network.models.UdpPortState;
+import com.smartnet.smartnet.network.networkinterfacemanager.NetworkInterfaceManager;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+import org.pcap4j.core.PcapNetworkInterface;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * UDP port scan engine shared by every host of a scan. Each probe is a connected, non-blocking
+ * {@link DatagramChannel} carrying a protocol payload (see {@link UdpPayloads}); all of them are
+ * multiplexed on one selector thread. A port is classified by the first thing that comes back:
+ * <ul>
+ *     <li>a datagram: open</li>
+ *     <li>ICMP port unreachable, seen by the connected socket or on the pcap handle: closed</li>
+ *     <li>any other ICMP unreachable: filtered</li>
+ *     <li>nothing after {@link Config#retries} retransmissions: open|filtered</li>
+ * </ul>
+ * Hosts usually rate-limit ICMP errors (Linux sends about one per second per peer after a short
+ * burst), so a silent port on a host that is still answering with unreachables is more likely
+ * rate-limited than open. Each host therefore has its own send rate: an unreachable nudges it up,
+ * a timeout while unreachables keep arriving halves it, and the port is retransmitted at the new
+ * rate. A host whose unreachables stop altogether (a firewall, not a rate limit) is not slowed.
+ * Many hosts are probed at once, each at its own pace, so the scan as a whole is not held to the
+ * rate limit of a single host.
+ */
+public class UdpScanner implements Closeable {
+
+    public static class Config {
+        public int timeoutMillis = 1000;                // wait for an answer before retransmitting
+        public int retries = 2;                         // retransmissions before a silent port is open|filtered
+        public int maxInFlight = 512;                   // outstanding probes across all hosts, one socket each
+        public double hostProbesPerSecond = 50;         // starting and maximum per-host send rate
+        public double minHostProbesPerSecond = 1;       // floor once a host is rate-limiting its ICMP errors
+        public boolean capture = true;                  // also correlate ICMP unreachables captured with pcap, one handle per interface
+    }
+
+    /** Well-known UDP services with a payload in {@link UdpPayloads}, plus IKE. */
+    public static final int[] COMMON_PORTS = {53, 69, 123, 137, 161, 500, 1900, 5353};
+
+    private final Config config;
+    private final Selector selector;
+    private final Thread loop;
+    private final Map<String, IcmpUnreachableCapture> captures = new HashMap<>();  // by interface name, null = unavailable
+    private boolean captureUnavailable;
+    private final Queue<HostScan> incoming = new ConcurrentLinkedQueue<>();
+    private final Queue<IcmpUnreachableCapture.Unreachable> unreachables = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    // Selector thread only.
+    private final List<HostScan> active = new ArrayList<>();
+    private final Map<String, Probe> outstanding = new HashMap<>();    // "ip:port" -> probe with an open socket
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(2048);
+    private int cursor;
+
+    public UdpScanner(Config config) throws IOException {
+        this.config = config;
+        this.selector = Selector.open();
+        this.loop = new Thread(this::run, "smartnet-udp-scanner");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * Opens the capture on the interface the host is reached through, once per interface, so
+     * hosts behind different NICs all get their unreachables seen.
+     */
+    private synchronized void ensureCapture(String ip) {
+        if (!config.capture || captureUnavailable || closed) return;
+        try {
+            PcapNetworkInterface nif = NetworkInterfaceManager.getInterfaceFor(ip);
+            if (captures.containsKey(nif.getName())) return;
+            captures.put(nif.getName(), IcmpUnreachableCapture.open(nif, u -> {
+                unreachables.add(u);
+                selector.wakeup();
+            }));
+        } catch (Exception | LinkageError e) {
+            captureUnavailable = true; // pcap4j or its native library missing: rely on the sockets alone
+        }
+    }
+
+    /** Whether ICMP replies are also read from a capture handle, not only from the probe sockets. */
+    public synchronized boolean isCapturing() {
+        for (IcmpUnreachableCapture capture : captures.values()) {
+            if (capture != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Probes the ports of one host and waits for all of them to be classified. Closed ports are
+     * included. A cancelled token returns what was classified so far.
+     */
+    public Map<Integer, UdpPortState> scan(String ip, int[] ports, CancellationToken token)
+            throws InterruptedException {
+        if (ports.length == 0) return new TreeMap<>();
+        ensureCapture(ip);
+        HostScan host = new HostScan(ip, ports);
+        token.register(host);
+        try {
+            if (closed || token.isCancelled()) return new TreeMap<>();
+            incoming.add(host);
+            selector.wakeup();
+            while (true) {
+                try {
+                    return host.result.get(100, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (!loop.isAlive()) return host.states;   // closed concurrently, the host was never picked up
+                }
+            }
+        } catch (InterruptedException e) {
+            host.close();
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            token.unregister(host);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (IcmpUnreachableCapture capture : captures.values()) {
+                if (capture != null) capture.close();
+            }
+            captures.clear();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                long now = System.nanoTime();
+                HostScan host;
+                while ((host = incoming.poll()) != null) {
+                    host.lastRefill = now;
+                    active.add(host);
+                }
+                dropCancelled();
+                expire(now);
+                long wakeAt = send(now);
+                for (Probe p : outstanding.values()) {
+                    if (p.awaiting && p.deadline - wakeAt < 0) wakeAt = p.deadline;
+                }
+                long waitMillis = TimeUnit.NANOSECONDS.toMillis(wakeAt - System.nanoTime());
+                selector.select(Math.max(1, Math.min(100, waitMillis)));
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isReadable()) read((Probe) key.attachment());
+                }
+                IcmpUnreachableCapture.Unreachable u;
+                while ((u = unreachables.poll()) != null) {
+                    Probe p = outstanding.get(u.ip() + ":" + u.port());
+                    if (p != null && (p.sourcePort == 0 || p.sourcePort == u.sourcePort())) {
+                        resolve(p, u.code() == 3 ? UdpPortState.CLOSED : UdpPortState.FILTERED);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            for (Probe p : new ArrayList<>(outstanding.values())) {
+                closeChannel(p);
+            }
+            for (HostScan host : active) host.result.complete(host.states);
+            HostScan host;
+            while ((host = incoming.poll()) != null) host.result.complete(host.states);
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Sends whatever the per-host rates and the in-flight limit allow, visiting hosts round-robin
+     * so none of them starves. Returns when the next host will have a send token again.
+     */
+    private long send(long now) {
+        long wakeAt = now + TimeUnit.MILLISECONDS.toNanos(100);
+        // A failed transmit can finish a host and take it out of active; walk a copy.
+        List<HostScan> round = new ArrayList<>(active);
+        int hosts = round.size();
+        for (int i = 0; i < hosts; i++) {
+            HostScan host = round.get((cursor + i) % hosts);
+            if (host.result.isDone()) continue;
+            host.refill(now, config.hostProbesPerSecond);
+            while (host.tokens >= 1 && !host.queue.isEmpty()) {
+                Probe p = host.queue.peekFirst();
+                if (p.channel == null && outstanding.size() >= config.maxInFlight) break;
+                host.queue.pollFirst();
+                host.tokens -= 1;
+                transmit(p, now);
+            }
+            if (!host.queue.isEmpty() && host.tokens < 1) {
+                long refillAt = now + (long) ((1 - host.tokens) / host.rate * 1e9);
+                if (refillAt - wakeAt < 0) wakeAt = refillAt;
+            }
+        }
+        if (hosts > 0) cursor = (cursor + 1) % hosts;
+        return wakeAt;
+    }
+
+    private void transmit(Probe p, long now) {
+        try {
+            if (p.channel == null) {
+                p.channel = DatagramChannel.open();
+                outstanding.put(p.host.ip + ":" + p.port, p);
+                p.channel.configureBlocking(false);
+                p.channel.connect(new InetSocketAddress(p.host.ip, p.port));
+                p.sourcePort = ((InetSocketAddress) p.channel.getLocalAddress()).getPort();
+                p.channel.register(selector, SelectionKey.OP_READ, p);
+            }
+            p.channel.write(ByteBuffer.wrap(UdpPayloads.forPort(p.port)));
+            ScanMetrics.packetSent();
+            p.sent++;
+            p.awaiting = true;
+            p.deadline = now + TimeUnit.MILLISECONDS.toNanos(config.timeoutMillis);
+        } catch (PortUnreachableException e) {
+            resolve(p, UdpPortState.CLOSED);        // the unreachable for an earlier transmission
+        } catch (IOException e) {
+            resolve(p, UdpPortState.FILTERED);      // e.g. no route to host
+        }
+    }
+
+    private void read(Probe p) {
+        try {
+            readBuffer.clear();
+            p.channel.read(readBuffer);
+            ScanMetrics.packetReceived();
+            resolve(p, UdpPortState.OPEN);
+        } catch (PortUnreachableException e) {
+            resolve(p, UdpPortState.CLOSED);
+        } catch (IOException e) {
+            resolve(p, UdpPortState.FILTERED);
+        }
+    }
+
+    /** Retransmits unanswered probes, slowing hosts whose silence looks like ICMP rate limiting. */
+    private void expire(long now) {
+        List<Probe> expired = null;
+        for (Probe p : outstanding.values()) {
+            if (p.awaiting && now - p.deadline >= 0) {
+                if (expired == null) expired = new ArrayList<>();
+                expired.add(p);
+            }
+        }
+        if (expired == null) return;
+        for (Probe p : expired) {
+            p.awaiting = false;
+            HostScan host = p.host;
+            long window = TimeUnit.MILLISECONDS.toNanos(config.timeoutMillis);
+            boolean rateLimited = host.unreachables > 0 && now - host.lastUnreachable < 2 * window;
+            if (rateLimited && now - host.lastBackoff >= window) {
+                host.rate = Math.max(config.minHostProbesPerSecond, host.rate / 2);
+                host.tokens = Math.min(host.tokens, 1);
+                host.lastBackoff = now;
+            }
+            if (p.sent <= config.retries) {
+                host.queue.addFirst(p);
+            } else {
+                resolve(p, UdpPortState.OPEN_FILTERED);
+            }
+        }
+    }
+
+    private void dropCancelled() {
+        for (Iterator<HostScan> it = active.iterator(); it.hasNext(); ) {
+            HostScan host = it.next();
+            if (!host.cancelled) continue;
+            it.remove();
+            for (Probe p : new ArrayList<>(outstanding.values())) {
+                if (p.host == host) closeChannel(p);
+            }
+            host.result.complete(host.states);
+        }
+    }
+
+    private void resolve(Probe p, UdpPortState state) {
+        closeChannel(p);
+        HostScan host = p.host;
+        if (host.states.putIfAbsent(p.port, state) != null) return;
+        host.queue.remove(p);
+        if (state == UdpPortState.CLOSED || state == UdpPortState.FILTERED) {
+            host.unreachables++;
+            host.lastUnreachable = System.nanoTime();
+            host.rate = Math.min(config.hostProbesPerSecond, host.rate + 1);
+        }
+        if (host.states.size() == host.ports) {
+            active.remove(host);
+            host.result.complete(host.states);
+        }
+    }
+
+    private void closeChannel(Probe p) {
+        p.awaiting = false;
+        if (p.channel == null) return;
+        outstanding.remove(p.host.ip + ":" + p.port, p);
+        try {
+            p.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private final class HostScan implements Closeable {
+        final String ip;
+        final int ports;
+        final Deque<Probe> queue = new ArrayDeque<>();
+        final Map<Integer, UdpPortState> states = new TreeMap<>();
+        final CompletableFuture<Map<Integer, UdpPortState>> result = new CompletableFuture<>();
+        double rate = config.hostProbesPerSecond;
+        double tokens = 1;
+        long lastRefill;
+        long lastBackoff;
+        long lastUnreachable;
+        int unreachables;
+        volatile boolean cancelled;
+
+        HostScan(String ip, int[] ports) {
+            this.ip = ip;
+            Set<Integer> seen = new HashSet<>();
+            for (int port : ports) {
+                if (seen.add(port)) queue.add(new Probe(this, port));
+            }
+            this.ports = queue.size();
+        }
+
+        /** Token bucket holding at most a tenth of a second's worth of probes. */
+        void refill(long now, double maxRate) {
+            double burst = Math.max(1, Math.min(maxRate, rate) / 10);
+            tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * rate);
+            lastRefill = now;
+        }
+
+        /** Called by the cancellation token. */
+        @Override
+        public void close() {
+            cancelled = true;
+            selector.wakeup();
+        }
+    }
+
+    private static final class Probe {
+        final HostScan host;
+        final int port;
+        DatagramChannel channel;
+        int sourcePort;
+        int sent;
+        boolean awaiting;
+        long deadline;
+
+        Probe(HostScan host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+    }
+}
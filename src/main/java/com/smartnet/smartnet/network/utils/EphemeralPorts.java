@@ -0,0 +1,176 @@
+package com.smartnet.smartnet.network.utils;
+
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps connect probes under the local ephemeral port range. Every outgoing connection holds
+ * a local port, and one closed gracefully holds it for another minute or so in TIME_WAIT;
+ * a long scan can use them all up, after which connects fail and the scan stalls.
+ * <p>
+ * Ports in use are this process's open probe sockets or, on Linux, the TCP sockets in
+ * {@code /proc/net/tcp} and {@code tcp6} whose local port lies in the ephemeral range if
+ * that is more, sampled a few times a second. Listeners and inbound connections hold no
+ * ephemeral port and are not counted. Near the limit, {@link #acquire} waits instead of
+ * letting the connect fail, but only up to {@link #MAX_WAIT_MILLIS}: ports held by other
+ * programs may never come back. After such a wait only this process's own sockets count
+ * against the budget, until a sample shows the system back under it. Shared by every scan
+ * in the process, as the ports are.
+ */
+public class EphemeralPorts {
+
+    /** Longest a probe waits for a port before it goes ahead and lets the connect decide. */
+    public static final long MAX_WAIT_MILLIS = 10_000;
+
+    private static final Path PORT_RANGE = Path.of("/proc/sys/net/ipv4/ip_local_port_range");
+    private static final List<Path> TCP_TABLES = List.of(Path.of("/proc/net/tcp"), Path.of("/proc/net/tcp6"));
+    private static final String LISTEN = "0A";
+    private static final String TIME_WAIT = "06";
+    private static final long SAMPLE_MILLIS = 250;
+    private static final long POLL_MILLIS = 50;
+    private static final double HEADROOM = 0.8;     // of the range; other programs need ports too
+    private static final int DEFAULT_LOW = 49152;   // Windows and macOS: 49152-65535
+    private static final int DEFAULT_HIGH = 65535;
+
+    private static final EphemeralPorts SHARED = new EphemeralPorts();
+
+    /** Snapshot for progress displays and the end-of-scan report. */
+    public record Stats(int rangeSize, int budget, int inFlight, int inUse, int timeWait,
+                        long throttled, long throttledMillis) {
+        /** Ports counted against the budget. */
+        public int used() { return Math.max(inFlight, inUse) + timeWait; }
+    }
+
+    private final int low;
+    private final int high;
+    private final int budget;
+    private final long maxWaitNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder throttledNanos = new LongAdder();
+    private final AtomicBoolean warned = new AtomicBoolean();
+    private final boolean procTcp = Files.isReadable(TCP_TABLES.get(0));
+
+    private volatile long sampledAt;
+    private volatile int inUse;             // open sockets on an ephemeral local port, last sample
+    private volatile int timeWait;          // the same in TIME_WAIT, last sample
+    private volatile boolean degraded;      // gave up waiting; other programs' ports are ignored
+
+    EphemeralPorts() {
+        this(readRange(), -1, MAX_WAIT_MILLIS);
+    }
+
+    /** A budget of -1 leaves room for other programs in the range. */
+    EphemeralPorts(int[] range, int budget, long maxWaitMillis) {
+        this.low = range[0];
+        this.high = range[1];
+        this.budget = budget > 0 ? budget : Math.max(1, (int) ((high - low + 1) * HEADROOM));
+        this.maxWaitNanos = maxWaitMillis * 1_000_000L;
+    }
+
+    public static EphemeralPorts shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a port for one connect, waiting while the budget is used up. Returns false
+     * without one if the token is cancelled (or the thread interrupted) first.
+     */
+    public boolean acquire(CancellationToken token) {
+        if (reserve()) return true;
+        long start = System.nanoTime();
+        long giveUp = start + maxWaitNanos;
+        throttled.increment();
+        try {
+            while (!reserve()) {
+                if (token.isCancelled()) return false;
+                if (!degraded && System.nanoTime() - giveUp > 0) {
+                    degraded = true;
+                    if (warned.compareAndSet(false, true)) {
+                        Stats stats = stats();
+                        System.err.printf("Ephemeral ports stay near the limit (%d of %d in use, %d in TIME_WAIT); "
+                                + "counting only this scan's own sockets until they free up.%n",
+                                stats.used(), budget, stats.timeWait());
+                    }
+                    continue;
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            throttledNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /** The probe socket is closed. */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public Stats stats() {
+        sample();
+        return new Stats(high - low + 1, budget, inFlight.get(), inUse, timeWait, throttled.sum(),
+                throttledNanos.sum() / 1_000_000L);
+    }
+
+    /** Counts this probe in first, so threads racing for the last ports cannot all get one. */
+    private boolean reserve() {
+        sample();
+        int reserved = inFlight.incrementAndGet();
+        if (degraded ? reserved <= budget : Math.max(reserved, inUse) + timeWait <= budget) return true;
+        inFlight.decrementAndGet();
+        return false;
+    }
+
+    private void sample() {
+        if (!procTcp) return;
+        long now = System.currentTimeMillis();
+        if (now - sampledAt < SAMPLE_MILLIS) return;
+        sampledAt = now;    // racing threads may both read; harmless
+        int open = 0, waiting = 0;
+        try {
+            for (Path table : TCP_TABLES) {
+                if (!Files.isReadable(table)) continue;
+                try (BufferedReader reader = Files.newBufferedReader(table)) {
+                    reader.readLine();  // header
+                    // 0: 0202000A:A3F2 0102000A:0016 01 ...   (local, remote, state)
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] f = line.trim().split("\\s+", 5);
+                        if (f.length < 4 || f[3].equals(LISTEN)) continue;
+                        int port = Integer.parseInt(f[1].substring(f[1].indexOf(':') + 1), 16);
+                        if (port < low || port > high) continue;
+                        if (f[3].equals(TIME_WAIT)) waiting++;
+                        else open++;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return;     // keep the last sample
+        }
+        inUse = open;
+        timeWait = waiting;
+        if (degraded && Math.max(inFlight.get(), open) + waiting < budget) degraded = false;
+    }
+
+    private static int[] readRange() {
+        try {
+            List<String> lines = Files.readAllLines(PORT_RANGE);
+            String[] f = lines.get(0).trim().split("\\s+");
+            return new int[]{Integer.parseInt(f[0]), Integer.parseInt(f[1])};
+        } catch (IOException | RuntimeException e) {
+            return new int[]{DEFAULT_LOW, DEFAULT_HIGH};
+        }
+    }
+}
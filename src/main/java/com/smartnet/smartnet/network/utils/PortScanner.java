@@ -1,19 +1,109 @@
 package com.smartnet.smartnet.network.utils;
 
+import com.smartnet.smartnet.network.metrics.ScanMetrics;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
 
+/**
+ * Connect probes. Probe sockets are closed with an RST (SO_LINGER 0) rather than a FIN, so
+ * they leave no TIME_WAIT behind, and each connect takes a slot from {@link EphemeralPorts}
+ * so a long scan slows down near the local port limit instead of failing.
+ */
 public class PortScanner {
+
+    public enum Outcome { OPEN, CLOSED, TIMEOUT, ERROR }
+
+    private final EphemeralPorts ephemeralPorts;
+
+    public PortScanner() {
+        this(EphemeralPorts.shared());
+    }
+
+    public PortScanner(EphemeralPorts ephemeralPorts) {
+        this.ephemeralPorts = ephemeralPorts;
+    }
+
+    public EphemeralPorts getEphemeralPorts() {
+        return ephemeralPorts;
+    }
+
     /**
      * Checks if a specific port is open on a host.
      */
     public boolean isPortOpen(String ipAddress, int port, int timeout) {
-        try (Socket socket = new Socket()) {
-            socket.connect(new InetSocketAddress(ipAddress, port), timeout);
-            return true;
+        return isPortOpen(ipAddress, port, timeout, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link #isPortOpen(String, int, int)}, but the socket is registered with the
+     * token so a cancelled scan closes it instead of waiting out the connect timeout.
+     */
+    public boolean isPortOpen(String ipAddress, int port, int timeout, CancellationToken token) {
+        return probe(ipAddress, port, timeout, token) == Outcome.OPEN;
+    }
+
+    /**
+     * Connects once and reports why the port is not open: refused (closed), no answer
+     * within the timeout, or some other error such as an unreachable network.
+     */
+    public Outcome probe(String ipAddress, int port, int timeout, CancellationToken token) {
+        return probe(ipAddress, port, timeout, token, null);
+    }
+
+    /**
+     * Same as {@link #probe(String, int, int, CancellationToken)}, but when the port is open and
+     * {@code onOpen} is given, the connected channel is passed to it instead of being closed,
+     * e.g. for service detection. The consumer owns the channel from then on.
+     */
+    public Outcome probe(String ipAddress, int port, int timeout, CancellationToken token,
+                         Consumer<SocketChannel> onOpen) {
+        long start = ScanMetrics.start();
+        Outcome outcome = connect(ipAddress, port, timeout, token, onOpen);
+        ScanMetrics.record(ScanMetrics.Phase.PORT_PROBE, start);
+        ScanMetrics.outcome(outcome);
+        return outcome;
+    }
+
+    private Outcome connect(String ipAddress, int port, int timeout, CancellationToken token,
+                            Consumer<SocketChannel> onOpen) {
+        if (!ephemeralPorts.acquire(token)) return Outcome.ERROR;
+        SocketChannel channel = null;
+        boolean handedOff = false;
+        try {
+            channel = SocketChannel.open();
+            channel.setOption(StandardSocketOptions.SO_LINGER, 0);    // abortive close, no TIME_WAIT
+            token.register(channel);
+            try {
+                channel.socket().connect(new InetSocketAddress(ipAddress, port), timeout);
+            } finally {
+                token.unregister(channel);
+            }
+            if (onOpen != null) {
+                handedOff = true;
+                onOpen.accept(channel);
+            }
+            return Outcome.OPEN;
+        } catch (SocketTimeoutException e) {
+            return Outcome.TIMEOUT;
+        } catch (ConnectException e) {
+            return Outcome.CLOSED;
         } catch (IOException e) {
-            return false;
+            return Outcome.ERROR;
+        } finally {
+            if (channel != null && !handedOff) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            ephemeralPorts.release();   // a handed-off socket still shows up in the system count
         }
     }
 }
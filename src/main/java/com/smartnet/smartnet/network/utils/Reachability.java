@@ -7,9 +7,17 @@ public class Reachability {
      * Checks if a host is reachable using ICMP ping.
      */
     public boolean isReachable(String ipAddress) {
+        return isReachable(ipAddress, 1000);
+    }
+
+    /**
+     * Same as {@link #isReachable(String)} with a custom timeout. Without raw socket privileges
+     * the JDK falls back to a TCP connect on the echo port (7).
+     */
+    public boolean isReachable(String ipAddress, int timeoutMillis) {
         try {
             InetAddress address = InetAddress.getByName(ipAddress);
-            return address.isReachable(1000);
+            return address.isReachable(timeoutMillis);
         } catch (Exception e) {
             return false;
         }
@@ -7,8 +7,10 @@ module com.smartnet.smartnet {
                     requires org.kordamp.ikonli.javafx;
             requires org.kordamp.bootstrapfx.core;
     requires org.pcap4j.core;
+    requires java.management;
 //            requires eu.hansolo.tilesfx;
         
     opens com.smartnet.smartnet to javafx.fxml;
     exports com.smartnet.smartnet;
+    exports com.smartnet.smartnet.network.metrics to java.management;
 }
\ No newline at end of file
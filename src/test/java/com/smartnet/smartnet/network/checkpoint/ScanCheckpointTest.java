@@ -0,0 +1,168 @@
+package com.smartnet.smartnet.network.checkpoint;
+
+import com.smartnet.smartnet.network.discovery.HostDiscovery;
+import com.smartnet.smartnet.network.models.HostScanResults;
+import com.smartnet.smartnet.network.models.ServiceInfo;
+import com.smartnet.smartnet.network.models.UdpPortState;
+import com.smartnet.smartnet.network.scanner.CongestionControl;
+import com.smartnet.smartnet.network.scanner.NetworkScanner;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScanCheckpointTest {
+
+    @Test
+    void settingsSurviveTheRoundTrip() throws IOException {
+        NetworkScanner.Config config = new NetworkScanner.Config();
+        config.threads = 33;
+        config.osScan = true;
+        config.portTimeoutMillis = 450;
+        config.maxOpenPorts = 7;
+        config.randomizeOrder = true;
+        config.seed = -123456789L;
+        config.shardStart = 100;
+        config.shardEnd = 900;
+        config.detectServices = true;
+        config.udpPorts = new int[]{53, 161};
+        config.icmpSweep = true;
+        config.deadlineMillis = 60_000;
+        config.congestion = new CongestionControl();
+        config.discoveryThreads = 3;
+        config.portThreads = 5;
+        config.enrichThreads = 2;
+        config.discovery.probes = EnumSet.of(HostDiscovery.Probe.TCP);
+        config.discovery.tcpPorts = new int[]{8443};
+        config.discovery.tcpTimeoutMillis = 111;
+        config.discovery.arpAuthoritative = false;
+        config.serviceDetection.maxBytes = 512;
+        config.udp.retries = 5;
+        config.udp.hostProbesPerSecond = 12.5;
+        config.udp.capture = false;
+        config.sweep.packetsPerSecond = 100;
+
+        ScanCheckpoint parsed = ScanCheckpoint.parse(
+                new ScanCheckpoint("10.0.0.0/24", new int[]{22, 80}, config).toText());
+        NetworkScanner.Config back = parsed.toConfig();
+
+        assertEquals("10.0.0.0/24", parsed.getCidr());
+        assertArrayEquals(new int[]{22, 80}, parsed.getPorts());
+        assertEquals(33, back.threads);
+        assertTrue(back.osScan);
+        assertEquals(450, back.portTimeoutMillis);
+        assertEquals(7, back.maxOpenPorts);
+        assertTrue(back.randomizeOrder);
+        assertEquals(-123456789L, back.seed);
+        assertEquals(100, back.shardStart);
+        assertEquals(900, back.shardEnd);
+        assertTrue(back.detectServices);
+        assertArrayEquals(new int[]{53, 161}, back.udpPorts);
+        assertTrue(back.icmpSweep);
+        assertEquals(60_000, back.deadlineMillis);
+        assertNotNull(back.congestion);
+        assertEquals(3, back.discoveryThreads);
+        assertEquals(5, back.portThreads);
+        assertEquals(2, back.enrichThreads);
+        assertEquals(EnumSet.of(HostDiscovery.Probe.TCP), back.discovery.probes);
+        assertArrayEquals(new int[]{8443}, back.discovery.tcpPorts);
+        assertEquals(111, back.discovery.tcpTimeoutMillis);
+        assertFalse(back.discovery.arpAuthoritative);
+        assertEquals(512, back.serviceDetection.maxBytes);
+        assertEquals(5, back.udp.retries);
+        assertEquals(12.5, back.udp.hostProbesPerSecond);
+        assertFalse(back.udp.capture);
+        assertEquals(100, back.sweep.packetsPerSecond);
+    }
+
+    @Test
+    void olderCheckpointsKeepDefaultsForMissingSettings() throws IOException {
+        ScanCheckpoint parsed = ScanCheckpoint.parse("smartnet-checkpoint 1\ncidr=10.0.0.0/30\nports=22\nthreads=4\ncompleted=\n");
+        NetworkScanner.Config defaults = new NetworkScanner.Config();
+        NetworkScanner.Config back = parsed.toConfig();
+
+        assertEquals(4, back.threads);
+        assertEquals(defaults.portTimeoutMillis, back.portTimeoutMillis);
+        assertNull(back.congestion);
+        assertEquals(defaults.discovery.probes, back.discovery.probes);
+        assertArrayEquals(defaults.discovery.tcpPorts, back.discovery.tcpPorts);
+        assertEquals(0, parsed.completedCount());
+    }
+
+    @Test
+    void completedRangesAndResultsSurviveTheRoundTrip() throws IOException {
+        ScanCheckpoint checkpoint = new ScanCheckpoint("10.0.0.0/24", new int[]{22}, new NetworkScanner.Config());
+        for (int i = 0; i < 10; i++) checkpoint.markCompleted(i, null);
+        checkpoint.markCompleted(20, host("10.0.0.20"));
+        checkpoint.markCompleted(21, new HostScanResults("10.0.0.21", false, List.of(), null, null));
+
+        ScanCheckpoint parsed = ScanCheckpoint.parse(checkpoint.toText());
+
+        assertEquals(12, parsed.completedCount());
+        assertTrue(parsed.isCompleted(9));
+        assertFalse(parsed.isCompleted(10));
+        assertTrue(parsed.isCompleted(21));
+        assertNull(parsed.getResult(21), "down hosts are not kept");
+        assertSameHost(host("10.0.0.20"), parsed.getResult(20));
+        assertEquals(1, parsed.getResults().size());
+    }
+
+    @Test
+    void resultLineRoundTripsEveryField() {
+        HostScanResults original = host("192.168.1.5");
+        assertSameHost(original, ScanCheckpoint.parseResult(ScanCheckpoint.formatResult(original)));
+    }
+
+    @Test
+    void resultLineReplacesTabsAndNewlinesInText() {
+        HostScanResults messy = new HostScanResults("10.0.0.1", true, List.of(80), "aa:bb:cc:dd:ee:ff",
+                "Acme\tCorp", "web\nserver", "Linux\r2.6", Map.of(), Map.of());
+        String line = ScanCheckpoint.formatResult(messy);
+        assertFalse(line.contains("\n"));
+        assertEquals(8, line.split("\t", -1).length);
+
+        HostScanResults parsed = ScanCheckpoint.parseResult(line);
+        assertEquals("Acme Corp", parsed.getVendor());
+        assertEquals("web server", parsed.getHostName());
+        assertEquals("Linux 2.6", parsed.getOsName());
+    }
+
+    @Test
+    void resultLinesWithoutTheLaterColumnsStillParse() {
+        HostScanResults parsed = ScanCheckpoint.parseResult("10.0.0.9\t22,80\t\t\t");
+        assertEquals("10.0.0.9", parsed.getIpAddress());
+        assertEquals(List.of(22, 80), parsed.getOpenPorts());
+        assertNull(parsed.getOsName());
+        assertNull(parsed.getVendor());
+        assertTrue(parsed.getServices().isEmpty());
+        assertTrue(parsed.getUdpPorts().isEmpty());
+    }
+
+    private static HostScanResults host(String ip) {
+        Map<Integer, ServiceInfo> services = new TreeMap<>();
+        services.put(22, new ServiceInfo(22, "ssh", "OpenSSH 9.6", true));
+        services.put(8080, new ServiceInfo(8080, "http", null, false));
+        Map<Integer, UdpPortState> udp = new TreeMap<>();
+        udp.put(53, UdpPortState.OPEN);
+        udp.put(161, UdpPortState.OPEN_FILTERED);
+        return new HostScanResults(ip, true, List.of(22, 8080), "00:11:22:33:44:55", "Cisco Systems, Inc",
+                "nas.lan", "Linux 5.x", services, udp);
+    }
+
+    private static void assertSameHost(HostScanResults expected, HostScanResults actual) {
+        assertEquals(expected.getIpAddress(), actual.getIpAddress());
+        assertTrue(actual.isReachable());
+        assertEquals(expected.getOpenPorts(), actual.getOpenPorts());
+        assertEquals(expected.getMacAddress(), actual.getMacAddress());
+        assertEquals(expected.getVendor(), actual.getVendor());
+        assertEquals(expected.getHostName(), actual.getHostName());
+        assertEquals(expected.getOsName(), actual.getOsName());
+        assertEquals(expected.getServicesText(), actual.getServicesText());
+        assertEquals(expected.getUdpPorts(), actual.getUdpPorts());
+    }
+}
@@ -0,0 +1,77 @@
+package com.smartnet.smartnet.network.export;
+
+import com.smartnet.smartnet.network.models.HostScanResults;
+import com.smartnet.smartnet.network.models.ServiceInfo;
+import com.smartnet.smartnet.network.models.UdpPortState;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvFormatterTest {
+
+    /** Splits one RFC 4180 record, undoing the quoting. */
+    private static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    @Test
+    void everyRowMatchesTheHeader() {
+        Map<Integer, ServiceInfo> services = new LinkedHashMap<>();
+        services.put(22, new ServiceInfo(22, "ssh", "OpenSSH_8.9p1", true));
+        services.put(80, new ServiceInfo(80, "http", "nginx, \"stable\"", true));
+        HostScanResults host = new HostScanResults("10.0.0.5", true, List.of(22, 80, 443),
+                "00:00:0c:12:34:56", "Cisco Systems, Inc", "router", "Cisco IOS",
+                services, Map.of(53, UdpPortState.OPEN, 161, UdpPortState.OPEN_FILTERED));
+        CsvFormatter formatter = new CsvFormatter(true, true, true);
+
+        List<String> header = parse(formatter.header());
+        List<String> row = parse(formatter.format(host));
+
+        assertEquals(header.size(), row.size());
+        assertEquals("10.0.0.5", row.get(header.indexOf("IP")));
+        assertEquals("Cisco Systems, Inc", row.get(header.indexOf("Vendor")));
+        assertEquals("22; 80; 443", row.get(header.indexOf("Open_Ports")));
+        assertEquals("Cisco IOS", row.get(header.indexOf("OS")));
+        assertEquals(host.getServicesText(), row.get(header.indexOf("Services")));
+        assertEquals(host.getUdpPortsText(), row.get(header.indexOf("UDP_Ports")));
+    }
+
+    @Test
+    void plainFieldsAreNotQuoted() {
+        HostScanResults host = new HostScanResults("10.0.0.9", true, List.of(22), "aa:bb:cc:dd:ee:ff", "host-9");
+        assertEquals("10.0.0.9,host-9,aa:bb:cc:dd:ee:ff,-,22", new CsvFormatter(false).format(host));
+    }
+
+    @Test
+    void quotesAndLineBreaksAreEscaped() {
+        HostScanResults host = new HostScanResults("10.0.0.7", true, List.of(), null, "a\"b\nc");
+        String line = new CsvFormatter(false).format(host);
+        assertTrue(line.contains("\"a\"\"b\nc\""));
+        assertEquals("a\"b\nc", parse(line).get(1));
+    }
+}
@@ -0,0 +1,85 @@
+package com.smartnet.smartnet.network.ipgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TargetPermutationTest {
+
+    @Test
+    void visitsEveryIndexExactlyOnce() {
+        for (long[] shape : new long[][]{{1, 1}, {1, 7}, {3, 1}, {254, 8}, {256, 1000}, {5, 13}, {1023, 3}}) {
+            TargetPermutation permutation = new TargetPermutation(shape[0], shape[1], 42);
+            int size = (int) permutation.size();
+            assertEquals(shape[0] * shape[1], size);
+            BitSet seen = new BitSet(size);
+            for (int i = 0; i < size; i++) {
+                long value = permutation.permute(i);
+                assertTrue(value >= 0 && value < size, "out of range for " + shape[0] + "x" + shape[1]);
+                assertFalse(seen.get((int) value), "repeated value for " + shape[0] + "x" + shape[1]);
+                seen.set((int) value);
+            }
+            assertEquals(size, seen.cardinality());
+        }
+    }
+
+    @Test
+    void hostAndPortSplitTheValue() {
+        TargetPermutation permutation = new TargetPermutation(10, 4, 1);
+        BitSet pairs = new BitSet();
+        for (int i = 0; i < 40; i++) {
+            long value = permutation.permute(i);
+            int host = permutation.hostOf(value);
+            int port = permutation.portOf(value);
+            assertTrue(host >= 0 && host < 10);
+            assertTrue(port >= 0 && port < 4);
+            assertEquals(value, host * 4L + port);
+            pairs.set(host * 4 + port);
+        }
+        assertEquals(40, pairs.cardinality());
+    }
+
+    @Test
+    void sameSeedGivesSameOrderOtherSeedsDiffer() {
+        TargetPermutation a = new TargetPermutation(256, 100, 7);
+        TargetPermutation b = new TargetPermutation(256, 100, 7);
+        TargetPermutation c = new TargetPermutation(256, 100, 8);
+        int differences = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(a.permute(i), b.permute(i));
+            if (a.permute(i) != c.permute(i)) differences++;
+        }
+        assertTrue(differences > 900);
+    }
+
+    @Test
+    void orderIsShuffled() {
+        TargetPermutation permutation = new TargetPermutation(256, 10, 3);
+        int ascending = 0;
+        for (int i = 1; i < 2560; i++) {
+            if (permutation.permute(i) == permutation.permute(i - 1) + 1) ascending++;
+        }
+        assertTrue(ascending < 50, "walk looks sequential: " + ascending);
+    }
+
+    @Test
+    void largeSpacesStayInRange() {
+        TargetPermutation permutation = new TargetPermutation(1L << 24, 65535, 99);
+        for (long i = permutation.size() - 1000; i < permutation.size(); i++) {
+            long value = permutation.permute(i);
+            assertTrue(value >= 0 && value < permutation.size());
+            assertTrue(permutation.hostOf(value) < (1 << 24));
+        }
+    }
+
+    @Test
+    void rejectsEmptySpacesAndIndexesOutsideIt() {
+        assertThrows(IllegalArgumentException.class, () -> new TargetPermutation(0, 10, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TargetPermutation(10, 0, 1));
+        TargetPermutation permutation = new TargetPermutation(2, 2, 1);
+        assertThrows(IndexOutOfBoundsException.class, () -> permutation.permute(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> permutation.permute(4));
+    }
+}
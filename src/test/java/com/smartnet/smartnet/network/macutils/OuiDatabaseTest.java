@@ -0,0 +1,109 @@
+package com.smartnet.smartnet.network.macutils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OuiDatabaseTest {
+
+    private static final String OUI_TXT = """
+            OUI/MA-L                                                    Organization
+            company_id                                                  Organization
+                                                                        Address
+
+            F0-AC-D7   (hex)\t\tBig Corp
+            F0ACD7     (base 16)\t\tBig Corp
+            \t\t\t\t1 Main Street
+            \t\t\t\tSpringfield    US
+
+            00-1B-21   (hex)\t\tIntel Corporate
+            001B21     (base 16)\t\tIntel Corporate
+            """;
+    private static final String MAM_TXT = """
+            F0-AC-D7-90-00-00/28     (hex)\t\tMedium Co
+            900000-9FFFFF     (base 16)\t\tMedium Co
+            \t\t\t\tSomewhere    DE
+            """;
+    private static final String OUI36_TXT = """
+            F0-AC-D7-95-50-00/36     (hex)\t\tSmall Co
+            955000-955FFF     (base 16)\t\tSmall Co
+            """;
+    private static final String CSV = """
+            Registry,Assignment,Organization Name,Organization Address
+            MA-L,F0ACD7,Big Corp,1 Main Street Springfield US
+            MA-L,001B21,Intel Corporate,"Lot 8, Jalan Hi-Tech 2/3  Kulim Kedah  MY 09000 "
+            MA-M,F0ACD79,"Medium Co",Somewhere DE
+            MA-S,F0ACD7955,"Small ""Tiny"" Co",
+            """;
+
+    @TempDir
+    Path dir;
+
+    private OuiDatabase build(String... files) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            Path source = dir.resolve("source" + i);
+            Files.writeString(source, files[i]);
+            sources.add(source);
+        }
+        Path out = dir.resolve("oui.db");
+        OuiDatabase.build(sources, out);
+        return OuiDatabase.open(out);
+    }
+
+    @Test
+    void textListingsPreferTheLongestPrefix() throws IOException {
+        OuiDatabase db = build(OUI_TXT, MAM_TXT, OUI36_TXT);
+        assertEquals(4, db.size());
+        assertEquals("Small Co", db.vendorOf("f0:ac:d7:95:50:01"));
+        assertEquals("Small Co", db.vendorOf("F0-AC-D7-95-5F-FF"));
+        assertEquals("Medium Co", db.vendorOf("f0:ac:d7:95:60:00"));
+        assertEquals("Medium Co", db.vendorOf("f0:ac:d7:9f:ff:ff"));
+        assertEquals("Big Corp", db.vendorOf("f0:ac:d7:a0:00:00"));
+        assertEquals("Intel Corporate", db.vendorOf("001b.2112.3456"));
+        assertNull(db.vendorOf("00:1b:22:00:00:00"));
+    }
+
+    @Test
+    void csvExportsGiveTheSameAnswers() throws IOException {
+        OuiDatabase db = build(CSV);
+        assertEquals(4, db.size());
+        assertEquals("Small \"Tiny\" Co", db.vendorOf("f0:ac:d7:95:50:01"));
+        assertEquals("Medium Co", db.vendorOf("f0:ac:d7:95:60:00"));
+        assertEquals("Big Corp", db.vendorOf("f0:ac:d7:00:00:00"));
+        assertEquals("Intel Corporate", db.vendorOf("00:1B:21:AA:BB:CC"));
+    }
+
+    @Test
+    void mixedSourcesKeepTheFirstNameForAPrefix() throws IOException {
+        OuiDatabase db = build(OUI_TXT, CSV);
+        assertEquals(4, db.size());
+        assertEquals("Big Corp", db.vendorOf("f0:ac:d7:00:00:00"));
+        assertEquals("Small \"Tiny\" Co", db.vendorOf("f0:ac:d7:95:50:01"));
+    }
+
+    @Test
+    void rejectsAnythingThatIsNotAMac() throws IOException {
+        OuiDatabase db = build(OUI_TXT);
+        assertNull(db.vendorOf((String) null));
+        assertNull(db.vendorOf("f0:ac:d7"));
+        assertNull(db.vendorOf("f0:ac:d7:00:00:00:00"));
+        assertNull(db.vendorOf("g0:ac:d7:00:00:00"));
+        assertNull(OuiDatabase.EMPTY.vendorOf("f0:ac:d7:00:00:00"));
+    }
+
+    @Test
+    void badInputsFail() throws IOException {
+        Path empty = dir.resolve("empty.txt");
+        Files.writeString(empty, "nothing here\n");
+        assertThrows(IOException.class, () -> OuiDatabase.build(List.of(empty), dir.resolve("oui.db")));
+        assertThrows(IOException.class, () -> OuiDatabase.open(empty));
+    }
+}
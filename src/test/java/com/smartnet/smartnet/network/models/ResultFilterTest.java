@@ -0,0 +1,96 @@
+package com.smartnet.smartnet.network.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultFilterTest {
+
+    private static final HostScanResults WEB = new HostScanResults("10.0.0.5", true, List.of(80, 443),
+            "00:50:56:aa:bb:cc", "VMware, Inc.", "web.example.com", "Linux 5.x",
+            Map.of(80, new ServiceInfo(80, "http", "nginx", true)), Map.of());
+    private static final HostScanResults DESKTOP = new HostScanResults("10.0.1.20", true, List.of(3389),
+            "3c:52:82:00:00:01", "Hewlett Packard", "desk-20", "Windows 10",
+            Map.of(), Map.of());
+    private static final HostScanResults DOWN = new HostScanResults("192.168.1.1", false, List.of(),
+            null, null, null, null, Map.of(), Map.of());
+
+    private static boolean matches(String query, HostScanResults host) {
+        return ResultFilter.parse(query).matches(host);
+    }
+
+    @Test
+    void blankQueryMatchesEverything() {
+        assertTrue(ResultFilter.parse(null).isEmpty());
+        assertTrue(ResultFilter.parse("   ").isEmpty());
+        assertTrue(ResultFilter.parse("").matches(DOWN));
+    }
+
+    @Test
+    void portTerms() {
+        assertTrue(matches("port:443", WEB));
+        assertFalse(matches("port:22", WEB));
+        assertTrue(matches("port:3000-3400", DESKTOP));
+        assertTrue(matches("port:22,80", WEB));
+        assertFalse(matches("port:22,8080", WEB));
+        assertFalse(matches("port:80", DOWN));
+    }
+
+    @Test
+    void fieldTermsAreCaseInsensitiveSubstrings() {
+        assertTrue(matches("os:linux", WEB));
+        assertTrue(matches("OS:WINDOWS", DESKTOP));
+        assertTrue(matches("os:unknown", DOWN));
+        assertTrue(matches("vendor:vmware", WEB));
+        assertTrue(matches("vendor:\"hewlett packard\"", DESKTOP));
+        assertFalse(matches("vendor:vmware", DOWN));
+        assertTrue(matches("service:http", WEB));
+        assertFalse(matches("service:http", DESKTOP));
+        assertTrue(matches("host:example", WEB));
+        assertTrue(matches("desk", DESKTOP));
+        assertTrue(matches("192.168", DOWN));
+        assertFalse(matches("example", DESKTOP));
+    }
+
+    @Test
+    void addressAndStatusTerms() {
+        assertTrue(matches("net:10.0.0.0/24", WEB));
+        assertFalse(matches("net:10.0.0.0/24", DESKTOP));
+        assertTrue(matches("net:10.0.0.0/8", DESKTOP));
+        assertTrue(matches("ip:10.0.0.5", WEB));
+        assertTrue(matches("ip:10.0.0.1-10.0.1.255", DESKTOP));
+        assertTrue(matches("ip:192.168.0.0/16", DOWN));
+        assertTrue(matches("is:up", WEB));
+        assertTrue(matches("is:down", DOWN));
+        assertFalse(matches("is:down", DESKTOP));
+    }
+
+    @Test
+    void operatorsCombineTerms() {
+        assertTrue(matches("port:80 os:linux", WEB));
+        assertFalse(matches("port:80 os:windows", WEB));
+        assertTrue(matches("port:80 AND net:10.0.0.0/24", WEB));
+        assertTrue(matches("port:22 OR port:3389", DESKTOP));
+        assertTrue(matches("-vendor:vmware is:up", DESKTOP));
+        assertFalse(matches("-vendor:vmware is:up", WEB));
+        assertTrue(matches("NOT is:up", DOWN));
+        // AND binds tighter than OR; parentheses override
+        assertTrue(matches("port:3389 OR port:80 os:windows", DESKTOP));
+        assertFalse(matches("(port:3389 OR port:80) os:linux", DESKTOP));
+        assertTrue(matches("(port:3389 OR port:80) os:linux", WEB));
+        // lower-case "or" is plain text
+        assertFalse(matches("port:22 or port:80", WEB));
+    }
+
+    @Test
+    void invalidQueriesAreRejected() {
+        for (String query : new String[]{"port:abc", "port:70000", "port:90-80", "os:", "is:maybe",
+                "net:10.0.0.0/33", "net:10.0.0", "ip:10.0.0.9-10.0.0.1", "(port:22", "port:22)",
+                "OR port:22", "port:22 AND", "vendor:\"hp"}) {
+            assertThrows(IllegalArgumentException.class, () -> ResultFilter.parse(query), query);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.smartnet.smartnet.network.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultIndexTest {
+
+    private static final String[] QUERIES = {
+            "port:22", "port:80,443", "port:1-1024", "os:linux", "-os:linux", "vendor:dell",
+            "service:ssh", "host:srv", "net:10.1.0.0/16", "ip:10.0.3.0-10.2.0.255", "is:up", "is:down",
+            "(port:22 OR port:3389) -vendor:vmware", "NOT (is:up AND os:windows)", "10.2", "-port:80 -port:443"
+    };
+    private static final String[] OS = {"Linux 5.x", "Windows 10", "FreeBSD", null};
+    private static final String[] VENDORS = {"Dell Inc.", "VMware, Inc.", "Cisco Systems", null};
+    private static final String[] SERVICES = {"ssh", "http", "https", "rdp"};
+    private static final int[] PORTS = {22, 80, 443, 3389, 8080};
+
+    private static List<HostScanResults> hosts(int count, long seed) {
+        Random random = new Random(seed);
+        List<HostScanResults> hosts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String ip = "10." + random.nextInt(3) + "." + random.nextInt(256) + "." + random.nextInt(256);
+            boolean up = random.nextInt(4) != 0;
+            List<Integer> ports = new ArrayList<>();
+            Map<Integer, ServiceInfo> services = new HashMap<>();
+            if (up) {
+                for (int port : PORTS) {
+                    if (random.nextInt(3) == 0) {
+                        ports.add(port);
+                        services.put(port, new ServiceInfo(port, SERVICES[random.nextInt(SERVICES.length)], null, true));
+                    }
+                }
+            }
+            String host = random.nextBoolean() ? (random.nextBoolean() ? "srv-" : "ws-") + i : null;
+            hosts.add(new HostScanResults(ip, up, ports, null, VENDORS[random.nextInt(VENDORS.length)], host,
+                    OS[random.nextInt(OS.length)], services, Map.of()));
+        }
+        return hosts;
+    }
+
+    private static List<HostScanResults> filtered(List<HostScanResults> hosts, ResultFilter filter) {
+        List<HostScanResults> out = new ArrayList<>();
+        for (HostScanResults host : hosts) {
+            if (filter.matches(host)) out.add(host);
+        }
+        return out;
+    }
+
+    @Test
+    void indexedQueriesAgreeWithMatches() {
+        List<HostScanResults> hosts = hosts(2000, 1);
+        ResultIndex index = ResultIndex.EMPTY.append(hosts);
+        for (String query : QUERIES) {
+            ResultFilter filter = ResultFilter.parse(query);
+            assertEquals(filtered(hosts, filter), index.query(filter, null, true), query);
+            assertEquals(filtered(hosts, filter).size(), index.count(filter), query);
+        }
+    }
+
+    @Test
+    void appendExtendsPostingsAndMergesOrders() {
+        List<HostScanResults> first = hosts(700, 2);
+        List<HostScanResults> second = hosts(500, 3);
+        List<HostScanResults> all = new ArrayList<>(first);
+        all.addAll(second);
+
+        ResultIndex index = ResultIndex.EMPTY.append(first);
+        for (ResultIndex.Column column : ResultIndex.Column.values()) {
+            index.query(ResultFilter.NONE, column, true);       // builds every order
+        }
+        index.count(ResultFilter.parse("port:22"));             // and the postings
+        ResultIndex appended = index.append(second);
+        ResultIndex rebuilt = ResultIndex.EMPTY.append(all);
+
+        assertEquals(all.size(), appended.size());
+        for (ResultIndex.Column column : ResultIndex.Column.values()) {
+            for (boolean ascending : new boolean[]{true, false}) {
+                assertEquals(rebuilt.query(ResultFilter.NONE, column, ascending),
+                        appended.query(ResultFilter.NONE, column, ascending), column + " " + ascending);
+            }
+        }
+        for (String query : QUERIES) {
+            ResultFilter filter = ResultFilter.parse(query);
+            assertEquals(filtered(all, filter), appended.query(filter, null, true), query);
+            assertEquals(rebuilt.query(filter, ResultIndex.Column.OS, true),
+                    appended.query(filter, ResultIndex.Column.OS, true), query);
+        }
+        // the earlier snapshot is unchanged
+        assertEquals(first.size(), index.size());
+        assertEquals(filtered(first, ResultFilter.parse("port:22")).size(), index.count(ResultFilter.parse("port:22")));
+    }
+
+    @Test
+    void ipOrderIsNumericNotTextual() {
+        List<HostScanResults> hosts = List.of(
+                new HostScanResults("10.0.0.10", true, List.of(), null, null),
+                new HostScanResults("10.0.0.9", true, List.of(), null, null),
+                new HostScanResults("9.255.255.255", false, List.of(), null, null));
+        List<HostScanResults> sorted = ResultIndex.EMPTY.append(hosts).query(ResultFilter.NONE, ResultIndex.Column.IP, true);
+        assertEquals(List.of(hosts.get(2), hosts.get(1), hosts.get(0)), sorted);
+    }
+}
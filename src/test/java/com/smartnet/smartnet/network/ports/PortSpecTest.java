@@ -0,0 +1,77 @@
+package com.smartnet.smartnet.network.ports;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortSpecTest {
+
+    @Test
+    void singlePortsAndRangesKeepFirstAppearanceOrder() {
+        assertArrayEquals(new int[]{3389, 20, 21, 22, 80}, PortSpec.parse("3389,20-22,80"));
+    }
+
+    @Test
+    void duplicatesAndOverlappingRangesAreDropped() {
+        assertArrayEquals(new int[]{22, 20, 21, 23}, PortSpec.parse("22, 20-23, 21-22 ,22"));
+    }
+
+    @Test
+    void exclusionsApplyRegardlessOfPosition() {
+        assertArrayEquals(new int[]{1, 2, 4, 5}, PortSpec.parse("!3,1-5"));
+        assertArrayEquals(new int[]{1, 2, 9, 10}, PortSpec.parse("1-10,!3-8"));
+    }
+
+    @Test
+    void excludingARangeInsideAnotherRange() {
+        int[] ports = PortSpec.parse("1-1024,!100-199,!25");
+        assertEquals(1024 - 100 - 1, ports.length);
+        assertTrue(Arrays.stream(ports).noneMatch(p -> p == 25 || (p >= 100 && p <= 199)));
+    }
+
+    @Test
+    void topNExpandsToTheMostCommonPorts() {
+        assertArrayEquals(TopPorts.top(10), PortSpec.parse("top:10"));
+        assertArrayEquals(new int[]{80, 23, 443, 21, 22}, PortSpec.parse("TOP:5"));
+    }
+
+    @Test
+    void topNCombinesWithPortsAndExclusions() {
+        int[] ports = PortSpec.parse("top:5,!23,8443,22");
+        assertArrayEquals(new int[]{80, 443, 21, 22, 8443}, ports);
+        assertArrayEquals(new int[]{40000}, PortSpec.parse("40000,80,!top:100"));
+    }
+
+    @Test
+    void emptyOrBlankSpecsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse(null));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse(" "));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse(",,"));
+    }
+
+    @Test
+    void outOfRangePortsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("0"));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("65536"));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("1-70000"));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("top:0"));
+    }
+
+    @Test
+    void malformedSpecsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("http"));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("22-"));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("-22"));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("100-20"));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("top:many"));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("22;80"));
+    }
+
+    @Test
+    void excludingEverythingIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("22,!22"));
+        assertThrows(IllegalArgumentException.class, () -> PortSpec.parse("!80"));
+    }
+}
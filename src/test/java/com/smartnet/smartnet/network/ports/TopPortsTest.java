@@ -0,0 +1,39 @@
+package com.smartnet.smartnet.network.ports;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopPortsTest {
+
+    @Test
+    void topThousandIsRankedWithoutPadding() {
+        int[] top = TopPorts.top(1000);
+        assertEquals(1000, top.length);
+        assertEquals(1000, Arrays.stream(top).distinct().count());
+        for (int port : top) {
+            assertTrue(TopPorts.rankOf(port) < 1000, "unranked port " + port + " in the top 1000");
+        }
+    }
+
+    @Test
+    void mostCommonPortsComeFirst() {
+        assertArrayEquals(new int[]{80, 23, 443, 21, 22}, TopPorts.top(5));
+        assertEquals(0, TopPorts.rankOf(80));
+    }
+
+    @Test
+    void topBeyondTheRankingFallsBackToAscendingPorts() {
+        int[] all = TopPorts.top(65535);
+        assertEquals(65535, all.length);
+        assertEquals(65535, Arrays.stream(all).distinct().count());
+        assertEquals(Integer.MAX_VALUE, TopPorts.rankOf(all[all.length - 1]));
+    }
+
+    @Test
+    void rankOrdersRankedPortsFirstThenByNumber() {
+        assertArrayEquals(new int[]{80, 22, 3306, 2, 40000}, TopPorts.rank(new int[]{40000, 2, 3306, 22, 80}));
+    }
+}
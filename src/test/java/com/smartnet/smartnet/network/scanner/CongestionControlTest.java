@@ -0,0 +1,46 @@
+package com.smartnet.smartnet.network.scanner;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CongestionControlTest {
+
+    /** Runs one full window of probes, {@code timeoutShare} of them timing out. */
+    private static void epoch(CongestionControl.Window window, double timeoutShare) {
+        int size = (int) window.state().window();
+        for (int i = 0; i < size; i++) {
+            assertTrue(window.acquire(CancellationToken.NONE));
+        }
+        int timeouts = (int) Math.round(size * timeoutShare);
+        for (int i = 0; i < size; i++) {
+            if (i < timeouts) window.timedOut();
+            else window.answered(1_000_000);
+        }
+    }
+
+    @Test
+    void steadyTimeoutsOfFilteredPortsDoNotCut() {
+        CongestionControl.Window window = new CongestionControl().windowFor("10.0.0.1");
+        for (int i = 0; i < 50; i++) epoch(window, 0.75);
+        assertEquals(0, window.state().cuts());
+        assertTrue(window.state().window() >= 8);
+    }
+
+    @Test
+    void risingTimeoutsCut() {
+        CongestionControl.Window window = new CongestionControl().windowFor("10.0.0.1");
+        for (int i = 0; i < 10; i++) epoch(window, 0);
+        double before = window.state().window();
+        epoch(window, 0.5);
+        assertTrue(window.state().cuts() > 0);
+        assertTrue(window.state().window() < before);
+    }
+
+    @Test
+    void subnetsHaveTheirOwnWindow() {
+        CongestionControl control = new CongestionControl();
+        assertSame(control.windowFor("10.0.0.1"), control.windowFor("10.0.0.200"));
+        assertNotSame(control.windowFor("10.0.0.1"), control.windowFor("10.0.1.1"));
+    }
+}
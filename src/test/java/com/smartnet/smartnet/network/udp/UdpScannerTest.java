@@ -0,0 +1,60 @@
+package com.smartnet.smartnet.network.udp;
+
+import com.smartnet.smartnet.network.models.UdpPortState;
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UdpScannerTest {
+
+    private static final int[] CLOSED_PORTS = {9, 10, 11, 12};
+
+    private static UdpScanner.Config config() {
+        UdpScanner.Config config = new UdpScanner.Config();
+        config.capture = false;
+        config.timeoutMillis = 200;
+        config.retries = 0;
+        return config;
+    }
+
+    /**
+     * The broadcast address fails on write (no SO_BROADCAST), which finishes that host in the
+     * middle of a send pass while the loopback hosts are still active.
+     */
+    @Test
+    void hostFinishingMidSendLeavesTheOthersRunning() throws Exception {
+        try (UdpScanner scanner = new UdpScanner(config())) {
+            for (int round = 0; round < 10; round++) {
+                List<CompletableFuture<Map<Integer, UdpPortState>>> scans = new ArrayList<>();
+                for (String ip : new String[]{"127.0.0.1", "255.255.255.255", "127.0.0.2"}) {
+                    int[] ports = ip.startsWith("255") ? new int[]{9} : CLOSED_PORTS;
+                    scans.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return scanner.scan(ip, ports, CancellationToken.NONE);
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }));
+                }
+                assertEquals(CLOSED_PORTS.length, scans.get(0).get(10, TimeUnit.SECONDS).size(), "round " + round);
+                assertEquals(1, scans.get(1).get(10, TimeUnit.SECONDS).size(), "round " + round);
+                assertEquals(CLOSED_PORTS.length, scans.get(2).get(10, TimeUnit.SECONDS).size(), "round " + round);
+            }
+        }
+    }
+
+    @Test
+    void closedLoopbackPortsAreClosed() throws Exception {
+        try (UdpScanner scanner = new UdpScanner(config())) {
+            Map<Integer, UdpPortState> states = scanner.scan("127.0.0.1", CLOSED_PORTS, CancellationToken.NONE);
+            for (int port : CLOSED_PORTS) assertEquals(UdpPortState.CLOSED, states.get(port), "port " + port);
+        }
+    }
+}
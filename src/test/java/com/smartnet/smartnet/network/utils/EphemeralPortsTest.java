@@ -0,0 +1,69 @@
+package com.smartnet.smartnet.network.utils;
+
+import com.smartnet.smartnet.network.scanner.CancellationToken;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class EphemeralPortsTest {
+
+    private static final long MAX_WAIT_MILLIS = 300;
+
+    /** Loopback connections whose client ends take ports from the whole range. */
+    private static List<Socket> holdPorts(ServerSocket server, int count) throws IOException {
+        List<Socket> sockets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sockets.add(new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+            sockets.add(server.accept());
+        }
+        return sockets;
+    }
+
+    @Test
+    void ownProbesStayWithinTheBudget() {
+        EphemeralPorts ports = new EphemeralPorts(new int[]{1, 1}, 3, MAX_WAIT_MILLIS);
+        CancellationToken cancelled = new CancellationToken(0);
+        cancelled.cancel();
+        assertTrue(ports.acquire(CancellationToken.NONE));
+        assertTrue(ports.acquire(CancellationToken.NONE));
+        assertTrue(ports.acquire(CancellationToken.NONE));
+        assertFalse(ports.acquire(cancelled));
+        assertEquals(3, ports.stats().inFlight());
+        ports.release();
+        assertTrue(ports.acquire(cancelled));
+    }
+
+    @Test
+    void waitsOnceWhenOtherSocketsKeepUsageOverBudget() throws IOException {
+        assumeTrue(Files.isReadable(Path.of("/proc/net/tcp")), "needs /proc/net/tcp");
+        EphemeralPorts ports = new EphemeralPorts(new int[]{1, 65535}, 4, MAX_WAIT_MILLIS);
+        List<Socket> held;
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            held = holdPorts(server, 5);
+            try {
+                assertTrue(ports.stats().used() > 4);
+
+                long start = System.nanoTime();
+                assertTrue(ports.acquire(CancellationToken.NONE));
+                assertTrue((System.nanoTime() - start) / 1_000_000L >= MAX_WAIT_MILLIS);
+
+                start = System.nanoTime();
+                for (int i = 0; i < 3; i++) assertTrue(ports.acquire(CancellationToken.NONE));
+                assertTrue((System.nanoTime() - start) / 1_000_000L < MAX_WAIT_MILLIS);
+                assertEquals(1, ports.stats().throttled());
+            } finally {
+                for (Socket socket : held) socket.close();
+            }
+        }
+    }
+}